@@ -16,21 +16,43 @@
 
 package com.google.zxing.client.android;
 
+import android.util.Log;
+
+import com.google.zxing.client.android.http.BoundedInputStream;
+import com.google.zxing.client.android.http.HttpMetrics;
+import com.google.zxing.client.android.http.HttpRequest;
+import com.google.zxing.client.android.http.HttpResponse;
+import com.google.zxing.client.android.http.HttpTransport;
+import com.google.zxing.client.android.http.MeteredTransport;
+import com.google.zxing.client.android.http.UrlConnectionTransport;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Utility methods for retrieving content over HTTP using the more-supported {@code java.net} classes
  * in Android.
+ * <p>
+ * 所有请求都有连接和读取超时，以及包括重定向在内的整体时限，慢服务器不会一直占着线程；响应体有字节上限，支持 gzip。
+ * 连接用完后交还给连接池而不是断开，同一主机的后续请求可以复用。底层的 {@link HttpTransport} 可以替换，
+ * 请求的延迟和超时记录在 {@link #getMetrics()} 中。
  */
 public final class HttpHelper {
 
@@ -41,9 +63,34 @@ public final class HttpHelper {
             "R.BEETAGG.COM", "r.beetagg.com", "SCN.BY", "su.pr", "t.co", "tinyurl.com", "tr.im"
     ));
 
+    private static final String USER_AGENT = "ZXing (Android)";
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 5000;
+    // 一次下载（包括重定向）的整体时限
+    private static final long DEADLINE_MS = 10000L;
+    // 一次下载最多从网络读取的字节数，按压缩后的大小计算
+    private static final long MAX_BYTES = 256 * 1024;
+    // 解压后的大小最多是压缩后上限的几倍，防止很小的 gzip 炸弹解压出大量数据
+    private static final int MAX_INFLATION = 8;
+    private static final int MAX_REDIRECTS = 5;
+
+    private static final HttpMetrics metrics = new HttpMetrics();
+    private static volatile HttpTransport transport = new MeteredTransport(new UrlConnectionTransport(), metrics);
+
     private HttpHelper() {
     }
 
+    /**
+     * 替换底层的传输，例如在测试中指向本地的桩服务器。统计仍然记录在 {@link #getMetrics()} 中。
+     */
+    public static void setTransport(HttpTransport newTransport) {
+        transport = new MeteredTransport(newTransport, metrics);
+    }
+
+    public static HttpMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Downloads the entire resource instead of part.
      *
@@ -64,7 +111,25 @@ public final class HttpHelper {
      * @return content as a {@code String}
      * @throws IOException if the content can't be retrieved because of a bad URI, network problem, etc.
      */
-    public static CharSequence downloadViaHttp(String uri, ContentType type, int maxChars) throws IOException {
+    public static CharSequence downloadViaHttp(String uri, ContentType type, final int maxChars) throws IOException {
+        return downloadViaHttp(uri, type, MAX_BYTES, new BodyHandler<CharSequence>() {
+            @Override
+            public CharSequence handle(InputStream body, String charset) {
+                return consume(body, charset == null ? "UTF-8" : charset, maxChars);
+            }
+        });
+    }
+
+    /**
+     * 以流的方式读取响应体。{@code handler} 读到需要的内容后可以直接返回，响应的其余部分不再下载。
+     *
+     * @param maxBytes 最多从网络读取的字节数，不能超过默认的上限
+     * @return {@code handler} 的返回值
+     * @throws HttpStatusException 服务器的响应不是 200，也不是能跟随的重定向
+     * @throws IOException if the content can't be retrieved because of a bad URI, network problem, etc.
+     */
+    public static <T> T downloadViaHttp(String uri, ContentType type, long maxBytes, BodyHandler<T> handler)
+            throws IOException {
         String contentTypes;
         switch (type) {
             case HTML:
@@ -79,130 +144,304 @@ public final class HttpHelper {
             default: // Includes TEXT
                 contentTypes = "text/*,*/*";
         }
-        return downloadViaHttp(uri, contentTypes, maxChars);
+        return downloadViaHttp(uri, contentTypes, Math.min(maxBytes, MAX_BYTES), handler);
     }
 
-    private static CharSequence downloadViaHttp(String uri, String contentTypes, int maxChars) throws IOException {
-        int redirects = 0;
-        while (redirects < 5) {
-            URL url = new URL(uri);
-            HttpURLConnection connection = safelyOpenConnection(url);
-            connection.setInstanceFollowRedirects(true); // Won't work HTTP -> HTTPS or vice versa
-            connection.setRequestProperty("Accept", contentTypes);
-            connection.setRequestProperty("Accept-Charset", "utf-8,*");
-            connection.setRequestProperty("User-Agent", "ZXing (Android)");
-            try {
-                int responseCode = safelyConnect(connection);
-                switch (responseCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        return consume(connection, maxChars);
-                    case HttpURLConnection.HTTP_MOVED_TEMP:
-                        String location = connection.getHeaderField("Location");
-                        if (location != null) {
-                            uri = location;
-                            redirects++;
-                            continue;
-                        }
-                        throw new IOException("No Location");
-                    default:
-                        throw new IOException("Bad HTTP response: " + responseCode);
+    private static <T> T downloadViaHttp(String uri, String contentTypes, long maxBytes, BodyHandler<T> handler)
+            throws IOException {
+        long deadline = System.currentTimeMillis() + DEADLINE_MS;
+        URL url = new URL(uri);
+        for (int redirects = 0; redirects < MAX_REDIRECTS; redirects++) {
+            HttpRequest request = newRequest("GET", url, deadline)
+                    .setHeader("Accept", contentTypes)
+                    .setHeader("Accept-Charset", "utf-8,*")
+                    .setHeader("Accept-Encoding", "gzip");
+            try (HttpResponse response = transport.execute(request)) {
+                int responseCode = response.getCode();
+                if (responseCode == HttpURLConnection.HTTP_OK) {
+                    try (InputStream in = openBody(response, maxBytes, deadline)) {
+                        return handler.handle(in, getCharset(response));
+                    }
+                }
+                if (!isRedirect(responseCode)) {
+                    throw new HttpStatusException(responseCode, "Bad HTTP response: " + responseCode);
+                }
+                String location = response.getHeader("Location");
+                if (location == null) {
+                    throw new HttpStatusException(responseCode, "No Location");
                 }
-            } finally {
-                connection.disconnect();
+                // Location 可能是相对地址；跨协议的重定向也在这里处理
+                url = new URL(url, location);
             }
         }
         throw new IOException("Too many redirects");
     }
 
-    private static HttpURLConnection safelyOpenConnection(URL url) throws IOException {
-        URLConnection conn;
-        try {
-            conn = url.openConnection();
-        } catch (NullPointerException npe) {
-            // Another strange bug in Android?
-            throw new IOException(npe);
-        }
-        if (!(conn instanceof HttpURLConnection)) {
-            throw new IOException("Expected HttpURLConnection but got " + conn.getClass());
+    private static HttpRequest newRequest(String method, URL url, long deadline) throws SocketTimeoutException {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Deadline exceeded before " + method + ' ' + url);
         }
-        return (HttpURLConnection) conn;
+        int connectTimeout = (int) Math.min(CONNECT_TIMEOUT_MS, remaining);
+        int readTimeout = (int) Math.min(READ_TIMEOUT_MS, remaining);
+        return new HttpRequest(method, url, connectTimeout, readTimeout).setHeader("User-Agent", USER_AGENT);
     }
 
-    private static int safelyConnect(HttpURLConnection connection) throws IOException {
-        try {
-            connection.connect();
-        } catch (RuntimeException e) {
-            // These are, generally, Android bugs
-            throw new IOException(e);
-        }
-        try {
-            return connection.getResponseCode();
-        } catch (NullPointerException | StringIndexOutOfBoundsException | IllegalArgumentException e) {
-            // this is maybe this Android bug: http://code.google.com/p/android/issues/detail?id=15554
-            throw new IOException(e);
+    private static boolean isRedirect(int responseCode) {
+        switch (responseCode) {
+            case HttpURLConnection.HTTP_MULT_CHOICE:
+            case HttpURLConnection.HTTP_MOVED_PERM:
+            case HttpURLConnection.HTTP_MOVED_TEMP:
+            case HttpURLConnection.HTTP_SEE_OTHER:
+            case 307: // No constant for 307 Temporary Redirect ?
+            case 308:
+                return true;
+            default:
+                return false;
         }
     }
 
-    private static CharSequence consume(URLConnection connection, int maxChars){
-        String encoding = getEncoding(connection);
+    private static CharSequence consume(InputStream in, String charset, int maxChars) {
         StringBuilder out = new StringBuilder();
         try {
-            Reader in = new InputStreamReader(connection.getInputStream(), encoding);
+            Reader reader = new InputStreamReader(in, charset);
             char[] buffer = new char[1024];
             int charsRead;
-            while (out.length() < maxChars && (charsRead = in.read(buffer)) > 0) {
+            while (out.length() < maxChars && (charsRead = reader.read(buffer)) > 0) {
                 out.append(buffer, 0, charsRead);
             }
         } catch (IOException e) {
-            //do noting
+            // 返回已经读到的部分
+            Log.i(TAG, "Stopped reading after " + out.length() + " chars: " + e);
         }
         return out;
     }
 
-    private static String getEncoding(URLConnection connection) {
-        String contentTypeHeader = connection.getHeaderField("Content-Type");
+    /**
+     * @return 加上字节上限和时限、按需解压后的响应体；解压后的字节数另有上限。
+     * 压缩数据在字节上限处被截断时，解压流与没有压缩时一样正常结束
+     */
+    private static InputStream openBody(HttpResponse response, long maxBytes, long deadline) throws IOException {
+        BoundedInputStream raw = new BoundedInputStream(response.getBody(), maxBytes, deadline, metrics);
+        InputStream in = raw;
+        if ("gzip".equalsIgnoreCase(response.getHeader("Content-Encoding"))) {
+            in = new BoundedInputStream(new TruncatedGzipInputStream(raw), maxBytes * MAX_INFLATION);
+        }
+        return in;
+    }
+
+    /**
+     * @return Content-Type 中声明的编码，没有时返回 {@code null}
+     */
+    private static String getCharset(HttpResponse response) {
+        String contentTypeHeader = response.getHeader("Content-Type");
         if (contentTypeHeader != null) {
-            int charsetStart = contentTypeHeader.indexOf("charset=");
+            int charsetStart = contentTypeHeader.toLowerCase(Locale.US).indexOf("charset=");
             if (charsetStart >= 0) {
-                return contentTypeHeader.substring(charsetStart + "charset=".length());
+                String charset = contentTypeHeader.substring(charsetStart + "charset=".length());
+                int end = charset.indexOf(';');
+                if (end >= 0) {
+                    charset = charset.substring(0, end);
+                }
+                charset = charset.replace("\"", "").replace("'", "").trim();
+                return charset.isEmpty() ? null : charset;
             }
         }
-        return "UTF-8";
+        return null;
+    }
+
+    /**
+     * @return {@code uri} 是否属于已知的短链接服务，只有这些地址会被 {@link #unredirect(URI)} 解析
+     */
+    public static boolean isRedirector(URI uri) {
+        return REDIRECTOR_DOMAINS.contains(uri.getHost());
     }
 
     public static URI unredirect(URI uri) throws IOException {
-        if (!REDIRECTOR_DOMAINS.contains(uri.getHost())) {
-            return uri;
-        }
-        URL url = uri.toURL();
-        HttpURLConnection connection = safelyOpenConnection(url);
-        connection.setInstanceFollowRedirects(false);
-        connection.setDoInput(false);
-        connection.setRequestMethod("HEAD");
-        connection.setRequestProperty("User-Agent", "ZXing (Android)");
-        try {
-            int responseCode = safelyConnect(connection);
-            switch (responseCode) {
-                case HttpURLConnection.HTTP_MULT_CHOICE:
-                case HttpURLConnection.HTTP_MOVED_PERM:
-                case HttpURLConnection.HTTP_MOVED_TEMP:
-                case HttpURLConnection.HTTP_SEE_OTHER:
-                case 307: // No constant for 307 Temporary Redirect ?
-                    String location = connection.getHeaderField("Location");
-                    if (location != null) {
-                        try {
-                            return new URI(location);
-                        } catch (URISyntaxException e) {
-                            // nevermind
-                        }
+        return resolveRedirect(uri).getTarget();
+    }
+
+    /**
+     * 与 {@link #unredirect(URI)} 相同，同时返回响应头中的缓存时间。
+     */
+    public static Redirect resolveRedirect(URI uri) throws IOException {
+        if (!isRedirector(uri)) {
+            return new Redirect(uri, -1L);
+        }
+        HttpRequest request = newRequest("HEAD", uri.toURL(), System.currentTimeMillis() + DEADLINE_MS);
+        try (HttpResponse response = transport.execute(request)) {
+            long maxAgeMs = getMaxAgeMs(response);
+            if (isRedirect(response.getCode())) {
+                String location = response.getHeader("Location");
+                if (location != null) {
+                    try {
+                        return new Redirect(new URI(location), maxAgeMs);
+                    } catch (URISyntaxException e) {
+                        // nevermind
+                    }
+                }
+            }
+            return new Redirect(uri, maxAgeMs);
+        }
+    }
+
+    /**
+     * 根据 Cache-Control 或 Expires 计算响应可以缓存多久。
+     *
+     * @return 毫秒数，不允许缓存时为 0，响应头没有说明时为 -1
+     */
+    private static long getMaxAgeMs(HttpResponse response) {
+        String cacheControl = response.getHeader("Cache-Control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                String token = directive.trim().toLowerCase(Locale.US);
+                if (token.equals("no-store") || token.equals("no-cache")) {
+                    return 0L;
+                }
+                if (token.startsWith("max-age=")) {
+                    try {
+                        return Math.max(0L, Long.parseLong(token.substring("max-age=".length()).trim()) * 1000L);
+                    } catch (NumberFormatException nfe) {
+                        // 忽略，继续看 Expires
                     }
+                }
+            }
+        }
+        String expires = response.getHeader("Expires");
+        if (expires != null) {
+            long expiresAt = parseHttpDate(expires);
+            if (expiresAt < 0) {
+                // 无效的日期（如 "0"）按已过期处理
+                return 0L;
+            }
+            String date = response.getHeader("Date");
+            long now = date == null ? -1L : parseHttpDate(date);
+            return Math.max(0L, expiresAt - (now < 0 ? System.currentTimeMillis() : now));
+        }
+        return -1L;
+    }
+
+    private static long parseHttpDate(String value) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value).getTime();
+        } catch (ParseException pe) {
+            return -1L;
+        }
+    }
+
+    /**
+     * 一跳重定向的结果。
+     */
+    public static final class Redirect {
+        private final URI target;
+        private final long maxAgeMs;
+
+        Redirect(URI target, long maxAgeMs) {
+            this.target = target;
+            this.maxAgeMs = maxAgeMs;
+        }
+
+        /**
+         * @return 重定向的目标，没有重定向时是原地址
+         */
+        public URI getTarget() {
+            return target;
+        }
+
+        /**
+         * @return 响应头允许缓存的毫秒数，不允许缓存时为 0，没有说明时为 -1
+         */
+        public long getMaxAgeMs() {
+            return maxAgeMs;
+        }
+    }
+
+    /**
+     * 压缩数据被字节上限截断时，{@link GZIPInputStream} 会抛出 {@link EOFException}；这里把它当成正常的结束，
+     * 读到的部分照常交给 {@link BodyHandler}。网络连接提前断开等其他情况仍然抛出。
+     */
+    private static final class TruncatedGzipInputStream extends FilterInputStream {
+
+        private final BoundedInputStream raw;
+        private boolean ended;
+
+        TruncatedGzipInputStream(BoundedInputStream raw) throws IOException {
+            super(new GZIPInputStream(raw));
+            this.raw = raw;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int read = read(one, 0, 1);
+            return read < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            try {
+                return super.read(buffer, offset, length);
+            } catch (EOFException eofe) {
+                if (!raw.isTruncated()) {
+                    throw eofe;
+                }
+                ended = true;
+                return -1;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return super.skip(n);
+            } catch (EOFException eofe) {
+                if (!raw.isTruncated()) {
+                    throw eofe;
+                }
+                ended = true;
+                return 0L;
             }
-            return uri;
-        } finally {
-            connection.disconnect();
         }
     }
 
+    /**
+     * 服务器正常作答，但响应不能使用：错误状态码、没有 Location 的重定向。与连接失败、超时不同，
+     * 短时间内重试也会得到同样的结果。
+     */
+    public static final class HttpStatusException extends IOException {
+
+        private final int code;
+
+        HttpStatusException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+
+        /**
+         * @return 最后一个响应的状态码
+         */
+        public int getCode() {
+            return code;
+        }
+    }
+
+    /**
+     * 处理流式读取的响应体，见 {@link #downloadViaHttp(String, ContentType, long, BodyHandler)}。
+     */
+    public interface BodyHandler<T> {
+        /**
+         * @param body    已经解压、带字节上限和时限的响应体，返回后会被关闭。到达上限时与正常结束一样返回 -1，
+         *                压缩的响应也是如此
+         * @param charset 响应头中声明的编码，没有时为 {@code null}
+         */
+        T handle(InputStream body, String charset) throws IOException;
+    }
+
     /**
      * Enumeration of supported HTTP content types
      */
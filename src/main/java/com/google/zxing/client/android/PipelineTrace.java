@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * 扫码流水线各阶段的 {@link Trace} 区段，用 systrace / Perfetto 抓取后可以看到每一帧在哪一步花了多少时间。
+ * {@link Trace} 需要 API 18，更低的版本上什么也不做；没有在抓取时开销可以忽略。
+ * <p>
+ * {@link #begin(String)} 和 {@link #end()} 必须在同一个线程上成对调用，通常放在 try/finally 里。
+ */
+public final class PipelineTrace {
+    public static final String CAMERA_OPEN = "Scan:cameraOpen";
+    public static final String FRAME_DELIVERY = "Scan:frameDelivery";
+    public static final String BINARIZE = "Scan:binarize";
+    public static final String DETECT = "Scan:detect";
+    public static final String DECODE = "Scan:decode";
+    public static final String RESULT_PARSE = "Scan:resultParse";
+    public static final String UI_BIND = "Scan:uiBind";
+
+    private static final boolean SUPPORTED = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    private PipelineTrace() {
+    }
+
+    public static void begin(String section) {
+        if (SUPPORTED) {
+            Trace.beginSection(section);
+        }
+    }
+
+    public static void end() {
+        if (SUPPORTED) {
+            Trace.endSection();
+        }
+    }
+}
@@ -41,10 +41,15 @@ public final class PreferencesActivity extends Activity {
     public static final String KEY_COPY_TO_CLIPBOARD = "preferences_copy_to_clipboard";
     public static final String KEY_FRONT_LIGHT_MODE = "preferences_front_light_mode";
     public static final String KEY_BULK_MODE = "preferences_bulk_mode";
+    public static final String KEY_PIPELINED_PREVIEW = "preferences_pipelined_preview";
+    public static final String KEY_DECODER_WARM_UP = "preferences_decoder_warm_up";
+    public static final String KEY_DEBUG_OVERLAY = "preferences_debug_overlay";
     public static final String KEY_REMEMBER_DUPLICATES = "preferences_remember_duplicates";
     public static final String KEY_ENABLE_HISTORY = "preferences_history";
     public static final String KEY_SUPPLEMENTAL = "preferences_supplemental";
     public static final String KEY_AUTO_FOCUS = "preferences_auto_focus";
+    public static final String KEY_AUTO_FOCUS_ON_FEEDBACK = "preferences_auto_focus_on_feedback";
+    public static final String KEY_FOCUS_AREA_ON_CODE = "preferences_focus_area_on_code";
     public static final String KEY_INVERT_SCAN = "preferences_invert_scan";
     public static final String KEY_SEARCH_COUNTRY = "preferences_search_country";
     public static final String KEY_DISABLE_AUTO_ORIENTATION = "preferences_orientation";
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 短链接解析结果的缓存：同一个印刷出来的码被反复扫描时，直接给出 {@link HttpHelper#unredirect(URI)} 的结果，不再访问网络。
+ * <p>
+ * 缓存时间取自响应头的 Cache-Control 或 Expires，没有时使用默认值。条目按最近使用保留固定数量，
+ * 并写入缓存目录下的一个文件，应用重启后仍然有效。同一地址正在解析时，其他线程等待同一个请求的结果，不会重复访问网络。
+ * <p>
+ * 方法会访问网络和磁盘，不要在主线程上调用。
+ */
+public final class RedirectCache {
+    private static final String TAG = RedirectCache.class.getSimpleName();
+    private static final String FILE_NAME = "redirects";
+    private static final int MAX_ENTRIES = 256;
+    private static final long DEFAULT_TTL_MS = 60L * 60 * 1000;
+    // 即使服务器允许更久，也最多缓存一周
+    private static final long MAX_TTL_MS = 7L * 24 * 60 * 60 * 1000;
+    private static RedirectCache instance;
+
+    private final File file;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<String, FutureTask<URI>> inFlight = new HashMap<>();
+    // 写文件放在这个线程上，解析线程不等待磁盘
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private boolean loaded;
+
+    private RedirectCache(Context context) {
+        file = new File(context.getCacheDir(), FILE_NAME);
+    }
+
+    public static synchronized RedirectCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new RedirectCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * 带缓存的 {@link HttpHelper#unredirect(URI)}。
+     */
+    public URI unredirect(final URI uri) throws IOException {
+        if (!HttpHelper.isRedirector(uri)) {
+            return uri;
+        }
+        final String key = uri.toString();
+        FutureTask<URI> task;
+        boolean owner = false;
+        synchronized (this) {
+            loadIfNeeded();
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > System.currentTimeMillis()) {
+                    return entry.target;
+                }
+                entries.remove(key);
+            }
+            task = inFlight.get(key);
+            if (task == null) {
+                task = new FutureTask<>(new Callable<URI>() {
+                    @Override
+                    public URI call() throws IOException {
+                        return resolve(key, uri);
+                    }
+                });
+                inFlight.put(key, task);
+                owner = true;
+            }
+        }
+        if (owner) {
+            // 第一个请求这个地址的线程负责解析，其他线程在下面等待结果
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    inFlight.remove(key);
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException ie) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private URI resolve(String key, URI uri) throws IOException {
+        HttpHelper.Redirect redirect = HttpHelper.resolveRedirect(uri);
+        long maxAgeMs = redirect.getMaxAgeMs();
+        long ttl = maxAgeMs < 0 ? DEFAULT_TTL_MS : Math.min(maxAgeMs, MAX_TTL_MS);
+        if (ttl > 0) {
+            synchronized (this) {
+                entries.put(key, new Entry(redirect.getTarget(), System.currentTimeMillis() + ttl));
+                scheduleSave();
+            }
+        }
+        return redirect.getTarget();
+    }
+
+    private void loadIfNeeded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.isFile()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader =
+                     new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // 每行：过期时间、原地址、目标地址，以制表符分隔
+                String[] fields = line.split("\t");
+                if (fields.length != 3) {
+                    continue;
+                }
+                try {
+                    long expiresAt = Long.parseLong(fields[0]);
+                    if (expiresAt > now) {
+                        entries.put(fields[1], new Entry(new URI(fields[2]), expiresAt));
+                    }
+                } catch (NumberFormatException | URISyntaxException e) {
+                    Log.w(TAG, "Skipping bad line in " + file);
+                }
+            }
+        } catch (IOException ioe) {
+            Log.w(TAG, "Couldn't read " + file, ioe);
+        }
+        Log.i(TAG, "Loaded " + entries.size() + " redirects");
+    }
+
+    private void scheduleSave() {
+        final List<String> lines = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            lines.add(entry.getValue().expiresAt + "\t" + entry.getKey() + '\t' + entry.getValue().target);
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                save(lines);
+            }
+        });
+    }
+
+    private void save(List<String> lines) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException ioe) {
+            Log.w(TAG, "Couldn't write " + temp, ioe);
+            return;
+        }
+        // 先写临时文件再改名，读取时不会看到写了一半的文件
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Couldn't rename " + temp);
+        }
+    }
+
+    private static final class Entry {
+        final URI target;
+        final long expiresAt;
+
+        Entry(URI target, long expiresAt) {
+            this.target = target;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
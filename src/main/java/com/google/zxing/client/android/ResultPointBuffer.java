@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 定位点的单生产者/单消费者无锁环形队列，坐标保存在 float 数组里，添加和读取都不分配对象。
+ * 只允许一个线程（解码线程）写入，一个线程（UI 线程）读取，双方都不会因为对方而阻塞：
+ * 生产者先写坐标再发布 {@code head}，消费者读到 {@code head} 后再读坐标，读完发布 {@code tail} 归还空间。
+ * 队列满时丢弃新的点，UI 每帧都会取空队列，所以实际上很少发生。
+ */
+final class ResultPointBuffer {
+
+    private final float[] xs;
+    private final float[] ys;
+    private final int mask;
+    // 下一个写入的位置，只由生产者修改
+    private final AtomicLong head = new AtomicLong();
+    // 下一个读取的位置，只由消费者修改
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity 最少容纳的点数，实际容量向上取整到 2 的幂
+     */
+    ResultPointBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        xs = new float[size];
+        ys = new float[size];
+        mask = size - 1;
+    }
+
+    int capacity() {
+        return xs.length;
+    }
+
+    /**
+     * 只能在生产者线程上调用。
+     *
+     * @return 队列已满、点被丢弃时返回 {@code false}
+     */
+    boolean offer(float x, float y) {
+        long currentHead = head.get();
+        if (currentHead - tail.get() >= xs.length) {
+            return false;
+        }
+        int index = (int) currentHead & mask;
+        xs[index] = x;
+        ys[index] = y;
+        head.lazySet(currentHead + 1);
+        return true;
+    }
+
+    /**
+     * 按从旧到新的顺序取出队列里的全部点。只能在消费者线程上调用。
+     *
+     * @param outXs 长度至少为 {@link #capacity()}
+     * @param outYs 长度至少为 {@link #capacity()}
+     * @return 取出的点数
+     */
+    int drainTo(float[] outXs, float[] outYs) {
+        long currentTail = tail.get();
+        long currentHead = head.get();
+        int count = (int) (currentHead - currentTail);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (currentTail + i) & mask;
+            outXs[i] = xs[index];
+            outYs[i] = ys[index];
+        }
+        tail.lazySet(currentHead);
+        return count;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+/**
+ * 取景框上绘制的结果点：本次绘制新取出的点和上次绘制的点，两组坐标数组交替使用，逐帧切换时不分配对象。
+ * 点由解码线程通过 {@link #offer(float, float)} 放进 {@link ResultPointBuffer}，其余方法只能在绘制线程上调用。
+ */
+final class ResultPointFrames {
+
+    private final ResultPointBuffer buffer;
+    private float[] currentXs;
+    private float[] currentYs;
+    private int currentCount;
+    private float[] lastXs;
+    private float[] lastYs;
+    private int lastCount;
+
+    ResultPointFrames(int capacity) {
+        buffer = new ResultPointBuffer(capacity);
+        int size = buffer.capacity();
+        currentXs = new float[size];
+        currentYs = new float[size];
+        lastXs = new float[size];
+        lastYs = new float[size];
+    }
+
+    /**
+     * 只能由一个解码线程调用，不会等待绘制线程。
+     */
+    void offer(float x, float y) {
+        buffer.offer(x, y);
+    }
+
+    /**
+     * 本次的点变成上次的点，再从缓冲区取出新的点。每次绘制调用一次。
+     */
+    void advance() {
+        float[] swapXs = lastXs;
+        float[] swapYs = lastYs;
+        lastXs = currentXs;
+        lastYs = currentYs;
+        lastCount = currentCount;
+        currentXs = swapXs;
+        currentYs = swapYs;
+        currentCount = buffer.drainTo(currentXs, currentYs);
+    }
+
+    float[] getCurrentXs() {
+        return currentXs;
+    }
+
+    float[] getCurrentYs() {
+        return currentYs;
+    }
+
+    int getCurrentCount() {
+        return currentCount;
+    }
+
+    float[] getLastXs() {
+        return lastXs;
+    }
+
+    float[] getLastYs() {
+        return lastYs;
+    }
+
+    int getLastCount() {
+        return lastCount;
+    }
+
+}
@@ -16,44 +16,61 @@
 
 package com.google.zxing.client.android;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
 import com.google.zxing.ResultPoint;
 import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.camera.PipelineCounters;
+import com.google.zxing.client.android.camera.PipelineMetrics;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Locale;
 
 /**
  * 这个视图覆盖在相机预览画面的上，它增加了取景框和外部不透明遮罩，以及激光扫描仪动画和结果点。
+ * 动画由 {@link Choreographer} 逐帧驱动，只在扫描动画可见时运行；绘制过程中不分配对象，结果点保存在定长的 float 数组里。
+ * <p>
+ * 打开调试信息后，取景框左上角还会显示 {@link PipelineMetrics} 中的相机帧率、解码帧率、解码耗时的 95% 分位数和丢帧率，
+ * 每秒更新一次。
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-public final class ViewfinderView extends View {
+public final class ViewfinderView extends View implements Choreographer.FrameCallback {
     private static final int[] SCANNER_ALPHA = {0, 64, 128, 192, 255, 192, 128, 64};
-    private static final long ANIMATION_DELAY = 16L;
     private static final int CURRENT_POINT_OPACITY = 0xA0;
     private static final int MAX_RESULT_POINTS = 20;
     private static final int POINT_SIZE = 6;
+    private static final long DEBUG_INTERVAL_MS = 1000L;
+    private static final float DEBUG_TEXT_SIZE_SP = 12.0f;
     private final Paint paint;
     private final int maskColor;
     private final int resultColor;
     private final int laserColor;
     private final int resultPointColor;
+    private final ResultPointFrames possibleResultPoints;
+    private final float[] screenPoint;
     private CameraManager cameraManager;
     private Bitmap resultBitmap;
     private int scannerAlpha;
-    private List<ResultPoint> possibleResultPoints;
-    private List<ResultPoint> lastPossibleResultPoints;
     private int laserFrame;
+    private boolean frameScheduled;
+    private final Paint debugPaint;
+    private boolean debugOverlay;
+    // 调试信息每秒更新一次，只在那时分配字符串
+    private String debugRates;
+    private String debugLatency;
+    private long debugSampleTime;
+    private long debugCameraFrames;
+    private long debugDecodes;
+    private long debugDroppedFrames;
 
     // This constructor is used when the class is built from an XML resource.
     public ViewfinderView(Context context, AttributeSet attrs) {
@@ -65,15 +82,29 @@ public final class ViewfinderView extends View {
         laserColor = resources.getColor(R.color.viewfinder_laser);
         resultPointColor = resources.getColor(R.color.possible_result_points);
         scannerAlpha = 0;
-        possibleResultPoints = new ArrayList<>(5);
-        lastPossibleResultPoints = null;
+        possibleResultPoints = new ResultPointFrames(MAX_RESULT_POINTS);
+        screenPoint = new float[2];
+        debugPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        debugPaint.setColor(resources.getColor(R.color.viewfinder_debug_text));
+        debugPaint.setTextSize(DEBUG_TEXT_SIZE_SP * resources.getDisplayMetrics().scaledDensity);
     }
 
     public void setCameraManager(CameraManager cameraManager) {
         this.cameraManager = cameraManager;
+        debugRates = null;
+        debugSampleTime = 0L;
+    }
+
+    /**
+     * 是否在取景框内显示流水线的运行统计。
+     */
+    public void setDebugOverlayEnabled(boolean enabled) {
+        debugOverlay = enabled;
+        debugRates = null;
+        debugSampleTime = 0L;
+        invalidate();
     }
 
-    @SuppressLint("DrawAllocation")
     @Override
     public void onDraw(Canvas canvas) {
         if (cameraManager == null) {
@@ -94,61 +125,135 @@ public final class ViewfinderView extends View {
         canvas.drawRect(frame.right + 1, frame.top, width, frame.bottom + 1, paint);
         canvas.drawRect(0, frame.bottom + 1, width, height, paint);
 
+        if (resultBitmap != null) {
+            // Draw the opaque result bitmap over the scanning rectangle
+            paint.setAlpha(CURRENT_POINT_OPACITY);
+            canvas.drawBitmap(resultBitmap, null, frame, paint);
+            // 显示结果图时没有动画，不再请求下一帧
+            return;
+        }
+
         // 在取景框绘制一条“激光扫描仪”线来显示解码是活跃的
         paint.setColor(laserColor);
 //        paint.setAlpha(SCANNER_ALPHA[scannerAlpha]);//闪烁
         scannerAlpha = (scannerAlpha + 1) % SCANNER_ALPHA.length;
         canvas.drawRect(frame.left + 2, frame.top + laserFrame, frame.right - 1, frame.top + laserFrame + POINT_SIZE, paint);
-        //每16ms刷新一次，刷新60帧用时1s
+        //每帧刷新一次，60帧用时1s
         laserFrame += frame.height() / 90;
         laserFrame = laserFrame > frame.height() ? 0 : laserFrame;
 
-        if (resultBitmap != null) {
-            // Draw the opaque result bitmap over the scanning rectangle
-            paint.setAlpha(CURRENT_POINT_OPACITY);
-            canvas.drawBitmap(resultBitmap, null, frame, paint);
-        } else {
-            float scaleX = frame.width() / (float) previewFrame.width();
-            float scaleY = frame.height() / (float) previewFrame.height();
-
-            List<ResultPoint> currentPossible = possibleResultPoints;
-            List<ResultPoint> currentLast = lastPossibleResultPoints;
-            int frameLeft = frame.left;
-            int frameTop = frame.top;
-            if (currentPossible.isEmpty()) {
-                lastPossibleResultPoints = null;
-            } else {
-                possibleResultPoints = new ArrayList<>(5);
-                lastPossibleResultPoints = currentPossible;
-                paint.setAlpha(CURRENT_POINT_OPACITY);
-                paint.setColor(resultPointColor);
-                synchronized (currentPossible) {
-                    for (ResultPoint point : currentPossible) {
-                        canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-                                frameTop + (int) (point.getY() * scaleY),
-                                POINT_SIZE, paint);
-                    }
-                }
-            }
-            if (currentLast != null) {
-                paint.setAlpha(CURRENT_POINT_OPACITY / 2);
-                paint.setColor(resultPointColor);
-                synchronized (currentLast) {
-                    float radius = POINT_SIZE / 2.0f;
-                    for (ResultPoint point : currentLast) {
-                        canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-                                frameTop + (int) (point.getY() * scaleY),
-                                radius, paint);
-                    }
-                }
+        ResultPointFrames points = possibleResultPoints;
+        points.advance();
+        paint.setColor(resultPointColor);
+        paint.setAlpha(CURRENT_POINT_OPACITY);
+        drawPoints(canvas, points.getCurrentXs(), points.getCurrentYs(), points.getCurrentCount(), POINT_SIZE);
+        paint.setAlpha(CURRENT_POINT_OPACITY / 2);
+        drawPoints(canvas, points.getLastXs(), points.getLastYs(), points.getLastCount(), POINT_SIZE / 2.0f);
+
+        if (debugOverlay) {
+            drawDebugOverlay(canvas, frame);
+        }
+
+        scheduleNextFrame();
+    }
+
+    // 画在取景框内部，逐帧刷新时只重绘取景框也能更新
+    private void drawDebugOverlay(Canvas canvas, Rect frame) {
+        long now = SystemClock.uptimeMillis();
+        if (now - debugSampleTime >= DEBUG_INTERVAL_MS) {
+            sampleDebugText(cameraManager.getPipelineMetrics(), now);
+        }
+        if (debugRates != null) {
+            // 分两行，窄的取景框也放得下
+            float x = frame.left + POINT_SIZE;
+            float y = frame.top + POINT_SIZE - debugPaint.ascent();
+            canvas.drawText(debugRates, x, y, debugPaint);
+            canvas.drawText(debugLatency, x, y + debugPaint.getFontSpacing(), debugPaint);
+        }
+    }
+
+    private void sampleDebugText(PipelineMetrics metrics, long now) {
+        PipelineCounters counters = metrics.getCounters();
+        long cameraFrames = counters.get(PipelineCounters.Counter.FRAMES_DELIVERED);
+        long decodes = counters.get(PipelineCounters.Counter.FRAMES_DECODED);
+        long droppedFrames = counters.get(PipelineCounters.Counter.FRAMES_DROPPED) +
+                counters.get(PipelineCounters.Counter.FRAMES_SKIPPED);
+        // 计数被清零后等下一次采样再显示
+        if (debugSampleTime > 0L && cameraFrames >= debugCameraFrames && decodes >= debugDecodes &&
+                droppedFrames >= debugDroppedFrames) {
+            long elapsed = now - debugSampleTime;
+            long newFrames = cameraFrames - debugCameraFrames;
+            float fps = newFrames * 1000f / elapsed;
+            float decodeFps = (decodes - debugDecodes) * 1000f / elapsed;
+            float dropRate = newFrames == 0 ? 0f : (droppedFrames - debugDroppedFrames) * 100f / newFrames;
+            debugRates = String.format(Locale.US, "%.1f fps  decode %.1f fps", fps, decodeFps);
+            debugLatency = String.format(Locale.US, "p95 %d ms  drop %.0f%%",
+                    metrics.getDecodeLatencyPercentile(95), dropRate);
+        }
+        debugSampleTime = now;
+        debugCameraFrames = cameraFrames;
+        debugDecodes = decodes;
+        debugDroppedFrames = droppedFrames;
+    }
+
+    private void drawPoints(Canvas canvas, float[] xs, float[] ys, int count, float radius) {
+        float[] point = screenPoint;
+        for (int i = 0; i < count; i++) {
+            if (cameraManager.previewToScreen(xs[i], ys[i], point)) {
+                canvas.drawCircle(point[0], point[1], radius, paint);
             }
         }
-        // 在动画间隔请求另一次更新，但只重新绘制取景框内部
-        postInvalidateDelayed(ANIMATION_DELAY,
-                frame.left - POINT_SIZE,
-                frame.top - POINT_SIZE,
-                frame.right + POINT_SIZE,
-                frame.bottom + POINT_SIZE);
+    }
+
+    private void scheduleNextFrame() {
+        if (!frameScheduled && getVisibility() == VISIBLE && getWindowToken() != null) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void cancelNextFrame() {
+        if (frameScheduled) {
+            frameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        Rect frame = cameraManager == null ? null : cameraManager.getFramingRect();
+        if (frame == null) {
+            invalidate();
+        } else {
+            // 只重新绘制取景框内部
+            invalidate(frame.left - POINT_SIZE,
+                    frame.top - POINT_SIZE,
+                    frame.right + POINT_SIZE,
+                    frame.bottom + POINT_SIZE);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        cancelNextFrame();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (visibility == VISIBLE) {
+            invalidate();
+        } else {
+            cancelNextFrame();
+        }
     }
 
     public void drawViewfinder() {
@@ -167,19 +272,15 @@ public final class ViewfinderView extends View {
      */
     public void drawResultBitmap(Bitmap barcode) {
         resultBitmap = barcode;
+        cancelNextFrame();
         invalidate();
     }
 
+    /**
+     * 添加解码过程中找到的点，坐标为预览帧坐标。只能由一个解码线程调用，不会等待 UI 线程的绘制。
+     */
     public void addPossibleResultPoint(ResultPoint point) {
-        List<ResultPoint> points = possibleResultPoints;
-        synchronized (points) {
-            points.add(point);
-            int size = points.size();
-            if (size > MAX_RESULT_POINTS) {
-                // trim it
-                points.subList(0, size - MAX_RESULT_POINTS / 2).clear();
-            }
-        }
+        possibleResultPoints.offer(point.getX(), point.getY());
     }
 
 }
@@ -19,7 +19,7 @@ package com.google.zxing.client.android.camera;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.hardware.Camera;
-import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
@@ -27,14 +27,27 @@ import com.google.zxing.client.android.PreferencesActivity;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
-
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对焦调度。默认根据解码反馈触发对焦：连续多帧找到了定位符但解码失败时才重新对焦，解码成功后的一段时间内不对焦；
+ * 关闭 {@link PreferencesActivity#KEY_AUTO_FOCUS_ON_FEEDBACK} 则退回到每 {@link #AUTO_FOCUS_INTERVAL_MS} 盲目对焦一次。
+ * 所有延迟对焦都在一个单线程的定时执行器上调度，不再占用并阻塞线程池中的线程。
+ */
 @SuppressWarnings("deprecation") // camera APIs
 final class AutoFocusManager implements Camera.AutoFocusCallback {
 
     private static final String TAG = AutoFocusManager.class.getSimpleName();
 
     private static final long AUTO_FOCUS_INTERVAL_MS = 1200L;
+    // 根据反馈对焦时，长时间没有任何反馈也要兜底对焦一次，比如画面里还找不到定位符的时候
+    private static final long FEEDBACK_FALLBACK_INTERVAL_MS = 4000L;
+    private static final long SUPPRESS_AFTER_DECODE_MS = 2000L;
+    private static final int NEAR_MISSES_BEFORE_FOCUS = 3;
     private static final Collection<String> FOCUS_MODES_CALLING_AF;
 
     static {
@@ -44,10 +57,16 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
     }
 
     private final boolean useAutoFocus;
+    private final boolean focusOnFeedback;
     private final Camera camera;
+    private final ScheduledExecutorService scheduler;
+    private final long startTime;
     private boolean stopped;
     private boolean focusing;
-    private AsyncTask<?, ?, ?> outstandingTask;
+    private boolean decodedOnce;
+    private int nearMisses;
+    private long suppressFocusUntil;
+    private ScheduledFuture<?> outstandingTask;
 
     AutoFocusManager(Context context, Camera camera) {
         this.camera = camera;
@@ -56,7 +75,11 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
         useAutoFocus =
                 sharedPrefs.getBoolean(PreferencesActivity.KEY_AUTO_FOCUS, true) &&
                         FOCUS_MODES_CALLING_AF.contains(currentFocusMode);
-        Log.i(TAG, "Current focus mode '" + currentFocusMode + "'; use auto focus? " + useAutoFocus);
+        focusOnFeedback = sharedPrefs.getBoolean(PreferencesActivity.KEY_AUTO_FOCUS_ON_FEEDBACK, true);
+        scheduler = useAutoFocus ? Executors.newSingleThreadScheduledExecutor() : null;
+        startTime = SystemClock.uptimeMillis();
+        Log.i(TAG, "Current focus mode '" + currentFocusMode + "'; use auto focus? " + useAutoFocus +
+                "; focus on decode feedback? " + focusOnFeedback);
         start();
     }
 
@@ -79,10 +102,9 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
 
     private synchronized void autoFocusAgainLater() {
         if (!stopped && outstandingTask == null) {
-            AutoFocusTask newTask = new AutoFocusTask();
+            long delay = focusOnFeedback ? FEEDBACK_FALLBACK_INTERVAL_MS : AUTO_FOCUS_INTERVAL_MS;
             try {
-                newTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-                outstandingTask = newTask;
+                outstandingTask = scheduler.schedule(new AutoFocusTask(), delay, TimeUnit.MILLISECONDS);
             } catch (RejectedExecutionException ree) {
                 Log.w(TAG, "Could not request auto focus", ree);
             }
@@ -95,10 +117,73 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
         autoFocusAgainLater();
     }
 
+    /**
+     * 一帧解码成功。解码正常说明焦点没问题，接下来一段时间内不再对焦。
+     */
+    synchronized void onDecodeSucceeded() {
+        if (!decodedOnce) {
+            decodedOnce = true;
+            Log.i(TAG, "Time to first decode with " + (focusOnFeedback ? "feedback" : "interval") +
+                    " focus policy: " + (SystemClock.uptimeMillis() - startTime) + " ms");
+        }
+        nearMisses = 0;
+        suppressFocusUntil = SystemClock.uptimeMillis() + SUPPRESS_AFTER_DECODE_MS;
+    }
+
+    /**
+     * 一帧解码失败。
+     *
+     * @param nearMiss {@code true} 表示找到了定位符但解码失败，通常是因为画面不够清晰
+     */
+    synchronized void onDecodeFailed(boolean nearMiss) {
+        if (!useAutoFocus || !focusOnFeedback || stopped || !nearMiss) {
+            return;
+        }
+        nearMisses++;
+        if (nearMisses >= NEAR_MISSES_BEFORE_FOCUS) {
+            focusNowUnlessSuppressed();
+        }
+    }
+
+    /**
+     * 对焦区域移到了条码上，尽快在新区域上重新对焦。
+     */
+    synchronized void onFocusAreaChanged() {
+        if (useAutoFocus && !stopped) {
+            focusNowUnlessSuppressed();
+        }
+    }
+
+    private synchronized void focusNowUnlessSuppressed() {
+        if (!focusing && SystemClock.uptimeMillis() >= suppressFocusUntil) {
+            nearMisses = 0;
+            cancelOutstandingTask();
+            start();
+        }
+    }
+
+    /**
+     * 放弃正在进行的对焦，立即重新开始一轮。
+     */
+    synchronized void restart() {
+        if (useAutoFocus && !stopped) {
+            cancelOutstandingTask();
+            try {
+                camera.cancelAutoFocus();
+            } catch (RuntimeException re) {
+                // Have heard RuntimeException reported in Android 4.0.x+; continue?
+                Log.w(TAG, "Unexpected exception while cancelling focusing", re);
+            }
+            focusing = false;
+            start();
+        }
+    }
+
     synchronized void stop() {
         stopped = true;
         if (useAutoFocus) {
             cancelOutstandingTask();
+            scheduler.shutdownNow();
             // Doesn't hurt to call this even if not focusing
             try {
                 camera.cancelAutoFocus();
@@ -111,23 +196,25 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
 
     private synchronized void cancelOutstandingTask() {
         if (outstandingTask != null) {
-            if (outstandingTask.getStatus() != AsyncTask.Status.FINISHED) {
-                outstandingTask.cancel(true);
-            }
+            outstandingTask.cancel(false);
             outstandingTask = null;
         }
     }
 
-    private final class AutoFocusTask extends AsyncTask<Object, Object, Object> {
-        @Override
-        protected Object doInBackground(Object... voids) {
-            try {
-                Thread.sleep(AUTO_FOCUS_INTERVAL_MS);
-            } catch (InterruptedException e) {
-                // continue
-            }
+    private synchronized void onFocusTaskDue() {
+        if (focusOnFeedback && SystemClock.uptimeMillis() < suppressFocusUntil) {
+            // 刚刚解码成功，推迟兜底对焦
+            outstandingTask = null;
+            autoFocusAgainLater();
+        } else {
             start();
-            return null;
+        }
+    }
+
+    private final class AutoFocusTask implements Runnable {
+        @Override
+        public void run() {
+            onFocusTaskDue();
         }
     }
 
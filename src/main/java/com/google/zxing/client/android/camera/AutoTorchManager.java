@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2012 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * 根据预览帧的亮度自动开关闪光灯，用于 {@link FrontLightMode#AUTO}。
+ * 光线传感器测的是屏幕前的亮度，而这里用的是取景框里的平均亮度和高亮分位数，
+ * 没有光线传感器的设备也能用。开和关使用不同的阈值，并且每次切换后至少保持 {@link #MIN_DWELL_MS}，避免闪光灯来回闪。
+ * 只在 {@link CameraManager} 的锁内调用。
+ */
+final class AutoTorchManager {
+
+    private static final String TAG = AutoTorchManager.class.getSimpleName();
+
+    // 亮度取值 0..255
+    private static final int TOO_DARK_MEAN = 45;
+    // 画面里有明显的亮区（比如屏幕上的条码）时不开灯
+    private static final int TOO_DARK_BRIGHT_PERCENTILE = 100;
+    // 开灯后近处的条码会被照亮，关灯阈值要明显高于开灯阈值
+    private static final int BRIGHT_ENOUGH_MEAN = 160;
+    private static final int FRAMES_BEFORE_SWITCH = 5;
+    private static final long MIN_DWELL_MS = 3000L;
+
+    private boolean torchOn;
+    private int pendingFrames;
+    private long lastSwitchTime;
+
+    AutoTorchManager(boolean torchOn) {
+        this.torchOn = torchOn;
+        lastSwitchTime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * 闪光灯被手动开关（比如音量键），以这次设置为准重新计算保持时间。
+     */
+    void onTorchSet(boolean newSetting) {
+        torchOn = newSetting;
+        pendingFrames = 0;
+        lastSwitchTime = SystemClock.uptimeMillis();
+    }
+
+    boolean isTorchOn() {
+        return torchOn;
+    }
+
+    /**
+     * @param mean             取景框内的平均亮度
+     * @param brightPercentile 取景框内亮度的 90% 分位数
+     * @return {@code true} 表示需要切换闪光灯，新的状态见 {@link #isTorchOn()}
+     */
+    boolean onFrame(int mean, int brightPercentile) {
+        boolean wantSwitch;
+        if (torchOn) {
+            wantSwitch = mean >= BRIGHT_ENOUGH_MEAN;
+        } else {
+            wantSwitch = mean <= TOO_DARK_MEAN && brightPercentile <= TOO_DARK_BRIGHT_PERCENTILE;
+        }
+        if (!wantSwitch) {
+            pendingFrames = 0;
+            return false;
+        }
+        pendingFrames++;
+        long now = SystemClock.uptimeMillis();
+        if (pendingFrames < FRAMES_BEFORE_SWITCH || now - lastSwitchTime < MIN_DWELL_MS) {
+            return false;
+        }
+        torchOn = !torchOn;
+        pendingFrames = 0;
+        lastSwitchTime = now;
+        Log.i(TAG, "Turning torch " + (torchOn ? "on" : "off") + " at mean luminance " + mean +
+                ", 90th percentile " + brightPercentile);
+        return true;
+    }
+
+}
@@ -43,6 +43,7 @@ public final class CameraConfigurationManager {
     private final Context context;
     private int cwNeededRotation;
     private int cwRotationFromDisplayToCamera;
+    private boolean frontFacing;
     private Point screenResolution;
     private Point cameraResolution;
     private Point bestPreviewSize;
@@ -88,8 +89,9 @@ public final class CameraConfigurationManager {
         int cwRotationFromNaturalToCamera = camera.getOrientation();
         Log.i(TAG, "Camera at: " + cwRotationFromNaturalToCamera);
 
+        frontFacing = camera.getFacing() == CameraFacing.FRONT;
         // Still not 100% sure about this. But acts like we need to flip this:
-        if (camera.getFacing() == CameraFacing.FRONT) {
+        if (frontFacing) {
             cwRotationFromNaturalToCamera = (360 - cwRotationFromNaturalToCamera) % 360;
             Log.i(TAG, "Front camera overriden to: " + cwRotationFromNaturalToCamera);
         }
@@ -307,6 +309,47 @@ public final class CameraConfigurationManager {
         return screenResolution;
     }
 
+    /**
+     * 把预览帧上的坐标转换成屏幕坐标：预览画面按 {@code cwRotationFromDisplayToCamera} 顺时针旋转后铺满屏幕，前置摄像头还要左右镜像。
+     *
+     * @param out 长度至少为 2，依次写入屏幕上的 x、y；尚未初始化时不写入
+     * @return 是否完成了转换
+     */
+    boolean previewToScreen(float x, float y, float[] out) {
+        Point preview = cameraResolution;
+        Point screen = screenResolution;
+        if (preview == null || screen == null) {
+            return false;
+        }
+        float width = preview.x;
+        float height = preview.y;
+        float screenX;
+        float screenY;
+        switch (cwRotationFromDisplayToCamera) {
+            case 90:
+                screenX = (height - y) / height;
+                screenY = x / width;
+                break;
+            case 180:
+                screenX = (width - x) / width;
+                screenY = (height - y) / height;
+                break;
+            case 270:
+                screenX = y / height;
+                screenY = (width - x) / width;
+                break;
+            default:
+                screenX = x / width;
+                screenY = y / height;
+        }
+        if (frontFacing) {
+            screenX = 1.0f - screenX;
+        }
+        out[0] = screenX * screen.x;
+        out[1] = screenY * screen.y;
+        return true;
+    }
+
     int getCWNeededRotation() {
         return cwNeededRotation;
     }
@@ -17,18 +17,26 @@
 package com.google.zxing.client.android.camera;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.ImageFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.hardware.Camera;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
 import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.client.android.PipelineTrace;
+import com.google.zxing.client.android.PreferencesActivity;
 import com.google.zxing.client.android.camera.open.OpenCamera;
 import com.google.zxing.client.android.camera.open.OpenCameraInterface;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * 这个对象包装了Camera服务对象，并期望成为惟一与之通信的对象,实现封装了获取预览大小的映像所需的步骤，这些映像用于预览和解码。
@@ -52,8 +60,15 @@ public final class CameraManager {
      * clear the handler so it will only receive one message.
      */
     private final PreviewCallback previewCallback;
+    private final StartupMetrics startupMetrics;
+    private final PipelineMetrics pipelineMetrics;
+    private HandlerThread cameraThread;
+    private CountDownLatch pendingOpen;
+    private Exception openFailure;
     private OpenCamera camera;
     private AutoFocusManager autoFocusManager;
+    private FocusAreaManager focusAreaManager;
+    private AutoTorchManager autoTorchManager;
     private Rect framingRect;
     private Rect framingRectInPreview;
     private boolean initialized;
@@ -65,7 +80,9 @@ public final class CameraManager {
     public CameraManager(Context context) {
         this.context = context;
         this.configManager = new CameraConfigurationManager(context);
-        previewCallback = new PreviewCallback(configManager);
+        startupMetrics = new StartupMetrics();
+        pipelineMetrics = new PipelineMetrics();
+        previewCallback = new PreviewCallback(configManager, startupMetrics, pipelineMetrics.getCounters());
     }
 
     public CameraConfigurationManager getConfigManager() {
@@ -76,22 +93,123 @@ public final class CameraManager {
         return camera;
     }
 
+    public StartupMetrics getStartupMetrics() {
+        return startupMetrics;
+    }
+
+    public PipelineMetrics getPipelineMetrics() {
+        return pipelineMetrics;
+    }
+
+    /**
+     * 在专门的相机线程上打开相机并设置参数，立即返回。可以在 Activity 创建时就调用，与布局加载并行；
+     * 之后的 {@link #openDriver(SurfaceHolder)} 只需等待这一步完成。相机的各种回调也会在该线程上执行。
+     */
+    public void openDriverAsync() {
+        final CountDownLatch latch;
+        synchronized (this) {
+            if (camera != null || pendingOpen != null) {
+                return;
+            }
+            if (cameraThread == null) {
+                cameraThread = new HandlerThread("CameraThread");
+                cameraThread.start();
+            }
+            latch = new CountDownLatch(1);
+            pendingOpen = latch;
+            openFailure = null;
+        }
+        new Handler(cameraThread.getLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    openAndConfigure();
+                } catch (IOException | RuntimeException e) {
+                    synchronized (CameraManager.this) {
+                        openFailure = e;
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+    }
+
     /**
-     * 打开摄像机驱动程序并初始化硬件参数。
+     * 打开摄像机驱动程序并初始化硬件参数。如果之前没有调用 {@link #openDriverAsync()}，会在这里开始打开并等待完成。
      *
      * @param holder 相机将绘制预览帧的Surface对象。
      * @throws IOException 表示相机驱动程序未能打开。
      */
-    public synchronized void openDriver(SurfaceHolder holder) throws IOException {
-        OpenCamera theCamera = camera;
-        if (theCamera == null) {
-            theCamera = OpenCameraInterface.open(requestedCameraId);
+    public void openDriver(SurfaceHolder holder) throws IOException {
+        openDriverAsync();
+        awaitPendingOpen();
+        synchronized (this) {
+            Exception failure = openFailure;
+            openFailure = null;
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            if (camera == null) {
+                throw new IOException("Camera was closed while opening");
+            }
+            camera.getCamera().setPreviewDisplay(holder);
+        }
+    }
+
+    // 相机线程上执行：Camera.open 耗时较长，不持有锁，避免界面线程绘制取景框时被阻塞
+    private void openAndConfigure() throws IOException {
+        int cameraId;
+        synchronized (this) {
+            cameraId = requestedCameraId;
+        }
+        PipelineTrace.begin(PipelineTrace.CAMERA_OPEN);
+        try {
+            OpenCamera theCamera = OpenCameraInterface.open(cameraId);
             if (theCamera == null) {
                 throw new IOException("Camera.open() failed to return object from driver");
             }
-            camera = theCamera;
+            synchronized (this) {
+                camera = theCamera;
+                configure(theCamera);
+            }
+        } finally {
+            PipelineTrace.end();
+        }
+        startupMetrics.markCameraOpened();
+    }
+
+    private void awaitPendingOpen() {
+        CountDownLatch latch;
+        synchronized (this) {
+            latch = pendingOpen;
+        }
+        if (latch == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (pendingOpen == latch) {
+                pendingOpen = null;
+            }
         }
+    }
 
+    private void configure(OpenCamera theCamera) {
         if (!initialized) {
             initialized = true;
             configManager.initFromCameraParameters(theCamera);
@@ -124,8 +242,6 @@ public final class CameraManager {
                 }
             }
         }
-        cameraObject.setPreviewDisplay(holder);
-
     }
 
     /**
@@ -159,16 +275,24 @@ public final class CameraManager {
     }
 
     /**
-     * 如果相机驱动程序仍在使用则关闭，
+     * 如果相机驱动程序仍在使用则关闭，正在后台打开的相机会等它打开后再关闭。
      */
-    public synchronized void closeDriver() {
-        if (camera != null) {
-            camera.getCamera().release();
-            camera = null;
-            // Make sure to clear these each time we close the camera, so that any scanning rect
-            // requested by intent is forgotten.
-            framingRect = null;
-            framingRectInPreview = null;
+    public void closeDriver() {
+        awaitPendingOpen();
+        synchronized (this) {
+            openFailure = null;
+            if (camera != null) {
+                camera.getCamera().release();
+                camera = null;
+                // Make sure to clear these each time we close the camera, so that any scanning rect
+                // requested by intent is forgotten.
+                framingRect = null;
+                framingRectInPreview = null;
+            }
+            if (cameraThread != null) {
+                cameraThread.quit();
+                cameraThread = null;
+            }
         }
     }
 
@@ -178,9 +302,24 @@ public final class CameraManager {
     public synchronized void startPreview() {
         OpenCamera theCamera = camera;
         if (theCamera != null && !previewing) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            if (prefs.getBoolean(PreferencesActivity.KEY_PIPELINED_PREVIEW, true)) {
+                Camera.Parameters parameters = theCamera.getCamera().getParameters();
+                Camera.Size previewSize = parameters.getPreviewSize();
+                int bufferSize = previewSize.width * previewSize.height *
+                        ImageFormat.getBitsPerPixel(parameters.getPreviewFormat()) / 8;
+                previewCallback.startPipeline(theCamera.getCamera(), bufferSize);
+            }
             theCamera.getCamera().startPreview();
             previewing = true;
             autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
+            if (prefs.getBoolean(PreferencesActivity.KEY_FOCUS_AREA_ON_CODE, true)) {
+                FocusAreaManager areaManager = new FocusAreaManager(theCamera.getCamera().getParameters());
+                focusAreaManager = areaManager.isSupported() ? areaManager : null;
+            }
+            if (FrontLightMode.readPref(prefs) == FrontLightMode.AUTO) {
+                autoTorchManager = new AutoTorchManager(configManager.getTorchState(theCamera.getCamera()));
+            }
         }
     }
 
@@ -192,8 +331,11 @@ public final class CameraManager {
             autoFocusManager.stop();
             autoFocusManager = null;
         }
+        focusAreaManager = null;
+        autoTorchManager = null;
         if (camera != null && previewing) {
             camera.getCamera().stopPreview();
+            previewCallback.stopPipeline();
             previewCallback.setHandler(null, 0);
             previewing = false;
         }
@@ -205,25 +347,107 @@ public final class CameraManager {
      * @param newSetting if {@code true}, 如果当前处于关闭状态，则应该打开闪光灯，反之亦然。
      */
     public synchronized void setTorch(boolean newSetting) {
+        if (autoTorchManager != null) {
+            autoTorchManager.onTorchSet(newSetting);
+        }
+        applyTorch(newSetting);
+    }
+
+    private void applyTorch(boolean newSetting) {
         OpenCamera theCamera = camera;
         if (theCamera != null && newSetting != configManager.getTorchState(theCamera.getCamera())) {
-            boolean wasAutoFocusManager = autoFocusManager != null;
-            if (wasAutoFocusManager) {
-                autoFocusManager.stop();
-                autoFocusManager = null;
-            }
             configManager.setTorch(theCamera.getCamera(), newSetting);
-            if (wasAutoFocusManager) {
-                autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
-                autoFocusManager.start();
+            // 有些设备修改参数会打断正在进行的对焦，重新开始一轮，不必重建对焦管理
+            if (autoFocusManager != null) {
+                autoFocusManager.restart();
             }
         }
     }
 
+    /**
+     * @return 是否按画面亮度自动开关闪光灯，即 {@link FrontLightMode#AUTO} 模式且相机已打开
+     */
+    public synchronized boolean isAutoTorchEnabled() {
+        return autoTorchManager != null;
+    }
+
+    /**
+     * 一帧预览画面取景框内的亮度，{@link FrontLightMode#AUTO} 模式下据此开关闪光灯。
+     *
+     * @param mean             平均亮度，0..255
+     * @param brightPercentile 亮度的 90% 分位数，0..255
+     */
+    public synchronized void onFrameLuminance(int mean, int brightPercentile) {
+        if (autoTorchManager != null && autoTorchManager.onFrame(mean, brightPercentile)) {
+            applyTorch(autoTorchManager.isTorchOn());
+        }
+    }
+
+    /**
+     * 通知对焦调度一帧解码成功。
+     */
+    public synchronized void onDecodeSucceeded() {
+        startupMetrics.markFirstDecode();
+        if (autoFocusManager != null) {
+            autoFocusManager.onDecodeSucceeded();
+        }
+        updateFocusAreas();
+    }
+
+    /**
+     * 解码线程用完了一帧预览数据。流水线模式下缓冲区还给相机，之后到下一次请求之前的帧不再计为丢弃。
+     */
+    public synchronized void releasePreviewFrame() {
+        previewCallback.releaseDecodingFrame();
+    }
+
+    /**
+     * 通知对焦调度一帧解码失败。
+     *
+     * @param nearMiss {@code true} 表示找到了定位符但没能解出内容
+     */
+    public synchronized void onDecodeFailed(boolean nearMiss) {
+        if (autoFocusManager != null) {
+            autoFocusManager.onDecodeFailed(nearMiss);
+        }
+        updateFocusAreas();
+    }
+
+    /**
+     * 解码过程中找到的定位点，坐标为预览帧坐标。对焦和测光区域会跟随这些点。
+     */
+    public synchronized void onResultPoint(ResultPoint point) {
+        if (focusAreaManager != null) {
+            focusAreaManager.addPoint(point.getX(), point.getY());
+        }
+    }
+
+    private void updateFocusAreas() {
+        OpenCamera theCamera = camera;
+        if (focusAreaManager == null || theCamera == null ||
+                !focusAreaManager.endFrame(configManager.getCameraResolution())) {
+            return;
+        }
+        Camera cameraObject = theCamera.getCamera();
+        try {
+            Camera.Parameters parameters = cameraObject.getParameters();
+            focusAreaManager.applyTo(parameters);
+            cameraObject.setParameters(parameters);
+        } catch (RuntimeException re) {
+            Log.w(TAG, "Camera rejected focus / metering areas; no longer tracking the code", re);
+            focusAreaManager = null;
+            return;
+        }
+        if (autoFocusManager != null) {
+            autoFocusManager.onFocusAreaChanged();
+        }
+    }
+
     /**
      * A single preview frame will be returned to the handler supplied. The data will arrive as byte[]
      * in the message.obj field, with width and height encoded as message.arg1 and message.arg2,
-     * respectively.
+     * respectively. In pipelined mode the buffer of the previously returned frame is handed back to the
+     * camera, so it must no longer be used once the next frame is requested.
      *
      * @param handler The handler to send the message to.
      * @param message The what field of the message to be sent.
@@ -231,8 +455,12 @@ public final class CameraManager {
     public synchronized void requestPreviewFrame(Handler handler, int message) {
         OpenCamera theCamera = camera;
         if (theCamera != null && previewing) {
-            previewCallback.setHandler(handler, message);
-            theCamera.getCamera().setOneShotPreviewCallback(previewCallback);
+            if (previewCallback.isPipelined()) {
+                previewCallback.requestLatestFrame(handler, message);
+            } else {
+                previewCallback.setHandler(handler, message);
+                theCamera.getCamera().setOneShotPreviewCallback(previewCallback);
+            }
         }
     }
 
@@ -265,6 +493,16 @@ public final class CameraManager {
 //                rect.width(), rect.height(), false);
     }
 
+    /**
+     * 把预览帧（也就是解码结果）上的坐标转换成屏幕坐标。
+     *
+     * @param out 长度至少为 2，依次写入屏幕上的 x、y
+     * @return 相机尚未初始化时返回 {@code false}
+     */
+    public boolean previewToScreen(float x, float y, float[] out) {
+        return configManager.previewToScreen(x, y, out);
+    }
+
     /**
      * Like {@link #getFramingRect} but coordinates are in terms of the preview frame,
      * not UI / screen.
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2012 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.hardware.Camera;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 让对焦和测光区域跟随解码时找到的定位点，而不是固定在画面中央。
+ * 每帧的定位点汇总成一个外接矩形，从预览帧坐标映射到相机的 -1000..1000 坐标系；
+ * 两次更新至少间隔 {@link #MIN_UPDATE_INTERVAL_MS}，对焦区域和测光区域在同一次参数写入中设置。
+ * 只在解码线程上调用。
+ */
+@SuppressWarnings("deprecation") // camera APIs
+final class FocusAreaManager {
+
+    private static final String TAG = FocusAreaManager.class.getSimpleName();
+
+    private static final long MIN_UPDATE_INTERVAL_MS = 1000L;
+    // 这么久没再找到定位点就恢复相机默认的区域
+    private static final long RESET_AFTER_MS = 3000L;
+    private static final int AREA_WEIGHT = 1000;
+    private static final int MIN_AREA_HALF_SIZE = 100;
+    // 区域中心移动小于这个距离时不重新设置
+    private static final int MIN_MOVE = 100;
+
+    private final boolean focusAreasSupported;
+    private final boolean meteringAreasSupported;
+    private float minX;
+    private float minY;
+    private float maxX;
+    private float maxY;
+    private int pointCount;
+    private Rect area;
+    private long lastUpdateTime;
+    private long lastPointsTime;
+
+    FocusAreaManager(Camera.Parameters parameters) {
+        focusAreasSupported = parameters.getMaxNumFocusAreas() > 0;
+        meteringAreasSupported = parameters.getMaxNumMeteringAreas() > 0;
+        Log.i(TAG, "Focus areas supported? " + focusAreasSupported +
+                "; metering areas supported? " + meteringAreasSupported);
+    }
+
+    boolean isSupported() {
+        return focusAreasSupported || meteringAreasSupported;
+    }
+
+    void addPoint(float x, float y) {
+        if (pointCount == 0) {
+            minX = maxX = x;
+            minY = maxY = y;
+        } else {
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        pointCount++;
+    }
+
+    /**
+     * 一帧解码结束，根据这一帧收集到的定位点决定是否需要更新区域。
+     *
+     * @param previewSize 预览帧尺寸，也就是定位点所在的坐标系
+     * @return {@code true} 表示区域变了，需要调用 {@link #applyTo(Camera.Parameters)} 写入相机
+     */
+    boolean endFrame(Point previewSize) {
+        long now = SystemClock.uptimeMillis();
+        Rect newArea = null;
+        // 至少要有两个定位点才能大致确定条码的位置和大小
+        if (pointCount >= 2 && previewSize != null) {
+            newArea = toCameraArea(previewSize);
+            lastPointsTime = now;
+        }
+        pointCount = 0;
+        if (now - lastUpdateTime < MIN_UPDATE_INTERVAL_MS) {
+            return false;
+        }
+        if (newArea == null) {
+            if (area != null && now - lastPointsTime >= RESET_AFTER_MS) {
+                area = null;
+                lastUpdateTime = now;
+                return true;
+            }
+            return false;
+        }
+        if (area != null &&
+                Math.abs(area.centerX() - newArea.centerX()) < MIN_MOVE &&
+                Math.abs(area.centerY() - newArea.centerY()) < MIN_MOVE &&
+                Math.abs(area.width() - newArea.width()) < MIN_MOVE) {
+            return false;
+        }
+        area = newArea;
+        lastUpdateTime = now;
+        return true;
+    }
+
+    void applyTo(Camera.Parameters parameters) {
+        List<Camera.Area> areas = area == null ? null :
+                Collections.singletonList(new Camera.Area(area, AREA_WEIGHT));
+        Log.i(TAG, "Setting focus and metering area to " + area);
+        if (focusAreasSupported) {
+            parameters.setFocusAreas(areas);
+        }
+        if (meteringAreasSupported) {
+            parameters.setMeteringAreas(areas);
+        }
+    }
+
+    private Rect toCameraArea(Point previewSize) {
+        // 定位点是模块中心，四周各留出四分之一的边距把整个条码框进来
+        float marginX = (maxX - minX) / 4;
+        float marginY = (maxY - minY) / 4;
+        int left = toCameraCoordinate(minX - marginX, previewSize.x);
+        int right = toCameraCoordinate(maxX + marginX, previewSize.x);
+        int top = toCameraCoordinate(minY - marginY, previewSize.y);
+        int bottom = toCameraCoordinate(maxY + marginY, previewSize.y);
+        int centerX = (left + right) / 2;
+        int centerY = (top + bottom) / 2;
+        int halfSize = Math.max(MIN_AREA_HALF_SIZE, Math.max(right - left, bottom - top) / 2);
+        return new Rect(clamp(centerX - halfSize),
+                clamp(centerY - halfSize),
+                clamp(centerX + halfSize),
+                clamp(centerY + halfSize));
+    }
+
+    private static int toCameraCoordinate(float value, int size) {
+        return clamp((int) (value * 2000 / size) - 1000);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(-1000, Math.min(1000, value));
+    }
+
+}
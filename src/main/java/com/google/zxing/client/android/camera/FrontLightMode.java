@@ -30,7 +30,7 @@ public enum FrontLightMode {
      */
     ON,
     /**
-     * On only when ambient light is low.
+     * On only when the preview is dark.
      */
     AUTO,
     /**
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 扫码流水线各环节的计数：相机线程、解码线程和主线程各自累加，任何线程都可以随时读取，彼此不会阻塞。
+ * <p>
+ * 每个计数分成几段，线程按 id 选择其中一段累加，读取时把各段相加（与 Java 8 的 {@code LongAdder} 思路相同，
+ * 但它需要 API 24）。每段独占一条缓存行，不同线程累加时不会互相使缓存失效。
+ * 读到的值不是所有计数在同一时刻的快照，用来计算比例已经足够。
+ */
+public final class PipelineCounters {
+
+    public enum Counter {
+        /** 扫描期间（有解码请求在等待或正在解码）相机输出的预览帧 */
+        FRAMES_DELIVERED,
+        /** 交给解码器并完成解码的帧，无论是否识别成功 */
+        FRAMES_DECODED,
+        /** 扫描期间没有解码就放弃的帧：相机还没配置好，或者取景框不在画面内 */
+        FRAMES_SKIPPED,
+        /** 解码线程正在解码时被更新的帧替换而丢弃的帧；显示结果、暂停期间的替换不计入 */
+        FRAMES_DROPPED,
+        /** 识别成功并交给结果处理的帧 */
+        DECODES_SUCCEEDED
+    }
+
+    private static final Counter[] COUNTERS = Counter.values();
+    // 2 的幂
+    private static final int STRIPES = 4;
+    // 64 字节的缓存行放得下 8 个 long
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(COUNTERS.length * STRIPES * PADDING);
+
+    PipelineCounters() {
+    }
+
+    public void increment(Counter counter) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        cells.getAndIncrement((counter.ordinal() * STRIPES + stripe) * PADDING);
+    }
+
+    public long get(Counter counter) {
+        int base = counter.ordinal() * STRIPES;
+        long sum = 0L;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            sum += cells.get((base + stripe) * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * @return 识别成功的帧占完成解码的帧的比例，还没有解码时为 0
+     */
+    public float getDecodeYield() {
+        long decoded = get(Counter.FRAMES_DECODED);
+        return decoded == 0L ? 0f : (float) get(Counter.DECODES_SUCCEEDED) / decoded;
+    }
+
+    /**
+     * @return 被丢弃或放弃的帧占相机输出的帧的比例，还没有帧时为 0
+     */
+    public float getDropRate() {
+        long delivered = get(Counter.FRAMES_DELIVERED);
+        return delivered == 0L ? 0f :
+                (float) (get(Counter.FRAMES_DROPPED) + get(Counter.FRAMES_SKIPPED)) / delivered;
+    }
+
+    /**
+     * 全部清零。与累加同时进行时，那几次累加可能计入也可能不计入。
+     */
+    public void reset() {
+        for (int i = 0; i < COUNTERS.length * STRIPES; i++) {
+            cells.set(i * PADDING, 0L);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(100);
+        for (Counter counter : COUNTERS) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(counter.name().toLowerCase(Locale.US)).append(' ').append(get(counter));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import java.util.Arrays;
+
+/**
+ * 扫码流水线的运行统计：各环节的帧数（见 {@link PipelineCounters}）以及最近若干次解码的耗时。
+ * 计数从扫描开始累计，调用方按时间间隔取差值即可得到帧率。
+ */
+public final class PipelineMetrics {
+    // 计算耗时分位数时使用的最近解码次数
+    private static final int LATENCY_WINDOW = 128;
+
+    private final PipelineCounters counters = new PipelineCounters();
+    private final int[] latencies = new int[LATENCY_WINDOW];
+    private int latencyCount;
+    private int latencyNext;
+    private int[] sortBuffer;
+
+    PipelineMetrics() {
+    }
+
+    public PipelineCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * 记录一次解码（无论是否成功），计入 {@link PipelineCounters.Counter#FRAMES_DECODED}。由解码线程调用。
+     *
+     * @param latencyMs 这一帧的解码耗时，单位毫秒
+     */
+    public void recordDecode(long latencyMs) {
+        counters.increment(PipelineCounters.Counter.FRAMES_DECODED);
+        recordLatency(latencyMs);
+    }
+
+    private synchronized void recordLatency(long latencyMs) {
+        latencies[latencyNext] = (int) Math.min(latencyMs, Integer.MAX_VALUE);
+        latencyNext = (latencyNext + 1) % LATENCY_WINDOW;
+        latencyCount = Math.min(latencyCount + 1, LATENCY_WINDOW);
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return 最近 {@value #LATENCY_WINDOW} 次解码耗时的分位数，单位毫秒；还没有解码时为 -1
+     */
+    public synchronized int getDecodeLatencyPercentile(int percentile) {
+        if (latencyCount == 0) {
+            return -1;
+        }
+        if (sortBuffer == null) {
+            sortBuffer = new int[LATENCY_WINDOW];
+        }
+        System.arraycopy(latencies, 0, sortBuffer, 0, latencyCount);
+        Arrays.sort(sortBuffer, 0, latencyCount);
+        int index = (int) Math.ceil(latencyCount * percentile / 100.0) - 1;
+        return sortBuffer[Math.max(0, Math.min(latencyCount - 1, index))];
+    }
+
+    /**
+     * 计数清零，清空解码耗时，开始新一轮统计。
+     */
+    public void reset() {
+        counters.reset();
+        synchronized (this) {
+            latencyCount = 0;
+            latencyNext = 0;
+        }
+    }
+}
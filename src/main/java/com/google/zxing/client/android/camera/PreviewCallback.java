@@ -20,35 +20,216 @@ import android.graphics.Point;
 import android.hardware.Camera;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.google.zxing.client.android.PipelineTrace;
+import com.google.zxing.client.android.camera.PipelineCounters.Counter;
+
+/**
+ * 把预览帧交给解码线程。有两种工作方式：
+ * <ul>
+ * <li>单帧模式：每次请求调用一次 {@code setOneShotPreviewCallback}，解码完成后才请求下一帧；</li>
+ * <li>流水线模式：相机通过 {@code setPreviewCallbackWithBuffer} 持续输出，
+ * 解码线程忙时新到的帧放进只保存最新一帧的信箱，旧的帧直接丢弃并把缓冲区还给相机，
+ * 解码线程一空闲就能拿到最新的帧，不用再等一个相机帧间隔。</li>
+ * </ul>
+ * 流水线模式下相机在显示结果、批量模式的暂停期间也照常输出；只有解码线程在等待或正在解码时才算在扫描，
+ * 其余时间到达的帧不计入帧数，信箱里的帧被替换也不算丢弃。
+ */
 @SuppressWarnings("deprecation") // camera APIs
 final class PreviewCallback implements Camera.PreviewCallback {
     private static final String TAG = PreviewCallback.class.getSimpleName();
+    // 一个正在解码，一个在信箱里，一个由相机填充
+    private static final int PIPELINE_BUFFERS = 3;
+    private static final long STATS_INTERVAL_MS = 5000L;
     private final CameraConfigurationManager configManager;
+    private final StartupMetrics startupMetrics;
+    private final PipelineCounters counters;
     private Handler previewHandler;
     private int previewMessage;
+    private Camera pipelineCamera;
+    private byte[] latestFrame;
+    // 信箱里的帧到达时是否在扫描，即是否已经计入帧数
+    private boolean latestFrameCounted;
+    private byte[] decodingFrame;
+    private long statsStart;
+    // 本轮统计中没有在扫描的时间，计算帧率时扣除
+    private long idleStart = -1L;
+    private long idleMs;
+    private int cameraFrames;
+    private int deliveredFrames;
+    private int droppedFrames;
 
-    PreviewCallback(CameraConfigurationManager configManager) {
+    PreviewCallback(CameraConfigurationManager configManager, StartupMetrics startupMetrics,
+                    PipelineCounters counters) {
         this.configManager = configManager;
+        this.startupMetrics = startupMetrics;
+        this.counters = counters;
     }
 
-    void setHandler(Handler previewHandler, int previewMessage) {
+    synchronized void setHandler(Handler previewHandler, int previewMessage) {
         this.previewHandler = previewHandler;
         this.previewMessage = previewMessage;
     }
 
+    /**
+     * 进入流水线模式，需要在开始预览之前调用。
+     *
+     * @param bufferSize 一帧 NV21 数据的字节数
+     */
+    synchronized void startPipeline(Camera camera, int bufferSize) {
+        pipelineCamera = camera;
+        for (int i = 0; i < PIPELINE_BUFFERS; i++) {
+            camera.addCallbackBuffer(new byte[bufferSize]);
+        }
+        camera.setPreviewCallbackWithBuffer(this);
+        resetStats();
+    }
+
+    synchronized void stopPipeline() {
+        if (pipelineCamera != null) {
+            pipelineCamera.setPreviewCallbackWithBuffer(null);
+            pipelineCamera = null;
+        }
+        latestFrame = null;
+        decodingFrame = null;
+        previewHandler = null;
+    }
+
+    synchronized boolean isPipelined() {
+        return pipelineCamera != null;
+    }
+
+    /**
+     * 流水线模式下解码线程请求下一帧：上一帧的缓冲区还给相机，信箱里有帧就立即发送，否则等下一帧到达时发送。
+     */
+    synchronized void requestLatestFrame(Handler handler, int message) {
+        if (decodingFrame != null) {
+            pipelineCamera.addCallbackBuffer(decodingFrame);
+            decodingFrame = null;
+        }
+        byte[] frame = latestFrame;
+        if (frame != null && deliver(handler, message, frame)) {
+            latestFrame = null;
+            if (!latestFrameCounted) {
+                // 暂停期间到达的帧，现在才用于扫描
+                countFrame();
+            }
+        } else {
+            setHandler(handler, message);
+        }
+    }
+
+    /**
+     * 解码线程用完了交给它的帧（包括生成缩略图），缓冲区还给相机。到下一次请求之前解码线程不在工作，
+     * 比如识别成功后正在显示结果。
+     */
+    synchronized void releaseDecodingFrame() {
+        if (decodingFrame != null && pipelineCamera != null) {
+            pipelineCamera.addCallbackBuffer(decodingFrame);
+        }
+        decodingFrame = null;
+    }
+
     @Override
-    public void onPreviewFrame(byte[] data, Camera camera) {
-        Point cameraResolution = configManager.getCameraResolution();
-        Handler thePreviewHandler = previewHandler;
-        if (cameraResolution != null && thePreviewHandler != null) {
-            Message message = thePreviewHandler.obtainMessage(previewMessage, cameraResolution.x,
-                    cameraResolution.y, data);
-            message.sendToTarget();
-            previewHandler = null;
+    public synchronized void onPreviewFrame(byte[] data, Camera camera) {
+        PipelineTrace.begin(PipelineTrace.FRAME_DELIVERY);
+        try {
+            onFrame(data, camera);
+        } finally {
+            PipelineTrace.end();
+        }
+    }
+
+    private void onFrame(byte[] data, Camera camera) {
+        startupMetrics.markFirstPreviewFrame();
+        if (pipelineCamera == null) {
+            Handler thePreviewHandler = previewHandler;
+            if (thePreviewHandler == null) {
+                // 停止预览后才到的单次回调，已经不在扫描
+                Log.d(TAG, "Got preview callback, but no handler available");
+                return;
+            }
+            countFrame();
+            if (deliver(thePreviewHandler, previewMessage, data)) {
+                previewHandler = null;
+            } else {
+                counters.increment(Counter.FRAMES_SKIPPED);
+                Log.d(TAG, "Got preview callback, but no resolution available");
+            }
         } else {
-            Log.d(TAG, "Got preview callback, but no handler or resolution available");
+            Handler thePreviewHandler = previewHandler;
+            boolean decoding = decodingFrame != null;
+            boolean scanning = thePreviewHandler != null || decoding;
+            long now = SystemClock.uptimeMillis();
+            if (!scanning) {
+                if (idleStart < 0L) {
+                    idleStart = now;
+                }
+            } else {
+                if (idleStart >= 0L) {
+                    idleMs += now - idleStart;
+                    idleStart = -1L;
+                }
+                countFrame();
+            }
+            if (thePreviewHandler != null && deliver(thePreviewHandler, previewMessage, data)) {
+                previewHandler = null;
+            } else {
+                // 新帧替换信箱里的旧帧，旧帧的缓冲区还给相机；只有解码线程正忙时才算丢弃
+                if (latestFrame != null) {
+                    camera.addCallbackBuffer(latestFrame);
+                    if (decoding && latestFrameCounted) {
+                        droppedFrames++;
+                        counters.increment(Counter.FRAMES_DROPPED);
+                    }
+                }
+                latestFrame = data;
+                latestFrameCounted = scanning;
+            }
+            if (!scanning) {
+                return;
+            }
+        }
+        maybeLogStats();
+    }
+
+    private void countFrame() {
+        cameraFrames++;
+        counters.increment(Counter.FRAMES_DELIVERED);
+    }
+
+    private boolean deliver(Handler handler, int message, byte[] data) {
+        Point cameraResolution = configManager.getCameraResolution();
+        if (cameraResolution == null) {
+            return false;
+        }
+        Message msg = handler.obtainMessage(message, cameraResolution.x, cameraResolution.y, data);
+        msg.sendToTarget();
+        if (pipelineCamera != null) {
+            decodingFrame = data;
+        }
+        deliveredFrames++;
+        return true;
+    }
+
+    private void resetStats() {
+        statsStart = SystemClock.uptimeMillis();
+        idleStart = -1L;
+        idleMs = 0L;
+        cameraFrames = 0;
+        deliveredFrames = 0;
+        droppedFrames = 0;
+    }
+
+    private void maybeLogStats() {
+        long elapsed = SystemClock.uptimeMillis() - statsStart - idleMs;
+        if (elapsed >= STATS_INTERVAL_MS) {
+            Log.i(TAG, (pipelineCamera == null ? "One-shot" : "Pipelined") + " preview: camera " +
+                    cameraFrames * 1000f / elapsed + " fps, decoded " + deliveredFrames * 1000f / elapsed +
+                    " fps, dropped " + droppedFrames + " stale frames; since start: " + counters);
+            resetStats();
         }
     }
 
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * 扫码界面的启动耗时：从 {@link CameraManager} 创建开始，到相机打开、第一帧预览、第一次解码成功各用了多少毫秒。
+ * 每个时间点只记录第一次，尚未发生时为 -1。
+ */
+public final class StartupMetrics {
+    private static final String TAG = StartupMetrics.class.getSimpleName();
+    private final long startTime;
+    private volatile long cameraOpenedAt = -1L;
+    private volatile long firstPreviewFrameAt = -1L;
+    private volatile long firstDecodeAt = -1L;
+
+    StartupMetrics() {
+        startTime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * @return 相机打开并配置完成的耗时，单位毫秒
+     */
+    public long getTimeToCameraOpen() {
+        return cameraOpenedAt;
+    }
+
+    /**
+     * @return 收到第一帧预览数据的耗时，单位毫秒
+     */
+    public long getTimeToFirstPreviewFrame() {
+        return firstPreviewFrameAt;
+    }
+
+    /**
+     * @return 第一次解码成功的耗时，单位毫秒
+     */
+    public long getTimeToFirstDecode() {
+        return firstDecodeAt;
+    }
+
+    void markCameraOpened() {
+        if (cameraOpenedAt < 0L) {
+            cameraOpenedAt = elapsed();
+            Log.i(TAG, "Time to camera open: " + cameraOpenedAt + " ms");
+        }
+    }
+
+    void markFirstPreviewFrame() {
+        if (firstPreviewFrameAt < 0L) {
+            firstPreviewFrameAt = elapsed();
+            Log.i(TAG, "Time to first preview frame: " + firstPreviewFrameAt + " ms");
+        }
+    }
+
+    void markFirstDecode() {
+        if (firstDecodeAt < 0L) {
+            firstDecodeAt = elapsed();
+            Log.i(TAG, "Time to first decode: " + firstDecodeAt + " ms");
+        }
+    }
+
+    private long elapsed() {
+        return SystemClock.uptimeMillis() - startTime;
+    }
+}
@@ -13,8 +13,8 @@ import com.google.zxing.Reader;
 import com.google.zxing.Result;
 import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
+import com.google.zxing.client.android.PipelineTrace;
 import com.google.zxing.client.android.camera.CameraManager;
-import com.google.zxing.client.android.scan.CaptureActivity;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.common.DecoderResult;
 import com.google.zxing.common.DetectorResult;
@@ -33,10 +33,13 @@ import java.util.Map;
 public class AutoZoomQRReader implements Reader {
     private static final ResultPoint[] NO_POINTS = new ResultPoint[0];
     private final Decoder decoder = new Decoder();
-    private final CaptureActivity activity;
+    private final CameraManager cameraManager;
 
-    AutoZoomQRReader(CaptureActivity activity) {
-        this.activity = activity;
+    /**
+     * @param cameraManager 为 {@code null} 时不缩放镜头
+     */
+    AutoZoomQRReader(CameraManager cameraManager) {
+        this.cameraManager = cameraManager;
     }
 
     @Override
@@ -48,21 +51,40 @@ public class AutoZoomQRReader implements Reader {
     public Result decode(BinaryBitmap binaryBitmap, Map<DecodeHintType, ?> map) throws NotFoundException, ChecksumException, FormatException {
         DecoderResult decoderResult;
         ResultPoint[] points;
+        //1、将图像进行二值化处理，1、0代表黑、白。( 二维码的使用getBlackMatrix方法 )
+        BitMatrix image;
+        PipelineTrace.begin(PipelineTrace.BINARIZE);
+        try {
+            image = binaryBitmap.getBlackMatrix();
+        } finally {
+            PipelineTrace.end();
+        }
+        BitMatrix bits;
         if (map != null && map.containsKey(DecodeHintType.PURE_BARCODE)) {
-            BitMatrix bits = extractPureBits(binaryBitmap.getBlackMatrix());
-            decoderResult = decoder.decode(bits, map);
+            bits = extractPureBits(image);
             points = NO_POINTS;
         } else {
-            //1、将图像进行二值化处理，1、0代表黑、白。( 二维码的使用getBlackMatrix方法 )
-            DetectorResult detectorResult = new Detector(binaryBitmap.getBlackMatrix()).detect(map);
             //2、寻找定位符、校正符，然后将原图像中符号码部分取出。（detector代码实现的功能）
+            DetectorResult detectorResult;
+            PipelineTrace.begin(PipelineTrace.DETECT);
+            try {
+                detectorResult = new Detector(image).detect(map);
+            } finally {
+                PipelineTrace.end();
+            }
             if (tryAutoZoom(detectorResult)) {
                 return null;//缩放一次，结果作废
             }
-            //3、对符号码矩阵按照编码规范进行解码，得到实际信息（decoder代码实现的功能）
-            decoderResult = decoder.decode(detectorResult.getBits(), map);
+            bits = detectorResult.getBits();
             points = detectorResult.getPoints();
         }
+        //3、对符号码矩阵按照编码规范进行解码，得到实际信息（decoder代码实现的功能）
+        PipelineTrace.begin(PipelineTrace.DECODE);
+        try {
+            decoderResult = decoder.decode(bits, map);
+        } finally {
+            PipelineTrace.end();
+        }
         // 如果二维码是镜像的:交换左下角和右上角的点。
         if (decoderResult.getOther() instanceof QRCodeDecoderMetaData) {
             ((QRCodeDecoderMetaData) decoderResult.getOther()).applyMirroredCorrection(points);
@@ -156,8 +178,7 @@ public class AutoZoomQRReader implements Reader {
      * @return true-进行了一次缩放，本次扫描作废  false-不需要缩放，本次扫描结果可以解析
      */
     private boolean tryAutoZoom(DetectorResult detectorResult) {
-        if (activity != null) {
-            CameraManager cameraManager = activity.getCameraManager();
+        if (cameraManager != null && cameraManager.getOpenCamera() != null) {
             ResultPoint[] p = detectorResult.getPoints();
             //定位二维码最少需要两个点，计算二维码的宽度，两点间距离公式
             float point1X = p[0].getX();
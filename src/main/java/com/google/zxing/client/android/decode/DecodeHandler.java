@@ -17,6 +17,7 @@
 package com.google.zxing.client.android.decode;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -24,28 +25,55 @@ import android.os.Message;
 import android.util.Log;
 
 import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
 import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
 import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
 import com.google.zxing.client.android.R;
-import com.google.zxing.client.android.scan.CaptureActivity;
+import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.camera.PipelineCounters;
+import com.google.zxing.client.android.camera.PipelineMetrics;
+import com.google.zxing.client.android.result.PreparedResult;
+import com.google.zxing.client.android.result.ResultSettings;
 import com.google.zxing.common.GlobalHistogramBinarizer;
 
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 
 final class DecodeHandler extends Handler {
     private static final String TAG = DecodeHandler.class.getSimpleName();
+    private static final int LUMINANCE_BUCKETS = 32;
+    private static final int LUMINANCE_SHIFT = 3;
+    // 统计亮度时每隔几个像素取一个，足够估计整体亮度
+    private static final int LUMINANCE_SAMPLE_STEP = 8;
 
-    private final CaptureActivity activity;
+    private final CameraManager cameraManager;
+    private final Handler resultHandler;
     private final AutoZoomQRReader multiFormatReader;
+    // 外部传入的帧与相机无关，不能用它去缩放镜头
+    private AutoZoomQRReader frameReader;
+    private final Map<DecodeHintType, ?> readerHints;
+    // 只在解码线程上访问
+    private ResultSettings settings;
+    private final int[] luminanceBuckets = new int[LUMINANCE_BUCKETS];
     private boolean running = true;
+    private boolean firstDecodeLogged;
 
-    DecodeHandler(CaptureActivity activity, Map<DecodeHintType, Object> hints) {
-        multiFormatReader = new AutoZoomQRReader(activity);
+    DecodeHandler(CameraManager cameraManager, Handler resultHandler, Map<DecodeHintType, Object> hints,
+                  ResultSettings settings) {
+        multiFormatReader = new AutoZoomQRReader(cameraManager);
 //        multiFormatReader.setHints(hints);
-        this.activity = activity;
+        // 其它提示（比如字符集）仍然不交给解码器，只传递定位点回调，用于取景框绘制和对焦区域
+        Object resultPointCallback = hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+        readerHints = resultPointCallback == null ? null :
+                Collections.singletonMap(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
+        this.cameraManager = cameraManager;
+        this.resultHandler = resultHandler;
+        this.settings = settings;
     }
 
     @Override
@@ -55,6 +83,10 @@ final class DecodeHandler extends Handler {
         }
         if (message.what == R.id.decode) {
             decode((byte[]) message.obj, message.arg1, message.arg2);
+        } else if (message.what == R.id.decode_frame) {
+            decodeFrame((byte[]) message.obj, message.arg1, message.arg2);
+        } else if (message.what == R.id.update_settings) {
+            settings = (ResultSettings) message.obj;
         } else if (message.what == R.id.quit) {
             running = false;
             Looper.myLooper().quit();
@@ -72,7 +104,8 @@ final class DecodeHandler extends Handler {
     private void decode(byte[] data, int width, int height) {
         long start = System.currentTimeMillis();
         Result rawResult = null;
-        PlanarYUVLuminanceSource source = activity.getCameraManager().buildLuminanceSource(data, width, height);
+        boolean nearMiss = false;
+        PlanarYUVLuminanceSource source = cameraManager.buildLuminanceSource(data, width, height);
         if (source != null) {
             // 默认使用的是HybridBinarizer二值化方法。然而目前的大部分二维码都是黑色二维码，白色背景的。
             // 不管是二维码扫描还是二维码图像识别，使用GlobalHistogramBinarizer算法的效果要稍微比HybridBinarizer好一些，
@@ -80,7 +113,10 @@ final class DecodeHandler extends Handler {
             BinaryBitmap bitmap = new BinaryBitmap(new GlobalHistogramBinarizer(source));
 //            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
             try {
-                rawResult = multiFormatReader.decode(bitmap);
+                rawResult = multiFormatReader.decode(bitmap, readerHints);
+            } catch (ChecksumException | FormatException e) {
+                // 找到了定位符但解码失败，多半是没对上焦
+                nearMiss = true;
             } catch (ReaderException re) {
                 // continue
             } finally {
@@ -88,24 +124,119 @@ final class DecodeHandler extends Handler {
             }
         }
 
-        Handler handler = activity.getHandler();
+        if (!firstDecodeLogged) {
+            firstDecodeLogged = true;
+            Log.i(TAG, "First frame decode took " + (System.currentTimeMillis() - start) + " ms, decoder warm-up " +
+                    (DecoderWarmUp.isFinished() ? "finished" : "not finished"));
+        }
+
+        reportLuminance(data, width, height);
+        if (rawResult != null) {
+            cameraManager.onDecodeSucceeded();
+        } else {
+            cameraManager.onDecodeFailed(nearMiss);
+        }
+
+        long end = System.currentTimeMillis();
+        PipelineMetrics metrics = cameraManager.getPipelineMetrics();
+        if (source != null) {
+            metrics.recordDecode(end - start);
+        } else {
+            // 取景框不在预览画面内，这一帧没有解码
+            metrics.getCounters().increment(PipelineCounters.Counter.FRAMES_SKIPPED);
+        }
         if (rawResult != null) {
             // Don't log the barcode contents for security.
-            long end = System.currentTimeMillis();
             Log.d(TAG, "成功识别二维码用时 " + (end - start) + " ms");
-            if (handler != null) {
-                Message message = Message.obtain(handler, R.id.decode_succeeded, rawResult);
-                Bundle bundle = new Bundle();
-                bundleThumbnail(source, bundle);
-                message.setData(bundle);
-                message.sendToTarget();
-            }
+        }
+        sendResult(rawResult, source, 0);
+        // 缩略图也已经生成，这一帧的数据不再使用
+        cameraManager.releasePreviewFrame();
+    }
+
+    /**
+     * 解码调用方自己提供的一帧 YUV 数据（不是来自相机预览），整帧都参与解码，也不影响对焦和闪光灯。
+     * 结果消息的 arg1 为 1，以便和预览帧的结果区分。
+     */
+    private void decodeFrame(byte[] data, int width, int height) {
+        if (frameReader == null) {
+            frameReader = new AutoZoomQRReader(null);
+        }
+        Result rawResult = null;
+        PlanarYUVLuminanceSource source = null;
+        try {
+            source = new PlanarYUVLuminanceSource(data, width, height, 0, 0, width, height, false);
+            rawResult = frameReader.decode(new BinaryBitmap(new GlobalHistogramBinarizer(source)));
+        } catch (ReaderException re) {
+            // continue
+        } catch (RuntimeException re) {
+            // 外部数据有问题时不能让解码线程崩溃，整个应用会随之退出；按没有识别出处理
+            Log.w(TAG, "Couldn't decode external frame", re);
+            rawResult = null;
+        } finally {
+            frameReader.reset();
+        }
+        sendResult(rawResult, source, 1);
+    }
+
+    private void sendResult(Result rawResult, PlanarYUVLuminanceSource source, int external) {
+        if (rawResult != null) {
+            // 解析结果、生成显示文字也在解码线程上完成，主线程收到后只需要填充界面
+            PreparedResult prepared = PreparedResult.prepare(rawResult, settings);
+            Message message = Message.obtain(resultHandler, R.id.decode_succeeded, external, 0, prepared);
+            Bundle bundle = new Bundle();
+            bundleThumbnail(source, bundle);
+            message.setData(bundle);
+            message.sendToTarget();
         } else {
-            if (handler != null) {
-                Message message = Message.obtain(handler, R.id.decode_failed);
-                message.sendToTarget();
+            Message message = Message.obtain(resultHandler, R.id.decode_failed, external, 0);
+            message.sendToTarget();
+        }
+    }
+
+    /**
+     * 统计取景框内的亮度直方图（与 GlobalHistogramBinarizer 相同的 32 档），用于自动开关闪光灯。
+     * 闪光灯不是自动模式时不统计。
+     */
+    private void reportLuminance(byte[] data, int width, int height) {
+        if (!cameraManager.isAutoTorchEnabled() || data.length < width * height) {
+            return;
+        }
+        Rect rect = cameraManager.getFramingRectInPreview();
+        int left = 0;
+        int top = 0;
+        int right = width;
+        int bottom = height;
+        if (rect != null) {
+            left = Math.max(0, rect.left);
+            top = Math.max(0, rect.top);
+            right = Math.min(width, rect.right);
+            bottom = Math.min(height, rect.bottom);
+        }
+        int[] buckets = luminanceBuckets;
+        Arrays.fill(buckets, 0);
+        long sum = 0;
+        int count = 0;
+        for (int y = top; y < bottom; y += LUMINANCE_SAMPLE_STEP) {
+            int offset = y * width;
+            for (int x = left; x < right; x += LUMINANCE_SAMPLE_STEP) {
+                int luminance = data[offset + x] & 0xff;
+                buckets[luminance >> LUMINANCE_SHIFT]++;
+                sum += luminance;
+                count++;
             }
         }
+        if (count == 0) {
+            return;
+        }
+        int threshold = count * 9 / 10;
+        int bucket = 0;
+        int seen = buckets[0];
+        while (seen < threshold) {
+            bucket++;
+            seen += buckets[bucket];
+        }
+        cameraManager.onFrameLuminance((int) (sum / count), (bucket << LUMINANCE_SHIFT) + (1 << LUMINANCE_SHIFT) / 2);
     }
 
     private static void bundleThumbnail(PlanarYUVLuminanceSource source, Bundle bundle) {
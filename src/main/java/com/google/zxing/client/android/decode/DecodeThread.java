@@ -15,16 +15,20 @@
  */
 package com.google.zxing.client.android.decode;
 
+import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Message;
 import android.preference.PreferenceManager;
 
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.ResultPointCallback;
 import com.google.zxing.client.android.PreferencesActivity;
-import com.google.zxing.client.android.scan.CaptureActivity;
+import com.google.zxing.client.android.R;
+import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.result.ResultSettings;
 
 import java.util.Collection;
 import java.util.EnumMap;
@@ -41,18 +45,27 @@ public final class DecodeThread extends Thread {
     public static final String BARCODE_BITMAP = "barcode_bitmap";
     public static final String BARCODE_SCALED_FACTOR = "barcode_scaled_factor";
 
-    private final CaptureActivity activity;
+    private final CameraManager cameraManager;
+    private final Handler resultHandler;
     private final Map<DecodeHintType, Object> hints;
+    private final ResultSettings initialSettings;
     private final CountDownLatch handlerInitLatch;
     private Handler handler;
 
-    public DecodeThread(CaptureActivity activity,
+    /**
+     * @param cameraManager 提供预览帧的相机，只解码外部传入的帧时可以为 {@code null}
+     * @param resultHandler 接收 {@code decode_succeeded} / {@code decode_failed} 消息
+     */
+    public DecodeThread(Context context,
+                        CameraManager cameraManager,
+                        Handler resultHandler,
                         Collection<BarcodeFormat> decodeFormats,
                         Map<DecodeHintType, ?> baseHints,
                         String characterSet,
                         ResultPointCallback resultPointCallback) {
 
-        this.activity = activity;
+        this.cameraManager = cameraManager;
+        this.resultHandler = resultHandler;
         handlerInitLatch = new CountDownLatch(1);
 
         hints = new EnumMap<>(DecodeHintType.class);
@@ -60,9 +73,10 @@ public final class DecodeThread extends Thread {
             hints.putAll(baseHints);
         }
 
-        // The prefs can't change while the thread is running, so pick them up once here.
+        // 线程在多次扫描之间一直保留，结果设置由 reloadSettings() 在每次开始扫描时重新读取；解码格式只在这里读取一次
+        initialSettings = ResultSettings.load(context);
         if (decodeFormats == null || decodeFormats.isEmpty()) {
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(activity);
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
             decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
             //只保留二维码相关
             if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_QR, true)) {
@@ -101,10 +115,17 @@ public final class DecodeThread extends Thread {
         return handler;
     }
 
+    /**
+     * 重新读取结果设置，在解码线程上替换旧的设置。之后排队的解码都使用新设置。
+     */
+    public void reloadSettings(Context context) {
+        Message.obtain(getHandler(), R.id.update_settings, ResultSettings.load(context)).sendToTarget();
+    }
+
     @Override
     public void run() {
         Looper.prepare();
-        handler = new DecodeHandler(activity, hints);
+        handler = new DecodeHandler(cameraManager, resultHandler, hints, initialSettings);
         handlerInitLatch.countDown();
         Looper.loop();
     }
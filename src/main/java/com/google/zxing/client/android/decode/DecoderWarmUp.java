@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.decode;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.android.PreferencesActivity;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 解码器预热。第一次解码时要加载 Detector、Decoder、Reed-Solomon 的 GF 表和 Version 表等类，代码也还没有被 JIT 编译，
+ * 所以明显比之后的解码慢。这里在后台线程上用几帧合成的二维码画面走一遍与实时扫描相同的解码流程，把这部分开销提前付掉。
+ * <p>
+ * 每个进程只预热一次，耗时和效果通过静态方法读取。
+ */
+public final class DecoderWarmUp {
+    private static final String TAG = DecoderWarmUp.class.getSimpleName();
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    private static final int BACKGROUND = 0xC0;
+    private static final int FOREGROUND = 0x20;
+    // 依次覆盖数字、字母数字和字节模式，以及有/无校正图形的版本
+    private static final String[] CONTENTS = {
+            "0123456789012345",
+            "HTTP://ZXING.GITHUB.IO/",
+            "https://github.com/zxing/zxing/wiki/Barcode-Contents",
+            "WIFI:S:warm-up;T:WPA;P:0123456789abcdef;H:false;; MECARD:N:Owen,Sean;TEL:+12125551212;;",
+    };
+    private static final ErrorCorrectionLevel[] EC_LEVELS = {
+            ErrorCorrectionLevel.L, ErrorCorrectionLevel.M, ErrorCorrectionLevel.Q, ErrorCorrectionLevel.H,
+    };
+    private static final AtomicBoolean started = new AtomicBoolean();
+    private static volatile boolean finished;
+    private static volatile long warmUpCostMs = -1L;
+    private static volatile long coldDecodeMs = -1L;
+    private static volatile long warmDecodeMs = -1L;
+
+    private DecoderWarmUp() {
+    }
+
+    /**
+     * 如果设置中开启了预热，并且本进程还没有预热过，就在低优先级的后台线程上开始预热，立即返回。
+     */
+    public static void startIfEnabled(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        if (!prefs.getBoolean(PreferencesActivity.KEY_DECODER_WARM_UP, true) || !started.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                warmUp();
+            }
+        }, "DecoderWarmUp");
+        thread.start();
+    }
+
+    public static boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return 整个预热过程的耗时，单位毫秒；尚未完成时为 -1
+     */
+    public static long getWarmUpCostMs() {
+        return warmUpCostMs;
+    }
+
+    /**
+     * @return 预热中第一帧（冷启动状态）的解码耗时，单位毫秒
+     */
+    public static long getColdDecodeMs() {
+        return coldDecodeMs;
+    }
+
+    /**
+     * @return 预热中最后一轮第一帧的解码耗时，单位毫秒，与 {@link #getColdDecodeMs()} 的差就是预热省下的时间
+     */
+    public static long getWarmDecodeMs() {
+        return warmDecodeMs;
+    }
+
+    private static void warmUp() {
+        long start = SystemClock.uptimeMillis();
+        byte[][] frames = new byte[CONTENTS.length][];
+        for (int i = 0; i < CONTENTS.length; i++) {
+            frames[i] = renderFrame(CONTENTS[i], EC_LEVELS[i]);
+        }
+        AutoZoomQRReader reader = new AutoZoomQRReader(null);
+        long cold = -1L;
+        long warm = -1L;
+        // 多跑几轮，让热点方法有机会被 JIT 编译
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < frames.length; i++) {
+                if (frames[i] == null) {
+                    continue;
+                }
+                long decodeStart = SystemClock.uptimeMillis();
+                boolean decoded = decode(reader, frames[i]);
+                long elapsed = SystemClock.uptimeMillis() - decodeStart;
+                if (cold < 0L) {
+                    cold = elapsed;
+                    if (!decoded) {
+                        Log.w(TAG, "Synthetic frame did not decode");
+                    }
+                }
+                if (i == 0) {
+                    warm = elapsed;
+                }
+            }
+        }
+        coldDecodeMs = cold;
+        warmDecodeMs = warm;
+        warmUpCostMs = SystemClock.uptimeMillis() - start;
+        finished = true;
+        Log.i(TAG, "Decoder warm-up took " + warmUpCostMs + " ms; first decode " + cold +
+                " ms cold, " + warm + " ms warm");
+    }
+
+    private static boolean decode(AutoZoomQRReader reader, byte[] frame) {
+        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(
+                frame, FRAME_WIDTH, FRAME_HEIGHT, 0, 0, FRAME_WIDTH, FRAME_HEIGHT, false);
+        try {
+            Result result = reader.decode(new BinaryBitmap(new GlobalHistogramBinarizer(source)));
+            return result != null;
+        } catch (ReaderException re) {
+            return false;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * 生成一帧只有亮度平面的预览画面，二维码居中，约占画面高度的一半。
+     */
+    private static byte[] renderFrame(String contents, ErrorCorrectionLevel ecLevel) {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.ERROR_CORRECTION, ecLevel);
+        hints.put(EncodeHintType.MARGIN, 0);
+        BitMatrix matrix;
+        try {
+            matrix = new QRCodeWriter().encode(contents, BarcodeFormat.QR_CODE, 0, 0, hints);
+        } catch (WriterException we) {
+            Log.w(TAG, we);
+            return null;
+        }
+        int modules = matrix.getWidth();
+        int moduleSize = Math.max(1, FRAME_HEIGHT / 2 / modules);
+        int size = modules * moduleSize;
+        int left = (FRAME_WIDTH - size) / 2;
+        int top = (FRAME_HEIGHT - size) / 2;
+        byte[] frame = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+        Arrays.fill(frame, (byte) BACKGROUND);
+        for (int y = 0; y < size; y++) {
+            int offset = (top + y) * FRAME_WIDTH + left;
+            int moduleY = y / moduleSize;
+            for (int x = 0; x < size; x++) {
+                if (matrix.get(x / moduleSize, moduleY)) {
+                    frame[offset + x] = (byte) FOREGROUND;
+                }
+            }
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.decode;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 识别已有图片（相册照片、截图、扫描件）中的条码。
+ * <p>
+ * 大图会切成相互重叠的小块，在一个固定大小的线程池上并行解码；另外把整张图缩小后再解码一次，用来找出比小块还大的条码。
+ * 重叠区域里重复找到的条码只保留一个，所有结果的坐标都换算回原图。这些方法会阻塞，不要在主线程上调用。
+ */
+public final class StillImageDecoder {
+    private static final String TAG = StillImageDecoder.class.getSimpleName();
+    // 采样后最多保留的像素数，超过时用 inSampleSize 缩小。仍有 2048x2048，对常见的二维码足够清晰
+    private static final int MAX_PIXELS = 2048 * 2048;
+    private static final int TILE_SIZE = 1024;
+    // 不超过重叠宽度的条码至少会完整地落在某一块里
+    private static final int TILE_OVERLAP = 256;
+    private static final int POOL_SIZE = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final ThreadPoolExecutor executor = newExecutor();
+
+    private StillImageDecoder() {
+    }
+
+    /**
+     * @param hints 为 {@code null} 时只识别二维码
+     * @return 找到的所有条码，没有时为空列表
+     */
+    public static List<Result> decode(Bitmap bitmap, Map<DecodeHintType, ?> hints) {
+        return decode(bitmap, hints, 1.0f);
+    }
+
+    /**
+     * @see #decode(Bitmap, Map)
+     */
+    public static List<Result> decodeFile(String path, Map<DecodeHintType, ?> hints) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        prepareOptions(options, path);
+        int imageWidth = options.outWidth;
+        Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap == null) {
+            throw new IOException("Can't decode image " + path);
+        }
+        try {
+            return decode(bitmap, hints, (float) imageWidth / bitmap.getWidth());
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * @see #decode(Bitmap, Map)
+     */
+    public static List<Result> decodeUri(Context context, Uri uri, Map<DecodeHintType, ?> hints) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = openStream(context, uri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        prepareOptions(options, uri);
+        int imageWidth = options.outWidth;
+        Bitmap bitmap;
+        try (InputStream in = openStream(context, uri)) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Can't decode image " + uri);
+        }
+        try {
+            return decode(bitmap, hints, (float) imageWidth / bitmap.getWidth());
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private static InputStream openStream(Context context, Uri uri) throws IOException {
+        InputStream in = context.getContentResolver().openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Can't open " + uri);
+        }
+        return in;
+    }
+
+    private static void prepareOptions(BitmapFactory.Options options, Object source) throws IOException {
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not an image: " + source);
+        }
+        int sampleSize = 1;
+        while ((long) (options.outWidth / sampleSize) * (options.outHeight / sampleSize) > MAX_PIXELS) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        // 只需要亮度，RGB_565 占用的内存是 ARGB_8888 的一半
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+    }
+
+    /**
+     * @param scale 图片上一个像素对应原图多少个像素
+     */
+    private static List<Result> decode(Bitmap bitmap, Map<DecodeHintType, ?> hints, float scale) {
+        Map<DecodeHintType, Object> readerHints = new EnumMap<>(DecodeHintType.class);
+        if (hints != null) {
+            readerHints.putAll(hints);
+        }
+        if (!readerHints.containsKey(DecodeHintType.POSSIBLE_FORMATS)) {
+            readerHints.put(DecodeHintType.POSSIBLE_FORMATS, DecodeFormatManager.QR_CODE_FORMATS);
+        }
+        readerHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        List<TileTask> tasks = new ArrayList<>();
+        Bitmap overview = null;
+        if (width <= TILE_SIZE && height <= TILE_SIZE) {
+            tasks.add(new TileTask(bitmap, 0, 0, width, height, scale, readerHints));
+        } else {
+            for (int top : tileStarts(height)) {
+                for (int left : tileStarts(width)) {
+                    tasks.add(new TileTask(bitmap, left, top,
+                            Math.min(TILE_SIZE, width - left), Math.min(TILE_SIZE, height - top), scale, readerHints));
+                }
+            }
+            // 缩小后的整图放在最后，它找到的结果精度较低，与小块重复时以小块为准
+            float shrink = (float) Math.max(width, height) / TILE_SIZE;
+            overview = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, Math.round(width / shrink)), Math.max(1, Math.round(height / shrink)), true);
+            tasks.add(new TileTask(overview, 0, 0, overview.getWidth(), overview.getHeight(),
+                    scale * width / overview.getWidth(), readerHints));
+        }
+
+        List<Result> results = new ArrayList<>();
+        try {
+            List<Future<Result[]>> futures = executor.invokeAll(tasks);
+            for (Future<Result[]> future : futures) {
+                try {
+                    for (Result result : future.get()) {
+                        addUnique(results, result);
+                    }
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Tile decode failed", e.getCause());
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (overview != null) {
+                overview.recycle();
+            }
+        }
+        return results;
+    }
+
+    private static List<Integer> tileStarts(int length) {
+        if (length <= TILE_SIZE) {
+            return Collections.singletonList(0);
+        }
+        List<Integer> starts = new ArrayList<>();
+        int step = TILE_SIZE - TILE_OVERLAP;
+        for (int start = 0; ; start += step) {
+            if (start + TILE_SIZE >= length) {
+                starts.add(length - TILE_SIZE);
+                break;
+            }
+            starts.add(start);
+        }
+        return starts;
+    }
+
+    /**
+     * 同一个条码可能在相邻的几块里都被找到：内容和格式相同且位置重叠的只保留第一个。
+     */
+    private static void addUnique(List<Result> results, Result candidate) {
+        float[] candidateBounds = bounds(candidate.getResultPoints());
+        for (Result existing : results) {
+            if (existing.getBarcodeFormat() == candidate.getBarcodeFormat() &&
+                    existing.getText().equals(candidate.getText()) &&
+                    overlaps(bounds(existing.getResultPoints()), candidateBounds)) {
+                return;
+            }
+        }
+        results.add(candidate);
+    }
+
+    // 返回 {minX, minY, maxX, maxY}，没有点时返回 null
+    private static float[] bounds(ResultPoint[] points) {
+        float[] bounds = null;
+        if (points != null) {
+            for (ResultPoint point : points) {
+                if (point == null) {
+                    continue;
+                }
+                if (bounds == null) {
+                    bounds = new float[]{point.getX(), point.getY(), point.getX(), point.getY()};
+                } else {
+                    bounds[0] = Math.min(bounds[0], point.getX());
+                    bounds[1] = Math.min(bounds[1], point.getY());
+                    bounds[2] = Math.max(bounds[2], point.getX());
+                    bounds[3] = Math.max(bounds[3], point.getY());
+                }
+            }
+        }
+        return bounds;
+    }
+
+    private static boolean overlaps(float[] a, float[] b) {
+        if (a == null || b == null) {
+            // 不知道位置，只能按内容判断
+            return true;
+        }
+        // 定位点只覆盖条码的一部分，中心距离小于较大的那个尺寸就认为是同一个
+        float dx = (a[0] + a[2] - b[0] - b[2]) / 2;
+        float dy = (a[1] + a[3] - b[1] - b[3]) / 2;
+        float size = Math.max(Math.max(a[2] - a[0], a[3] - a[1]), Math.max(b[2] - b[0], b[3] - b[1]));
+        return dx * dx + dy * dy <= size * size;
+    }
+
+    private static ThreadPoolExecutor newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "StillImageDecoder #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 解码图片中的一块，结果坐标换算到原图。
+     */
+    private static final class TileTask implements Callable<Result[]> {
+        private static final Result[] NO_RESULTS = new Result[0];
+        private final Bitmap bitmap;
+        private final int left;
+        private final int top;
+        private final int width;
+        private final int height;
+        private final float scale;
+        private final Map<DecodeHintType, ?> hints;
+
+        TileTask(Bitmap bitmap, int left, int top, int width, int height, float scale, Map<DecodeHintType, ?> hints) {
+            this.bitmap = bitmap;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.scale = scale;
+            this.hints = hints;
+        }
+
+        @Override
+        public Result[] call() {
+            int[] pixels = new int[width * height];
+            bitmap.getPixels(pixels, 0, width, left, top, width, height);
+            // 照片的光照往往不均匀，这里用 HybridBinarizer，而不是预览解码使用的 GlobalHistogramBinarizer
+            BinaryBitmap binaryBitmap = new BinaryBitmap(new HybridBinarizer(new RGBLuminanceSource(width, height, pixels)));
+            Result[] found;
+            try {
+                found = new GenericMultipleBarcodeReader(new MultiFormatReader()).decodeMultiple(binaryBitmap, hints);
+            } catch (NotFoundException nfe) {
+                return NO_RESULTS;
+            }
+            Result[] mapped = new Result[found.length];
+            for (int i = 0; i < found.length; i++) {
+                mapped[i] = toImageCoordinates(found[i]);
+            }
+            return mapped;
+        }
+
+        private Result toImageCoordinates(Result result) {
+            ResultPoint[] points = result.getResultPoints();
+            ResultPoint[] mappedPoints = null;
+            if (points != null) {
+                mappedPoints = new ResultPoint[points.length];
+                for (int i = 0; i < points.length; i++) {
+                    ResultPoint point = points[i];
+                    if (point != null) {
+                        mappedPoints[i] = new ResultPoint((left + point.getX()) * scale, (top + point.getY()) * scale);
+                    }
+                }
+            }
+            Result mapped = new Result(result.getText(), result.getRawBytes(), result.getNumBits(), mappedPoints,
+                    result.getBarcodeFormat(), result.getTimestamp());
+            mapped.putAllMetadata(result.getResultMetadata());
+            return mapped;
+        }
+    }
+}
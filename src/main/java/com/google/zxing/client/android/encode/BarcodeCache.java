@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.encode;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 已生成条码图片的两级缓存：内存中按位图字节数限制大小的 LRU，以及缓存目录下按总大小淘汰的 PNG 文件。
+ * 同一张票据或名片码反复显示时不必重新编码，内存命中时也不分配新的位图。
+ * <p>
+ * 只有内存命中是同步的；读文件、解码 PNG 和编码都在缓存自己的线程上完成，不占用主线程。
+ * 返回的位图可能被多处共享，调用方不能修改或回收。
+ */
+final class BarcodeCache {
+    private static final String TAG = BarcodeCache.class.getSimpleName();
+    private static final String DIRECTORY = "barcodes";
+    private static final long MAX_DISK_BYTES = 8L * 1024 * 1024;
+    // 同样的键编码出的图片有变化时（例如二维码改用分段编码、字节段加上 ECI）加一。旧版本写下的文件名字不同，
+    // 不会再被读到，随磁盘淘汰删掉
+    private static final int ENCODER_VERSION = 2;
+    private static BarcodeCache instance;
+
+    private final LruCache<Key, Bitmap> memory;
+    private final File directory;
+    // 读写文件、编码和淘汰都放在这个线程上，不阻塞界面
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private BarcodeCache(Context context) {
+        // 最多占用可用堆的 1/16
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16);
+        memory = new LruCache<Key, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        directory = new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    static synchronized BarcodeCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new BarcodeCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * 取得 {@code key} 对应的位图。内存中有时立即在调用线程上回调；否则在后台依次查找磁盘缓存、调用 {@code loader}
+     * 生成并写入缓存，再在主线程上回调。
+     */
+    void get(final Key key, final Loader loader, final Callback callback) {
+        Bitmap cached = memory.get(key);
+        if (cached != null) {
+            callback.onLoaded(cached);
+            return;
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = readFromDisk(key);
+                boolean loaded = false;
+                if (bitmap == null) {
+                    try {
+                        bitmap = loader.load();
+                        loaded = bitmap != null;
+                    } catch (WriterException we) {
+                        Log.w(TAG, "Could not encode barcode", we);
+                    }
+                }
+                if (bitmap != null) {
+                    memory.put(key, bitmap);
+                }
+                final Bitmap result = bitmap;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLoaded(result);
+                    }
+                });
+                if (loaded) {
+                    writeToDisk(key, bitmap);
+                    trimDisk();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return 磁盘缓存中的位图，没有或无法读取时为 {@code null}。只在 {@link #diskExecutor} 上调用
+     */
+    private Bitmap readFromDisk(Key key) {
+        File file = new File(directory, key.fileName());
+        if (!file.isFile()) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            Log.w(TAG, "Discarding unreadable cache file " + file);
+            deleteQuietly(file);
+            return null;
+        }
+        // 更新修改时间，磁盘淘汰时按最近使用的顺序保留
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            Log.d(TAG, "Could not touch " + file);
+        }
+        return bitmap;
+    }
+
+    private void writeToDisk(Key key, Bitmap bitmap) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Couldn't make dir " + directory);
+            return;
+        }
+        File file = new File(directory, key.fileName());
+        File temp = new File(directory, key.fileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException ioe) {
+            Log.w(TAG, "Couldn't write " + temp, ioe);
+            deleteQuietly(temp);
+            return;
+        }
+        // 先写临时文件再改名，读取时不会看到写了一半的文件
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Couldn't rename " + temp);
+            deleteQuietly(temp);
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            if (total <= MAX_DISK_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+
+    /**
+     * 在缓存的线程上生成缓存中没有的位图。
+     */
+    interface Loader {
+        /**
+         * @return 生成的位图，无法生成时为 {@code null}
+         */
+        Bitmap load() throws WriterException;
+    }
+
+    interface Callback {
+        /**
+         * @param bitmap 缓存或新生成的位图，无法生成时为 {@code null}
+         */
+        void onLoaded(Bitmap bitmap);
+    }
+
+    /**
+     * 缓存键：内容、格式、尺寸、字符集和纠错等级，其中字符集和纠错等级可以为 {@code null}（使用默认值）。
+     * 磁盘上的文件名还包含编码器的版本。
+     */
+    static final class Key {
+        private final String contents;
+        private final BarcodeFormat format;
+        private final int dimension;
+        private final String charset;
+        private final String errorCorrection;
+
+        Key(String contents, BarcodeFormat format, int dimension, String charset, String errorCorrection) {
+            this.contents = contents;
+            this.format = format;
+            this.dimension = dimension;
+            this.charset = charset;
+            this.errorCorrection = errorCorrection;
+        }
+
+        String fileName() {
+            String description = ENCODER_VERSION + "|" + format + '|' + dimension + '|' + charset + '|' + errorCorrection + '|' + contents;
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                byte[] hash = digest.digest(description.getBytes(StandardCharsets.UTF_8));
+                StringBuilder name = new StringBuilder(hash.length * 2 + 4);
+                for (byte b : hash) {
+                    name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+                }
+                return name.append(".png").toString();
+            } catch (NoSuchAlgorithmException nsae) {
+                // SHA-1 is always available on Android
+                throw new IllegalStateException(nsae);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return dimension == other.dimension &&
+                    format == other.format &&
+                    contents.equals(other.contents) &&
+                    equal(charset, other.charset) &&
+                    equal(errorCorrection, other.errorCorrection);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = contents.hashCode();
+            result = 31 * result + (format == null ? 0 : format.hashCode());
+            result = 31 * result + dimension;
+            result = 31 * result + (charset == null ? 0 : charset.hashCode());
+            result = 31 * result + (errorCorrection == null ? 0 : errorCorrection.hashCode());
+            return result;
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.encode;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 在后台线程上把条码写成文件，用于分享：压缩、创建目录和写文件都不在主线程上，存储很慢时也不会卡住界面。
+ * <p>
+ * 先写到同目录下的临时文件，完成后再改名，分享出去的文件不会是写了一半的。结果通过 {@link Callback} 在主线程上交付；
+ * {@link #cancel()} 之后不再回调，通常在 Activity 销毁时调用。
+ */
+final class BarcodeExporter {
+    private static final String TAG = BarcodeExporter.class.getSimpleName();
+    // 所有导出共用一个线程，依次执行
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    interface Callback {
+        void onExportFinished(File file);
+
+        void onExportFailed();
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Callback callback;
+    private Future<?> pending;
+    private boolean canceled;
+
+    BarcodeExporter(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * 把已经绘制好的位图压缩成 PNG，不重新编码。
+     */
+    void exportPng(final Bitmap bitmap, File file) {
+        export(file, new Content() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                // PNG 是无损格式，质量参数会被忽略
+                if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                    throw new IOException("Couldn't compress bitmap");
+                }
+            }
+        });
+    }
+
+    /**
+     * 在后台编码并写出矢量的 PDF。
+     *
+     * @param dimension 页面大小，单位为点
+     */
+    void exportPdf(final QRCodeEncoder encoder, final int dimension, File file) {
+        export(file, new Content() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException, WriterException {
+                BitMatrix matrix = encoder.encodeAsMatrix();
+                if (matrix == null) {
+                    throw new WriterException("Unsupported format");
+                }
+                VectorBarcodeWriter.writePdf(matrix, dimension, out);
+            }
+        });
+    }
+
+    /**
+     * 在后台编码并写出矢量的 SVG。
+     *
+     * @param dimension 显示尺寸，单位为像素
+     */
+    void exportSvg(final QRCodeEncoder encoder, final int dimension, File file) {
+        export(file, new Content() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException, WriterException {
+                BitMatrix matrix = encoder.encodeAsMatrix();
+                if (matrix == null) {
+                    throw new WriterException("Unsupported format");
+                }
+                VectorBarcodeWriter.writeSvg(matrix, dimension, out);
+            }
+        });
+    }
+
+    /**
+     * 取消还没完成的导出，之后不再回调。只能在主线程上调用。
+     */
+    void cancel() {
+        canceled = true;
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+    }
+
+    private void export(final File file, final Content content) {
+        if (pending != null) {
+            // 上一次还没完成，不再重复提交
+            Log.i(TAG, "Export already in progress");
+            return;
+        }
+        canceled = false;
+        pending = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final boolean success = write(file, content);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (canceled) {
+                            return;
+                        }
+                        pending = null;
+                        if (success) {
+                            callback.onExportFinished(file);
+                        } else {
+                            callback.onExportFailed();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static boolean write(File file, Content content) {
+        long start = System.currentTimeMillis();
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Couldn't make dir " + directory);
+            return false;
+        }
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            content.writeTo(out);
+        } catch (IOException | WriterException e) {
+            Log.w(TAG, "Couldn't write " + temp, e);
+            deleteQuietly(temp);
+            return false;
+        }
+        // 同一目录下改名是原子操作，会直接替换同名的旧文件
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Couldn't rename " + temp);
+            deleteQuietly(temp);
+            return false;
+        }
+        Log.i(TAG, "Exported " + file + " in " + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+
+    private interface Content {
+        void writeTo(OutputStream out) throws IOException, WriterException;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.encode;
+
+import android.util.Log;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量生成条码，用于打印标签等场景：逐个读取内容，在固定大小的线程池上并行编码，直接写出 1 位黑白的 PNG 或 PBM。
+ * <p>
+ * 同时在处理中的条码最多是线程数的两倍，内容按需从 {@link Iterator} 读取，所以无论批量多大，内存占用都是固定的。
+ * 每张图都从模块分辨率的矩阵逐行写出，不创建 {@link android.graphics.Bitmap}。
+ * <p>
+ * 方法会阻塞直到全部完成，不要在主线程上调用。调用线程被中断时抛出 {@link InterruptedIOException}。
+ */
+public final class BatchEncoder {
+    private static final String TAG = BatchEncoder.class.getSimpleName();
+
+    public enum OutputFormat {
+        /** 1 位灰度 PNG */
+        PNG("png"),
+        /** 二进制 PBM（P4），按位打包，几乎不需要 CPU 即可写出 */
+        PBM("pbm");
+
+        private final String extension;
+
+        OutputFormat(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * 一次批量生成的统计。
+     */
+    public static final class Stats {
+        private final int count;
+        private final long elapsedMs;
+
+        Stats(int count, long elapsedMs) {
+            this.count = count;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public float getCodesPerSecond() {
+            return elapsedMs == 0 ? count * 1000.0f : count * 1000.0f / elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d codes in %d ms (%.1f/s)", count, elapsedMs, getCodesPerSecond());
+        }
+    }
+
+    private final BarcodeFormat format;
+    private final int dimension;
+    private final OutputFormat outputFormat;
+    private final int maxInFlight;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param parallelism 编码线程数，小于 1 时使用 CPU 核数
+     */
+    public BatchEncoder(BarcodeFormat format, int dimension, OutputFormat outputFormat, int parallelism) {
+        this.format = format;
+        this.dimension = dimension;
+        this.outputFormat = outputFormat;
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        maxInFlight = threads * 2;
+        executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "BatchEncoder #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 每个内容写成目录下的一个文件，文件名为从 0 开始的序号，如 {@code 000042.png}。文件由编码线程直接写出。
+     */
+    public Stats encodeToDirectory(Iterator<String> payloads, final File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't make dir " + directory);
+        }
+        return run(payloads, new Sink() {
+            @Override
+            public byte[] write(int index, BitMatrix matrix) throws IOException {
+                File file = new File(directory, String.format(Locale.US, "%06d.%s", index, outputFormat.extension));
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                    writeImage(matrix, out);
+                }
+                return null;
+            }
+        }, null);
+    }
+
+    /**
+     * 按输入顺序把所有图像首尾相接写入 {@code out}，流不会被关闭。PBM 可以直接这样拼接；PNG 需要接收方按 IEND 块切分。
+     */
+    public Stats encodeToStream(Iterator<String> payloads, OutputStream out) throws IOException {
+        return run(payloads, new Sink() {
+            @Override
+            public byte[] write(int index, BitMatrix matrix) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                writeImage(matrix, bytes);
+                return bytes.toByteArray();
+            }
+        }, out);
+    }
+
+    /**
+     * 停止线程池。正在进行的批量不受影响，但之后不能再使用这个实例。
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private Stats run(Iterator<String> payloads, final Sink sink, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>(maxInFlight);
+        int count = 0;
+        try {
+            while (payloads.hasNext()) {
+                if (inFlight.size() == maxInFlight) {
+                    drain(inFlight.removeFirst(), out);
+                }
+                final int index = count++;
+                final String contents = payloads.next();
+                inFlight.addLast(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return sink.write(index, encode(index, contents));
+                    }
+                }));
+            }
+            while (!inFlight.isEmpty()) {
+                drain(inFlight.removeFirst(), out);
+            }
+        } finally {
+            for (Future<byte[]> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+        Stats stats = new Stats(count, System.currentTimeMillis() - start);
+        Log.i(TAG, "Encoded " + format + ' ' + outputFormat + ": " + stats);
+        return stats;
+    }
+
+    private static void drain(Future<byte[]> future, OutputStream out) throws IOException {
+        byte[] image;
+        try {
+            image = future.get();
+        } catch (InterruptedException ie) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        if (out != null && image != null) {
+            out.write(image);
+        }
+    }
+
+    private BitMatrix encode(int index, String contents) throws IOException {
+        Map<EncodeHintType, Object> hints = null;
+        String encoding = QRCodeEncoder.guessAppropriateEncoding(contents);
+        if (encoding != null) {
+            hints = new EnumMap<>(EncodeHintType.class);
+            hints.put(EncodeHintType.CHARACTER_SET, encoding);
+        }
+        try {
+            // 按模块分辨率编码，放大在写出时逐行完成
+            if (format == BarcodeFormat.QR_CODE) {
+                return QRSegmentEncoder.encode(contents, ErrorCorrectionLevel.L);
+            }
+            return new MultiFormatWriter().encode(contents, format, 0, 0, hints);
+        } catch (WriterException | IllegalArgumentException e) {
+            throw new IOException("Can't encode payload #" + index, e);
+        }
+    }
+
+    private void writeImage(BitMatrix matrix, OutputStream out) throws IOException {
+        if (outputFormat == OutputFormat.PBM) {
+            MonochromeImageWriter.writePbm(matrix, dimension, out);
+        } else {
+            MonochromeImageWriter.writePng(matrix, dimension, out);
+        }
+    }
+
+    private interface Sink {
+        /**
+         * 在编码线程上写出一张图像。
+         *
+         * @return 需要按顺序写入输出流的数据，已经自行写出时返回 {@code null}
+         */
+        byte[] write(int index, BitMatrix matrix) throws IOException;
+    }
+}
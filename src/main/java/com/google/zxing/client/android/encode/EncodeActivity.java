@@ -40,8 +40,6 @@ import com.google.zxing.client.android.Intents;
 import com.google.zxing.client.android.R;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.regex.Pattern;
 
 /**
@@ -50,19 +48,28 @@ import java.util.regex.Pattern;
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-public final class EncodeActivity extends Activity {
+public final class EncodeActivity extends Activity implements BarcodeExporter.Callback {
 
     private static final String TAG = EncodeActivity.class.getSimpleName();
 
     private static final int MAX_BARCODE_FILENAME_LENGTH = 24;
     private static final Pattern NOT_ALPHANUMERIC = Pattern.compile("[^A-Za-z0-9]");
     private static final String USE_VCARD_KEY = "USE_VCARD";
+    // 分享 PDF 时的页面大小，单位为点：3 英寸见方。矢量图可以任意缩放，这只是打印时的默认尺寸
+    private static final int PDF_DIMENSION_POINTS = 216;
+    private static final String PNG_EXTENSION = "png";
+    private static final String PDF_EXTENSION = "pdf";
+    private static final String SVG_EXTENSION = "svg";
 
     private QRCodeEncoder qrCodeEncoder;
+    // 当前显示的条码，分享 PNG 时直接压缩，不重新编码
+    private Bitmap bitmap;
+    private BarcodeExporter exporter;
 
     @Override
     public void onCreate(Bundle icicle) {
         super.onCreate(icicle);
+        exporter = new BarcodeExporter(this);
         Intent intent = getIntent();
         if (intent == null) {
             finish();
@@ -94,33 +101,53 @@ public final class EncodeActivity extends Activity {
             return;
         }
 
+        final QRCodeEncoder encoder;
         try {
             boolean useVCard = intent.getBooleanExtra(USE_VCARD_KEY, false);
-            qrCodeEncoder = new QRCodeEncoder(this, intent, smallerDimension, useVCard);
-            Bitmap bitmap = qrCodeEncoder.encodeAsBitmap();
-            if (bitmap == null) {
-                Log.w(TAG, "Could not encode barcode");
-                showErrorMessage(R.string.msg_encode_contents_failed);
-                qrCodeEncoder = null;
-                return;
-            }
-
-            ImageView view = findViewById(R.id.image_view);
-            view.setImageBitmap(bitmap);
-
-            TextView contents = findViewById(R.id.contents_text_view);
-            if (intent.getBooleanExtra(Intents.Encode.SHOW_CONTENTS, true)) {
-                contents.setText(qrCodeEncoder.getDisplayContents());
-                setTitle(qrCodeEncoder.getTitle());
-            } else {
-                contents.setText("");
-                setTitle("");
-            }
+            encoder = new QRCodeEncoder(this, intent, smallerDimension, useVCard);
         } catch (WriterException e) {
             Log.w(TAG, "Could not encode barcode", e);
             showErrorMessage(R.string.msg_encode_contents_failed);
             qrCodeEncoder = null;
+            return;
         }
+        qrCodeEncoder = encoder;
+        bitmap = null;
+
+        TextView contents = findViewById(R.id.contents_text_view);
+        if (intent.getBooleanExtra(Intents.Encode.SHOW_CONTENTS, true)) {
+            contents.setText(encoder.getDisplayContents());
+            setTitle(encoder.getTitle());
+        } else {
+            contents.setText("");
+            setTitle("");
+        }
+
+        // 没有命中内存缓存时在后台读取磁盘缓存或编码，完成后再显示
+        encoder.encodeAsBitmap(new BarcodeCache.Callback() {
+            @Override
+            public void onLoaded(Bitmap loaded) {
+                if (encoder != qrCodeEncoder || isFinishing()) {
+                    // 期间界面已经重新生成或关闭
+                    return;
+                }
+                if (loaded == null) {
+                    Log.w(TAG, "Could not encode barcode");
+                    showErrorMessage(R.string.msg_encode_contents_failed);
+                    qrCodeEncoder = null;
+                    return;
+                }
+                bitmap = loaded;
+                ImageView view = findViewById(R.id.image_view);
+                view.setImageBitmap(loaded);
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        exporter.cancel();
+        super.onDestroy();
     }
 
     @Override
@@ -143,7 +170,13 @@ public final class EncodeActivity extends Activity {
     public boolean onOptionsItemSelected(MenuItem item) {
         int i = item.getItemId();
         if (i == R.id.menu_share) {
-            share();
+            share(PNG_EXTENSION);
+            return true;
+        } else if (i == R.id.menu_share_pdf) {
+            share(PDF_EXTENSION);
+            return true;
+        } else if (i == R.id.menu_share_svg) {
+            share(SVG_EXTENSION);
             return true;
         } else if (i == R.id.menu_encode) {
             Intent intent = getIntent();
@@ -160,7 +193,11 @@ public final class EncodeActivity extends Activity {
         }
     }
 
-    private void share() {
+    /**
+     * @param extension {@link #PDF_EXTENSION} 或 {@link #SVG_EXTENSION} 时分享矢量图，适合打印或排版；
+     *                  否则分享屏幕上已经显示的 PNG
+     */
+    private void share(String extension) {
         QRCodeEncoder encoder = qrCodeEncoder;
         if (encoder == null) { // Odd
             Log.w(TAG, "No existing barcode to send?");
@@ -173,47 +210,50 @@ public final class EncodeActivity extends Activity {
             return;
         }
 
-        Bitmap bitmap;
-        try {
-            bitmap = encoder.encodeAsBitmap();
-        } catch (WriterException we) {
-            Log.w(TAG, we);
-            return;
-        }
-        if (bitmap == null) {
-            return;
-        }
-
         File bsRoot = new File(Environment.getExternalStorageDirectory(), "BarcodeScanner");
         File barcodesRoot = new File(bsRoot, "Barcodes");
-        if (!barcodesRoot.exists() && !barcodesRoot.mkdirs()) {
-            Log.w(TAG, "Couldn't make dir " + barcodesRoot);
-            showErrorMessage(R.string.msg_unmount_usb);
-            return;
-        }
-        File barcodeFile = new File(barcodesRoot, makeBarcodeFileName(contents) + ".png");
-        if (!barcodeFile.delete()) {
-            Log.w(TAG, "Could not delete " + barcodeFile);
-            // continue anyway
+        File barcodeFile = new File(barcodesRoot, makeBarcodeFileName(contents) + "." + extension);
+        // 写文件在后台完成，结果回到 onExportFinished / onExportFailed
+        if (PDF_EXTENSION.equals(extension)) {
+            exporter.exportPdf(encoder, PDF_DIMENSION_POINTS, barcodeFile);
+        } else if (SVG_EXTENSION.equals(extension)) {
+            exporter.exportSvg(encoder, encoder.getDimension(), barcodeFile);
+        } else if (bitmap != null) {
+            exporter.exportPng(bitmap, barcodeFile);
         }
-        try {
-            FileOutputStream fos = new FileOutputStream(barcodeFile);
-            bitmap.compress(Bitmap.CompressFormat.PNG, 0, fos);
-        } catch (IOException ioe) {
-            Log.w(TAG, "Couldn't access file " + barcodeFile + " due to " + ioe);
-            showErrorMessage(R.string.msg_unmount_usb);
+    }
+
+    @Override
+    public void onExportFinished(File barcodeFile) {
+        QRCodeEncoder encoder = qrCodeEncoder;
+        if (encoder == null || isFinishing()) {
             return;
         }
-
+        String name = barcodeFile.getName();
+        String type;
+        if (name.endsWith('.' + PDF_EXTENSION)) {
+            type = "application/pdf";
+        } else if (name.endsWith('.' + SVG_EXTENSION)) {
+            type = "image/svg+xml";
+        } else {
+            type = "image/png";
+        }
         Intent intent = new Intent(Intent.ACTION_SEND, Uri.parse("mailto:"));
         intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.app_name) + " - " + encoder.getTitle());
-        intent.putExtra(Intent.EXTRA_TEXT, contents);
+        intent.putExtra(Intent.EXTRA_TEXT, encoder.getContents());
         intent.putExtra(Intent.EXTRA_STREAM, Uri.parse("file://" + barcodeFile.getAbsolutePath()));
-        intent.setType("image/png");
+        intent.setType(type);
         intent.addFlags(Intents.FLAG_NEW_DOC);
         startActivity(Intent.createChooser(intent, null));
     }
 
+    @Override
+    public void onExportFailed() {
+        if (!isFinishing()) {
+            showErrorMessage(R.string.msg_unmount_usb);
+        }
+    }
+
     private static CharSequence makeBarcodeFileName(CharSequence contents) {
         String fileName = NOT_ALPHANUMERIC.matcher(contents).replaceAll("_");
         if (fileName.length() > MAX_BARCODE_FILENAME_LENGTH) {
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.encode;
+
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * 把模块分辨率的 {@link BitMatrix}（含静区）放大到目标尺寸时的布局：放大倍数取整数并居中，
+ * 与 {@link com.google.zxing.MultiFormatWriter} 直接按目标尺寸编码的结果一致。一维码只有一行，纵向拉伸到整个高度。
+ */
+final class ModuleLayout {
+    final int inputWidth;
+    final int inputHeight;
+    /** 每个模块横向占多少像素 */
+    final int multiple;
+    /** 每行模块纵向占多少像素 */
+    final int rowMultiple;
+    final int outputWidth;
+    final int outputHeight;
+    final int leftPadding;
+    final int topPadding;
+
+    ModuleLayout(BitMatrix matrix, int dimension) {
+        inputWidth = matrix.getWidth();
+        inputHeight = matrix.getHeight();
+        if (inputHeight == 1) {
+            multiple = Math.max(1, dimension / inputWidth);
+            outputHeight = Math.max(1, dimension);
+            rowMultiple = outputHeight;
+        } else {
+            multiple = Math.max(1, Math.min(dimension / inputWidth, dimension / inputHeight));
+            outputHeight = Math.max(dimension, inputHeight * multiple);
+            rowMultiple = multiple;
+        }
+        outputWidth = Math.max(dimension, inputWidth * multiple);
+        leftPadding = (outputWidth - inputWidth * multiple) / 2;
+        topPadding = (outputHeight - inputHeight * rowMultiple) / 2;
+    }
+
+    /**
+     * @return 模块 {@code x} 在输出图像中的起始横坐标
+     */
+    int outputX(int x) {
+        return leftPadding + x * multiple;
+    }
+
+    /**
+     * @return 第 {@code y} 行模块在输出图像中的起始纵坐标
+     */
+    int outputY(int y) {
+        return topPadding + y * rowMultiple;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.encode;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 直接从模块分辨率的 {@link BitMatrix} 写出 1 位黑白图像，不经过 {@link android.graphics.Bitmap}：
+ * 每次只展开一行，内存占用与图像大小无关。支持灰度 1 位的 PNG 和 PBM（P4，按位打包的二进制格式）。
+ */
+final class MonochromeImageWriter {
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int IDAT_CHUNK_SIZE = 8192;
+
+    private MonochromeImageWriter() {
+    }
+
+    /**
+     * 写出一张 PNG。流不会被关闭。
+     */
+    static void writePng(BitMatrix matrix, int dimension, OutputStream out) throws IOException {
+        ModuleLayout layout = new ModuleLayout(matrix, dimension);
+        out.write(PNG_SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, layout.outputWidth);
+        putInt(header, 4, layout.outputHeight);
+        header[8] = 1; // bit depth
+        header[9] = 0; // grayscale
+        writeChunk(out, "IHDR", header, header.length);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            DeflaterOutputStream idat = new DeflaterOutputStream(new IdatOutputStream(out), deflater, IDAT_CHUNK_SIZE);
+            PackedRows rows = new PackedRows(matrix, layout, true);
+            for (int y = 0; y < layout.inputHeight; y++) {
+                rows.writeRow(idat, y);
+            }
+            idat.finish();
+            idat.flush();
+        } finally {
+            deflater.end();
+        }
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    /**
+     * 写出一张 PBM（P4）。多张 PBM 可以直接首尾相接写在同一个流里。流不会被关闭。
+     */
+    static void writePbm(BitMatrix matrix, int dimension, OutputStream out) throws IOException {
+        ModuleLayout layout = new ModuleLayout(matrix, dimension);
+        out.write(("P4\n" + layout.outputWidth + ' ' + layout.outputHeight + '\n').getBytes(StandardCharsets.US_ASCII));
+        PackedRows rows = new PackedRows(matrix, layout, false);
+        for (int y = 0; y < layout.inputHeight; y++) {
+            rows.writeRow(out, y);
+        }
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] word = new byte[4];
+        putInt(word, 0, length);
+        out.write(word);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        putInt(word, 0, (int) crc.getValue());
+        out.write(word);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * 把一行模块展开成按位打包的像素行（高位在前）。PBM 中 1 为黑色；PNG 灰度中 0 为黑色，且每行前面有一个过滤类型字节。
+     */
+    private static final class PackedRows {
+        private final BitMatrix matrix;
+        private final ModuleLayout layout;
+        private final int offset;
+        private final byte white;
+        private final byte[] row;
+        private BitArray bits;
+
+        PackedRows(BitMatrix matrix, ModuleLayout layout, boolean png) {
+            this.matrix = matrix;
+            this.layout = layout;
+            offset = png ? 1 : 0;
+            white = png ? (byte) 0xFF : 0;
+            // PNG 行首的过滤类型为 0（不过滤），之后一直保持
+            row = new byte[offset + (layout.outputWidth + 7) / 8];
+            bits = new BitArray(layout.inputWidth);
+        }
+
+        /**
+         * 输出第 {@code y} 行模块对应的所有像素行，第一行之前和最后一行之后的白色填充行也在这里输出。
+         */
+        void writeRow(OutputStream out, int y) throws IOException {
+            Arrays.fill(row, offset, row.length, white);
+            if (y == 0) {
+                writeTimes(out, layout.topPadding);
+            }
+            bits = matrix.getRow(y, bits);
+            int x = bits.getNextSet(0);
+            while (x < layout.inputWidth) {
+                int end = bits.getNextUnset(x);
+                setBlack(layout.outputX(x), layout.outputX(end));
+                x = bits.getNextSet(end);
+            }
+            writeTimes(out, layout.rowMultiple);
+            if (y == layout.inputHeight - 1) {
+                Arrays.fill(row, offset, row.length, white);
+                writeTimes(out, layout.outputHeight - layout.outputY(layout.inputHeight));
+            }
+        }
+
+        private void writeTimes(OutputStream out, int times) throws IOException {
+            for (int i = 0; i < times; i++) {
+                out.write(row);
+            }
+        }
+
+        private void setBlack(int from, int to) {
+            for (int i = from; i < to; i++) {
+                int mask = 0x80 >>> (i & 7);
+                int index = offset + (i >> 3);
+                row[index] = (byte) (white == 0 ? row[index] | mask : row[index] & ~mask);
+            }
+        }
+    }
+
+    /**
+     * 把压缩后的数据切成若干 IDAT 块写出。
+     */
+    private static final class IdatOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[IDAT_CHUNK_SIZE];
+        private int count;
+
+        IdatOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                flushChunk();
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            writeChunk(out, "IDAT", buffer, count);
+            count = 0;
+        }
+    }
+}
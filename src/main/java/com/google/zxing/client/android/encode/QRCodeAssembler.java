@@ -0,0 +1,551 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.encode;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.reedsolomon.GenericGF;
+import com.google.zxing.common.reedsolomon.ReedSolomonEncoder;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Version;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+/**
+ * 把调用方拼好的数据位流（可以包含多个不同模式的段）组装成二维码矩阵：补齐结束符和填充字节、按块加上纠错码并交织、
+ * 选择惩罚分最低的掩码并排布功能图形和数据。
+ * <p>
+ * 核心库里做这些事的方法（{@code Encoder}、{@code MatrixUtil}、{@code MaskUtil}）都是包内可见的，应用打包的核心库版本
+ * 又不一定与编译时相同，所以这里按标准（ISO/IEC 18004）单独实现，只用核心库的公开 API：{@link Version} 的码字和
+ * 校正图形位置、{@link ReedSolomonEncoder}、{@link BitArray} 和 {@link ByteMatrix}。
+ */
+final class QRCodeAssembler {
+
+    private static final int NUM_MASK_PATTERNS = 8;
+
+    // 掩码惩罚规则 1-4 的权重
+    private static final int N1 = 3;
+    private static final int N2 = 3;
+    private static final int N3 = 40;
+    private static final int N4 = 10;
+
+    private static final int[][] POSITION_DETECTION_PATTERN = {
+            {1, 1, 1, 1, 1, 1, 1},
+            {1, 0, 0, 0, 0, 0, 1},
+            {1, 0, 1, 1, 1, 0, 1},
+            {1, 0, 1, 1, 1, 0, 1},
+            {1, 0, 1, 1, 1, 0, 1},
+            {1, 0, 0, 0, 0, 0, 1},
+            {1, 1, 1, 1, 1, 1, 1},
+    };
+
+    private static final int[][] POSITION_ADJUSTMENT_PATTERN = {
+            {1, 1, 1, 1, 1},
+            {1, 0, 0, 0, 1},
+            {1, 0, 1, 0, 1},
+            {1, 0, 0, 0, 1},
+            {1, 1, 1, 1, 1},
+    };
+
+    // 格式信息在左上角的位置，从最低位开始
+    private static final int[][] TYPE_INFO_COORDINATES = {
+            {8, 0}, {8, 1}, {8, 2}, {8, 3}, {8, 4}, {8, 5}, {8, 7}, {8, 8},
+            {7, 8}, {5, 8}, {4, 8}, {3, 8}, {2, 8}, {1, 8}, {0, 8},
+    };
+
+    // 版本信息和格式信息的 BCH 生成多项式，以及格式信息的掩码
+    private static final int VERSION_INFO_POLY = 0x1f25;
+    private static final int TYPE_INFO_POLY = 0x537;
+    private static final int TYPE_INFO_MASK_PATTERN = 0x5412;
+
+    private static final byte EMPTY = -1;
+
+    private QRCodeAssembler() {
+    }
+
+    /**
+     * @param dataBits 模式指示、字符数和数据，不含结束符和填充，调用后会被补齐
+     * @return 不带静区的模块矩阵，深色模块为 1
+     * @throws WriterException 数据放不进 {@code version}
+     */
+    static ByteMatrix assemble(BitArray dataBits, Version version, ErrorCorrectionLevel ecLevel)
+            throws WriterException {
+        int numBytes = version.getTotalCodewords();
+        Version.ECBlocks ecBlocks = version.getECBlocksForLevel(ecLevel);
+        int numDataBytes = numBytes - ecBlocks.getTotalECCodewords();
+        terminateBits(numDataBytes, dataBits);
+        BitArray finalBits = interleaveWithECBytes(dataBits, numBytes, numDataBytes, ecBlocks.getNumBlocks());
+
+        int dimension = version.getDimensionForVersion();
+        ByteMatrix matrix = new ByteMatrix(dimension, dimension);
+        int maskPattern = chooseMaskPattern(finalBits, ecLevel, version, matrix);
+        buildMatrix(finalBits, ecLevel, version, maskPattern, matrix);
+        return matrix;
+    }
+
+    // ---- 数据码字和纠错码 ----
+
+    /**
+     * 加上最多 4 位的结束符，补齐到整字节，再交替填充 0xEC、0x11 直到数据码字的容量。
+     */
+    private static void terminateBits(int numDataBytes, BitArray bits) throws WriterException {
+        int capacity = numDataBytes * 8;
+        if (bits.getSize() > capacity) {
+            throw new WriterException("Data bits cannot fit in the QR Code: " + bits.getSize() + " > " + capacity);
+        }
+        for (int i = 0; i < 4 && bits.getSize() < capacity; i++) {
+            bits.appendBit(false);
+        }
+        int numBitsInLastByte = bits.getSize() & 0x07;
+        if (numBitsInLastByte > 0) {
+            for (int i = numBitsInLastByte; i < 8; i++) {
+                bits.appendBit(false);
+            }
+        }
+        int numPaddingBytes = numDataBytes - bits.getSizeInBytes();
+        for (int i = 0; i < numPaddingBytes; i++) {
+            bits.appendBits((i & 0x01) == 0 ? 0xEC : 0x11, 8);
+        }
+        if (bits.getSize() != capacity) {
+            throw new WriterException("Bits size does not equal capacity");
+        }
+    }
+
+    /**
+     * 把数据码字分成若干块，每块算出纠错码，然后按“各块第 1 个数据码字、各块第 2 个……各块第 1 个纠错码字……”的顺序交织。
+     * 后一组的块比前一组多一个数据码字。
+     */
+    private static BitArray interleaveWithECBytes(BitArray bits,
+                                                  int numTotalBytes,
+                                                  int numDataBytes,
+                                                  int numRSBlocks) throws WriterException {
+        if (bits.getSizeInBytes() != numDataBytes) {
+            throw new WriterException("Number of bits and data bytes does not match");
+        }
+        int numBlocksInGroup2 = numTotalBytes % numRSBlocks;
+        int numBlocksInGroup1 = numRSBlocks - numBlocksInGroup2;
+        int numTotalBytesInGroup1 = numTotalBytes / numRSBlocks;
+        int numDataBytesInGroup1 = numDataBytes / numRSBlocks;
+        // 两组的块纠错码字数相同
+        int numEcBytes = numTotalBytesInGroup1 - numDataBytesInGroup1;
+
+        ReedSolomonEncoder rsEncoder = new ReedSolomonEncoder(GenericGF.QR_CODE_FIELD_256);
+        byte[][] dataBlocks = new byte[numRSBlocks][];
+        byte[][] ecBlocks = new byte[numRSBlocks][];
+        int dataBytesOffset = 0;
+        int maxNumDataBytes = 0;
+        for (int i = 0; i < numRSBlocks; i++) {
+            int size = i < numBlocksInGroup1 ? numDataBytesInGroup1 : numDataBytesInGroup1 + 1;
+            byte[] dataBytes = new byte[size];
+            bits.toBytes(8 * dataBytesOffset, dataBytes, 0, size);
+            dataBlocks[i] = dataBytes;
+            ecBlocks[i] = generateECBytes(rsEncoder, dataBytes, numEcBytes);
+            maxNumDataBytes = Math.max(maxNumDataBytes, size);
+            dataBytesOffset += size;
+        }
+        if (numDataBytes != dataBytesOffset) {
+            throw new WriterException("Data bytes does not match offset");
+        }
+
+        BitArray result = new BitArray();
+        for (int i = 0; i < maxNumDataBytes; i++) {
+            for (byte[] dataBytes : dataBlocks) {
+                if (i < dataBytes.length) {
+                    result.appendBits(dataBytes[i] & 0xFF, 8);
+                }
+            }
+        }
+        for (int i = 0; i < numEcBytes; i++) {
+            for (byte[] ecBytes : ecBlocks) {
+                result.appendBits(ecBytes[i] & 0xFF, 8);
+            }
+        }
+        if (numTotalBytes != result.getSizeInBytes()) {
+            throw new WriterException("Interleaving error: " + numTotalBytes + " and " +
+                    result.getSizeInBytes() + " differ.");
+        }
+        return result;
+    }
+
+    private static byte[] generateECBytes(ReedSolomonEncoder rsEncoder, byte[] dataBytes, int numEcBytes) {
+        int numDataBytes = dataBytes.length;
+        int[] toEncode = new int[numDataBytes + numEcBytes];
+        for (int i = 0; i < numDataBytes; i++) {
+            toEncode[i] = dataBytes[i] & 0xFF;
+        }
+        rsEncoder.encode(toEncode, numEcBytes);
+        byte[] ecBytes = new byte[numEcBytes];
+        for (int i = 0; i < numEcBytes; i++) {
+            ecBytes[i] = (byte) toEncode[numDataBytes + i];
+        }
+        return ecBytes;
+    }
+
+    // ---- 掩码选择 ----
+
+    private static int chooseMaskPattern(BitArray bits,
+                                         ErrorCorrectionLevel ecLevel,
+                                         Version version,
+                                         ByteMatrix matrix) throws WriterException {
+        int minPenalty = Integer.MAX_VALUE;
+        int bestMaskPattern = -1;
+        for (int maskPattern = 0; maskPattern < NUM_MASK_PATTERNS; maskPattern++) {
+            buildMatrix(bits, ecLevel, version, maskPattern, matrix);
+            int penalty = maskPenalty(matrix);
+            if (penalty < minPenalty) {
+                minPenalty = penalty;
+                bestMaskPattern = maskPattern;
+            }
+        }
+        return bestMaskPattern;
+    }
+
+    /**
+     * 标准中的四条惩罚规则之和：同色连续模块、同色 2x2 方块、类似定位图形的 1:1:3:1:1 序列、深浅模块比例失衡。
+     */
+    private static int maskPenalty(ByteMatrix matrix) {
+        byte[][] array = matrix.getArray();
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        return penaltyRule1(array, width, height, true)
+                + penaltyRule1(array, width, height, false)
+                + penaltyRule2(array, width, height)
+                + penaltyRule3(array, width, height)
+                + penaltyRule4(array, width, height);
+    }
+
+    private static int penaltyRule1(byte[][] array, int width, int height, boolean isHorizontal) {
+        int penalty = 0;
+        int iLimit = isHorizontal ? height : width;
+        int jLimit = isHorizontal ? width : height;
+        for (int i = 0; i < iLimit; i++) {
+            int numSameBitCells = 0;
+            int prevBit = -1;
+            for (int j = 0; j < jLimit; j++) {
+                int bit = isHorizontal ? array[i][j] : array[j][i];
+                if (bit == prevBit) {
+                    numSameBitCells++;
+                } else {
+                    if (numSameBitCells >= 5) {
+                        penalty += N1 + (numSameBitCells - 5);
+                    }
+                    numSameBitCells = 1;
+                    prevBit = bit;
+                }
+            }
+            if (numSameBitCells >= 5) {
+                penalty += N1 + (numSameBitCells - 5);
+            }
+        }
+        return penalty;
+    }
+
+    private static int penaltyRule2(byte[][] array, int width, int height) {
+        int penalty = 0;
+        for (int y = 0; y < height - 1; y++) {
+            byte[] row = array[y];
+            byte[] nextRow = array[y + 1];
+            for (int x = 0; x < width - 1; x++) {
+                int value = row[x];
+                if (value == row[x + 1] && value == nextRow[x] && value == nextRow[x + 1]) {
+                    penalty++;
+                }
+            }
+        }
+        return N2 * penalty;
+    }
+
+    private static int penaltyRule3(byte[][] array, int width, int height) {
+        int numPenalties = 0;
+        for (int y = 0; y < height; y++) {
+            byte[] row = array[y];
+            for (int x = 0; x < width; x++) {
+                if (x + 6 < width &&
+                        row[x] == 1 &&
+                        row[x + 1] == 0 &&
+                        row[x + 2] == 1 &&
+                        row[x + 3] == 1 &&
+                        row[x + 4] == 1 &&
+                        row[x + 5] == 0 &&
+                        row[x + 6] == 1 &&
+                        (isWhiteHorizontal(row, x - 4, x) || isWhiteHorizontal(row, x + 7, x + 11))) {
+                    numPenalties++;
+                }
+                if (y + 6 < height &&
+                        array[y][x] == 1 &&
+                        array[y + 1][x] == 0 &&
+                        array[y + 2][x] == 1 &&
+                        array[y + 3][x] == 1 &&
+                        array[y + 4][x] == 1 &&
+                        array[y + 5][x] == 0 &&
+                        array[y + 6][x] == 1 &&
+                        (isWhiteVertical(array, x, y - 4, y) || isWhiteVertical(array, x, y + 7, y + 11))) {
+                    numPenalties++;
+                }
+            }
+        }
+        return numPenalties * N3;
+    }
+
+    private static boolean isWhiteHorizontal(byte[] row, int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, row.length);
+        for (int i = from; i < to; i++) {
+            if (row[i] == 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhiteVertical(byte[][] array, int col, int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, array.length);
+        for (int i = from; i < to; i++) {
+            if (array[i][col] == 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int penaltyRule4(byte[][] array, int width, int height) {
+        int numDarkCells = 0;
+        for (int y = 0; y < height; y++) {
+            byte[] row = array[y];
+            for (int x = 0; x < width; x++) {
+                if (row[x] == 1) {
+                    numDarkCells++;
+                }
+            }
+        }
+        int numTotalCells = height * width;
+        // 深色模块比例每偏离 50% 五个百分点罚一次
+        int fivePercentVariances = Math.abs(numDarkCells * 2 - numTotalCells) * 10 / numTotalCells;
+        return fivePercentVariances * N4;
+    }
+
+    /**
+     * @return 掩码 {@code maskPattern} 在 (x, y) 处是否翻转模块
+     */
+    private static boolean getDataMaskBit(int maskPattern, int x, int y) {
+        int intermediate;
+        int temp;
+        switch (maskPattern) {
+            case 0:
+                intermediate = (y + x) & 0x1;
+                break;
+            case 1:
+                intermediate = y & 0x1;
+                break;
+            case 2:
+                intermediate = x % 3;
+                break;
+            case 3:
+                intermediate = (y + x) % 3;
+                break;
+            case 4:
+                intermediate = ((y / 2) + (x / 3)) & 0x1;
+                break;
+            case 5:
+                temp = y * x;
+                intermediate = (temp & 0x1) + (temp % 3);
+                break;
+            case 6:
+                temp = y * x;
+                intermediate = ((temp & 0x1) + (temp % 3)) & 0x1;
+                break;
+            case 7:
+                temp = y * x;
+                intermediate = ((temp % 3) + ((y + x) & 0x1)) & 0x1;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid mask pattern: " + maskPattern);
+        }
+        return intermediate == 0;
+    }
+
+    // ---- 矩阵排布 ----
+
+    private static void buildMatrix(BitArray dataBits,
+                                    ErrorCorrectionLevel ecLevel,
+                                    Version version,
+                                    int maskPattern,
+                                    ByteMatrix matrix) throws WriterException {
+        matrix.clear(EMPTY);
+        embedPositionDetectionPatternsAndSeparators(matrix);
+        // 左下角定位图形右上方固定的深色模块
+        matrix.set(8, matrix.getHeight() - 8, 1);
+        embedPositionAdjustmentPatterns(version, matrix);
+        embedTimingPatterns(matrix);
+        embedTypeInfo(ecLevel, maskPattern, matrix);
+        embedVersionInfo(version, matrix);
+        embedDataBits(dataBits, maskPattern, matrix);
+    }
+
+    private static void embedPositionDetectionPatternsAndSeparators(ByteMatrix matrix) {
+        int size = matrix.getWidth();
+        int pdpWidth = POSITION_DETECTION_PATTERN[0].length;
+        embedPattern(POSITION_DETECTION_PATTERN, 0, 0, matrix);
+        embedPattern(POSITION_DETECTION_PATTERN, size - pdpWidth, 0, matrix);
+        embedPattern(POSITION_DETECTION_PATTERN, 0, size - pdpWidth, matrix);
+
+        // 定位图形与数据区之间一个模块宽的浅色分隔
+        for (int i = 0; i <= pdpWidth; i++) {
+            matrix.set(i, pdpWidth, 0);
+            matrix.set(size - 1 - i, pdpWidth, 0);
+            matrix.set(i, size - 1 - pdpWidth, 0);
+        }
+        for (int i = 0; i < pdpWidth; i++) {
+            matrix.set(pdpWidth, i, 0);
+            matrix.set(size - 1 - pdpWidth, i, 0);
+            matrix.set(pdpWidth, size - 1 - i, 0);
+        }
+    }
+
+    private static void embedPositionAdjustmentPatterns(Version version, ByteMatrix matrix) {
+        int[] centers = version.getAlignmentPatternCenters();
+        for (int y : centers) {
+            for (int x : centers) {
+                // 与定位图形重叠的位置已经有值，跳过
+                if (matrix.get(x, y) == EMPTY) {
+                    embedPattern(POSITION_ADJUSTMENT_PATTERN, x - 2, y - 2, matrix);
+                }
+            }
+        }
+    }
+
+    private static void embedPattern(int[][] pattern, int xStart, int yStart, ByteMatrix matrix) {
+        for (int y = 0; y < pattern.length; y++) {
+            int[] patternY = pattern[y];
+            for (int x = 0; x < patternY.length; x++) {
+                matrix.set(xStart + x, yStart + y, patternY[x]);
+            }
+        }
+    }
+
+    private static void embedTimingPatterns(ByteMatrix matrix) {
+        // 第 6 行和第 6 列深浅交替，跳过与校正图形重叠的模块
+        for (int i = 8; i < matrix.getWidth() - 8; i++) {
+            int bit = (i + 1) % 2;
+            if (matrix.get(i, 6) == EMPTY) {
+                matrix.set(i, 6, bit);
+            }
+            if (matrix.get(6, i) == EMPTY) {
+                matrix.set(6, i, bit);
+            }
+        }
+    }
+
+    /**
+     * 格式信息：纠错等级 2 位、掩码 3 位，加 10 位 BCH 校验后与固定掩码异或，在左上角和另外两个角各放一份。
+     */
+    private static void embedTypeInfo(ErrorCorrectionLevel ecLevel, int maskPattern, ByteMatrix matrix) {
+        int typeInfo = (ecLevel.getBits() << 3) | maskPattern;
+        int typeInfoBits = ((typeInfo << 10) | calculateBCHCode(typeInfo, TYPE_INFO_POLY)) ^ TYPE_INFO_MASK_PATTERN;
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        for (int i = 0; i < 15; i++) {
+            boolean bit = ((typeInfoBits >> i) & 0x1) == 1;
+            int[] coordinates = TYPE_INFO_COORDINATES[i];
+            matrix.set(coordinates[0], coordinates[1], bit);
+            if (i < 8) {
+                matrix.set(width - i - 1, 8, bit);
+            } else {
+                matrix.set(8, height - 7 + (i - 8), bit);
+            }
+        }
+    }
+
+    /**
+     * 版本信息：7 及以上的版本才有，版本号 6 位加 12 位 BCH 校验，在右上和左下各放一个 3x6 的块。
+     */
+    private static void embedVersionInfo(Version version, ByteMatrix matrix) {
+        int versionNumber = version.getVersionNumber();
+        if (versionNumber < 7) {
+            return;
+        }
+        int versionInfoBits = (versionNumber << 12) | calculateBCHCode(versionNumber, VERSION_INFO_POLY);
+        // 从最低位开始放
+        int bitIndex = 0;
+        int size = matrix.getHeight();
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 3; j++) {
+                boolean bit = ((versionInfoBits >> bitIndex) & 0x1) == 1;
+                bitIndex++;
+                matrix.set(i, size - 11 + j, bit);
+                matrix.set(size - 11 + j, i, bit);
+            }
+        }
+    }
+
+    /**
+     * 从右下角开始，两列一组上下来回地填入数据位，跳过功能图形和第 6 列；位用完后剩下的模块填 0。
+     */
+    private static void embedDataBits(BitArray dataBits, int maskPattern, ByteMatrix matrix) throws WriterException {
+        int bitIndex = 0;
+        int direction = -1;
+        int x = matrix.getWidth() - 1;
+        int y = matrix.getHeight() - 1;
+        while (x > 0) {
+            if (x == 6) {
+                x--;
+            }
+            while (y >= 0 && y < matrix.getHeight()) {
+                for (int i = 0; i < 2; i++) {
+                    int xx = x - i;
+                    if (matrix.get(xx, y) != EMPTY) {
+                        continue;
+                    }
+                    boolean bit;
+                    if (bitIndex < dataBits.getSize()) {
+                        bit = dataBits.get(bitIndex);
+                        bitIndex++;
+                    } else {
+                        bit = false;
+                    }
+                    if (getDataMaskBit(maskPattern, xx, y)) {
+                        bit = !bit;
+                    }
+                    matrix.set(xx, y, bit);
+                }
+                y += direction;
+            }
+            direction = -direction;
+            y += direction;
+            x -= 2;
+        }
+        if (bitIndex != dataBits.getSize()) {
+            throw new WriterException("Not all bits consumed: " + bitIndex + '/' + dataBits.getSize());
+        }
+    }
+
+    /**
+     * @return {@code value} 乘上 x^(次数) 后对生成多项式 {@code poly} 取模的余数
+     */
+    private static int calculateBCHCode(int value, int poly) {
+        int msbSetInPoly = findMSBSet(poly);
+        value <<= msbSetInPoly - 1;
+        while (findMSBSet(value) >= msbSetInPoly) {
+            value ^= poly << (findMSBSet(value) - msbSetInPoly);
+        }
+        return value;
+    }
+
+    private static int findMSBSet(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value);
+    }
+}
@@ -35,7 +35,9 @@ import com.google.zxing.client.android.R;
 import com.google.zxing.client.result.AddressBookParsedResult;
 import com.google.zxing.client.result.ParsedResult;
 import com.google.zxing.client.result.ResultParser;
+import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -331,40 +333,95 @@ final class QRCodeEncoder {
         return useVCard;
     }
 
-    Bitmap encodeAsBitmap() throws WriterException {
+    /**
+     * @return 屏幕上显示的条码边长，单位为像素
+     */
+    int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * 生成条码图片。结果会被缓存，同样的内容再次显示时直接取缓存；位图是共享的，不能修改或回收。
+     * 内存中有缓存时立即回调，否则在后台查找磁盘缓存或编码后在主线程上回调；没有内容或无法编码时位图为 {@code null}。
+     */
+    void encodeAsBitmap(BarcodeCache.Callback callback) {
+        String contentsToEncode = contents;
+        if (contentsToEncode == null) {
+            callback.onLoaded(null);
+            return;
+        }
+        // 纠错等级目前总是使用默认值
+        BarcodeCache.Key key = new BarcodeCache.Key(contentsToEncode, format, dimension,
+                guessAppropriateEncoding(contentsToEncode), null);
+        BarcodeCache.getInstance(activity).get(key, new BarcodeCache.Loader() {
+            @Override
+            public Bitmap load() throws WriterException {
+                BitMatrix result = encodeAsMatrix();
+                return result == null ? null : renderMatrix(result, dimension);
+            }
+        }, callback);
+    }
+
+    /**
+     * 按模块分辨率编码（含静区），每个模块一个点，供位图或矢量输出放大。
+     *
+     * @return 没有内容或格式不支持时为 {@code null}
+     */
+    BitMatrix encodeAsMatrix() throws WriterException {
         String contentsToEncode = contents;
         if (contentsToEncode == null) {
             return null;
         }
+        if (format == BarcodeFormat.QR_CODE) {
+            // 分段编码通常能用更小的版本；纠错等级与核心库的默认值相同
+            return QRSegmentEncoder.encode(contentsToEncode, ErrorCorrectionLevel.L);
+        }
         Map<EncodeHintType, Object> hints = null;
         String encoding = guessAppropriateEncoding(contentsToEncode);
         if (encoding != null) {
             hints = new EnumMap<>(EncodeHintType.class);
             hints.put(EncodeHintType.CHARACTER_SET, encoding);
         }
-        BitMatrix result;
         try {
-            result = new MultiFormatWriter().encode(contentsToEncode, format, dimension, dimension, hints);
+            // 宽高传 0 时不放大
+            return new MultiFormatWriter().encode(contentsToEncode, format, 0, 0, hints);
         } catch (IllegalArgumentException iae) {
             // Unsupported format
             return null;
         }
-        int width = result.getWidth();
-        int height = result.getHeight();
-        int[] pixels = new int[width * height];
-        for (int y = 0; y < height; y++) {
-            int offset = y * width;
-            for (int x = 0; x < width; x++) {
-                pixels[offset + x] = result.get(x, y) ? BLACK : WHITE;
+    }
+
+    /**
+     * 把模块分辨率的 {@link BitMatrix} 按 {@link ModuleLayout} 最近邻放大到 {@code dimension} 绘制成位图。
+     * <p>
+     * 逐行填充，只需要一行的像素缓冲区；黑白两色用 RGB_565 不损失任何信息，内存只有 ARGB_8888 的一半。
+     */
+    static Bitmap renderMatrix(BitMatrix matrix, int dimension) {
+        ModuleLayout layout = new ModuleLayout(matrix, dimension);
+        int outputWidth = layout.outputWidth;
+        Bitmap bitmap = Bitmap.createBitmap(outputWidth, layout.outputHeight, Bitmap.Config.RGB_565);
+        bitmap.eraseColor(WHITE);
+        int[] row = new int[outputWidth];
+        BitArray bits = new BitArray(layout.inputWidth);
+        for (int inputY = 0; inputY < layout.inputHeight; inputY++) {
+            bits = matrix.getRow(inputY, bits);
+            Arrays.fill(row, WHITE);
+            // 相邻的黑色模块合并成一段一次填充
+            int x = bits.getNextSet(0);
+            while (x < layout.inputWidth) {
+                int end = bits.getNextUnset(x);
+                Arrays.fill(row, layout.outputX(x), layout.outputX(end), BLACK);
+                x = bits.getNextSet(end);
+            }
+            int outputY = layout.outputY(inputY);
+            for (int i = 0; i < layout.rowMultiple; i++) {
+                bitmap.setPixels(row, 0, outputWidth, 0, outputY + i, outputWidth, 1);
             }
         }
-
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
         return bitmap;
     }
 
-    private static String guessAppropriateEncoding(CharSequence contents) {
+    static String guessAppropriateEncoding(CharSequence contents) {
         // Very crude at the moment
         for (int i = 0; i < contents.length(); i++) {
             if (contents.charAt(i) > 0xFF) {
@@ -0,0 +1,507 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.encode;
+
+import android.util.Log;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.CharacterSetECI;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Mode;
+import com.google.zxing.qrcode.decoder.Version;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 把内容切分成数字、字母数字、字节和汉字（Shift_JIS）模式的若干段再编码成二维码，使数据位数最少，从而选用尽可能小的版本。
+ * <p>
+ * 核心库只会把整段内容放进同一种模式，只要有一个字母不是大写就整体用字节模式，订单号、网址和中文混在一起时往往要大好几个版本。
+ * 这里用动态规划求最优切分：状态是“当前字符所在段的模式”，切换模式要付出模式指示和字符数的开销。
+ * 字符数字段的长度随版本区间（1-9、10-26、27-40）变化，所以每个区间单独求一次，取能放下的最小版本。
+ * <p>
+ * 字节段只含 ASCII 时不加 ECI。含有 0x80 以上的字符时必须加 ECI，否则解码器（包括 zxing 的 {@code QRCodeReader}）
+ * 会把这些字节猜成 Shift_JIS：能用 ISO-8859-1 表示就用 ECI 3，否则整体改用 UTF-8。ECI 头的 12 位计入切分的开销。
+ */
+final class QRSegmentEncoder {
+    private static final String TAG = QRSegmentEncoder.class.getSimpleName();
+
+    private static final int QUIET_ZONE_SIZE = 4;
+    private static final Charset SHIFT_JIS = Charset.forName("Shift_JIS");
+    // ECI 模式指示 4 位加 8 位的编号，单位 1/6 位
+    private static final int ECI_HEADER_COST = (4 + 8) * 6;
+    // 每个区间的起始版本；同一区间内各模式字符数字段的长度相同
+    private static final int[] VERSION_RANGE_STARTS = {1, 10, 27};
+    private static final int[] VERSION_RANGE_ENDS = {9, 26, 40};
+
+    private static final Mode[] MODES = {Mode.NUMERIC, Mode.ALPHANUMERIC, Mode.BYTE, Mode.KANJI};
+    private static final int NUMERIC = 0;
+    private static final int ALPHANUMERIC = 1;
+    private static final int BYTE = 2;
+    private static final int KANJI = 3;
+    private static final int IMPOSSIBLE = Integer.MAX_VALUE / 2;
+    private static final String ALPHANUMERIC_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+    private QRSegmentEncoder() {
+    }
+
+    /**
+     * 编码成模块分辨率的矩阵，四周带 4 个模块宽的静区，与 {@link com.google.zxing.qrcode.QRCodeWriter} 宽高传 0 时的结果格式相同。
+     */
+    static BitMatrix encode(String contents, ErrorCorrectionLevel ecLevel) throws WriterException {
+        Plan plan = plan(contents, ecLevel);
+        ByteMatrix input = QRCodeAssembler.assemble(plan.toBits(), plan.version, ecLevel);
+        int size = input.getWidth();
+        BitMatrix output = new BitMatrix(size + QUIET_ZONE_SIZE * 2);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (input.get(x, y) == 1) {
+                    output.set(x + QUIET_ZONE_SIZE, y + QUIET_ZONE_SIZE);
+                }
+            }
+        }
+        return output;
+    }
+
+    /**
+     * 求出最优切分和能放下它的最小版本。
+     *
+     * @throws WriterException 内容太长，任何版本都放不下
+     */
+    static Plan plan(String contents, ErrorCorrectionLevel ecLevel) throws WriterException {
+        Chars chars = new Chars(contents);
+        for (int range = 0; range < VERSION_RANGE_STARTS.length; range++) {
+            Version first = Version.getVersionForNumber(VERSION_RANGE_STARTS[range]);
+            Plan best = null;
+            for (ByteEncoding encoding : ByteEncoding.values()) {
+                Plan plan = segment(chars, first, encoding);
+                if (plan != null && (best == null || plan.bitCount < best.bitCount)) {
+                    best = plan;
+                }
+            }
+            if (best == null) {
+                continue;
+            }
+            for (int number = VERSION_RANGE_STARTS[range]; number <= VERSION_RANGE_ENDS[range]; number++) {
+                Version version = Version.getVersionForNumber(number);
+                if (best.bitCount <= getDataCapacityBits(version, ecLevel)) {
+                    best.version = version;
+                    return best;
+                }
+            }
+        }
+        throw new WriterException("Data too big");
+    }
+
+    /**
+     * 对比核心库的单一模式编码，统计一批内容节省的版本数和模块数，并写入日志。
+     */
+    static Savings compare(Iterable<String> corpus, ErrorCorrectionLevel ecLevel) {
+        Savings savings = new Savings();
+        for (String contents : corpus) {
+            Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+            String encoding = QRCodeEncoder.guessAppropriateEncoding(contents);
+            if (encoding != null) {
+                hints.put(EncodeHintType.CHARACTER_SET, encoding);
+            }
+            Version coreVersion;
+            Version optimizedVersion;
+            try {
+                coreVersion = Encoder.encode(contents, ecLevel, hints).getVersion();
+                optimizedVersion = plan(contents, ecLevel).version;
+            } catch (WriterException we) {
+                savings.skipped++;
+                continue;
+            }
+            savings.add(coreVersion, optimizedVersion);
+        }
+        Log.i(TAG, "Segment optimization at EC level " + ecLevel + ": " + savings);
+        return savings;
+    }
+
+    private static int getDataCapacityBits(Version version, ErrorCorrectionLevel ecLevel) {
+        return (version.getTotalCodewords() - version.getECBlocksForLevel(ecLevel).getTotalECCodewords()) * 8;
+    }
+
+    /**
+     * 在字符数字段长度与 {@code version} 相同的版本区间内求最优切分。开销以 1/6 位为单位，这样数字（10/3 位）和
+     * 字母数字（11/2 位）的每个字符都是整数；切换模式时前一段向上取整到整数位。
+     *
+     * @return 有字符无法表示，或某一段长到这个区间放不下时为 {@code null}
+     */
+    private static Plan segment(Chars chars, Version version, ByteEncoding encoding) throws WriterException {
+        int length = chars.codePoints.length;
+        if (length == 0) {
+            return new Plan(chars, Collections.singletonList(new Segment(Mode.BYTE, 0, 0)), ByteEncoding.ASCII, version);
+        }
+        int[] headerCosts = new int[MODES.length];
+        for (int m = 0; m < MODES.length; m++) {
+            headerCosts[m] = (4 + MODES[m].getCharacterCountBits(version)) * 6;
+        }
+        int[] costs = new int[MODES.length];
+        int[] nextCosts = new int[MODES.length];
+        // previousModes[i][m]：第 i 个字符用模式 m 时，第 i - 1 个字符的模式；-1 表示第 i 个字符是开头
+        byte[][] previousModes = new byte[length][MODES.length];
+        for (int i = 0; i < length; i++) {
+            // 第一段之前是 ECI 头
+            int switchCost = encoding.eci == null ? 0 : ECI_HEADER_COST;
+            int switchFrom = -1;
+            if (i > 0) {
+                switchCost = IMPOSSIBLE;
+                for (int m = 0; m < MODES.length; m++) {
+                    int rounded = (costs[m] + 5) / 6 * 6;
+                    if (rounded < switchCost) {
+                        switchCost = rounded;
+                        switchFrom = m;
+                    }
+                }
+            }
+            for (int m = 0; m < MODES.length; m++) {
+                int charCost = chars.cost(i, m, encoding);
+                if (charCost == IMPOSSIBLE) {
+                    nextCosts[m] = IMPOSSIBLE;
+                    continue;
+                }
+                int best = IMPOSSIBLE;
+                int from = -1;
+                if (i > 0 && costs[m] < IMPOSSIBLE) {
+                    best = costs[m] + charCost;
+                    from = m;
+                }
+                int switched = switchCost + headerCosts[m] + charCost;
+                if (switched < best) {
+                    best = switched;
+                    from = switchFrom;
+                }
+                nextCosts[m] = best;
+                previousModes[i][m] = (byte) from;
+            }
+            int[] swap = costs;
+            costs = nextCosts;
+            nextCosts = swap;
+        }
+
+        int mode = -1;
+        int minCost = IMPOSSIBLE;
+        for (int m = 0; m < MODES.length; m++) {
+            if (costs[m] < minCost) {
+                minCost = costs[m];
+                mode = m;
+            }
+        }
+        if (mode < 0) {
+            return null;
+        }
+        List<Segment> segments = new ArrayList<>();
+        int end = length;
+        for (int i = length - 1; i >= 0; i--) {
+            int previous = previousModes[i][mode];
+            if (previous != mode) {
+                segments.add(new Segment(MODES[mode], chars.offsets[i], chars.offsets[end]));
+                end = i;
+                mode = previous;
+            }
+        }
+        Collections.reverse(segments);
+        // 字节段恰好都是 ASCII 时省掉 ECI
+        boolean needsEci = false;
+        for (Segment segment : segments) {
+            if (segment.mode == Mode.BYTE && !chars.isAscii(segment.start, segment.end)) {
+                needsEci = true;
+            }
+        }
+        try {
+            return new Plan(chars, segments, needsEci ? encoding : ByteEncoding.ASCII, version);
+        } catch (WriterException we) {
+            return null;
+        }
+    }
+
+    /**
+     * 一种切分方式：各段的模式和范围、是否需要 ECI，以及能放下它的版本。
+     */
+    static final class Plan {
+        private final Chars chars;
+        private final List<Segment> segments;
+        private final ByteEncoding encoding;
+        private final int bitCount;
+        private Version version;
+
+        Plan(Chars chars, List<Segment> segments, ByteEncoding encoding, Version version) throws WriterException {
+            this.chars = chars;
+            this.segments = segments;
+            this.encoding = encoding;
+            this.version = version;
+            bitCount = toBits().getSize();
+        }
+
+        Version getVersion() {
+            return version;
+        }
+
+        int getBitCount() {
+            return bitCount;
+        }
+
+        /**
+         * @throws WriterException 某一段的字符数超出了字符数字段能表示的范围
+         */
+        BitArray toBits() throws WriterException {
+            BitArray bits = new BitArray();
+            if (encoding.eci != null) {
+                bits.appendBits(Mode.ECI.getBits(), 4);
+                bits.appendBits(encoding.eci.getValue(), 8);
+            }
+            for (Segment segment : segments) {
+                String text = chars.text.substring(segment.start, segment.end);
+                byte[] bytes = segment.mode == Mode.BYTE ? text.getBytes(encoding.charset) : null;
+                int count = bytes != null ? bytes.length : text.length();
+                int countBits = segment.mode.getCharacterCountBits(version);
+                if (count >= 1 << countBits) {
+                    throw new WriterException(count + " is bigger than " + ((1 << countBits) - 1));
+                }
+                bits.appendBits(segment.mode.getBits(), 4);
+                bits.appendBits(count, countBits);
+                if (segment.mode == Mode.NUMERIC) {
+                    appendNumeric(text, bits);
+                } else if (segment.mode == Mode.ALPHANUMERIC) {
+                    appendAlphanumeric(text, bits);
+                } else if (segment.mode == Mode.KANJI) {
+                    appendKanji(text, bits);
+                } else {
+                    for (byte b : bytes) {
+                        bits.appendBits(b & 0xFF, 8);
+                    }
+                }
+            }
+            return bits;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append("version ").append(version.getVersionNumber()).append(", ").append(bitCount).append(" bits");
+            if (encoding.eci != null) {
+                result.append(", ECI ").append(encoding.charset.name());
+            }
+            for (Segment segment : segments) {
+                result.append(", ").append(segment.mode).append('[').append(segment.end - segment.start).append(']');
+            }
+            return result.toString();
+        }
+    }
+
+    private static void appendNumeric(String text, BitArray bits) {
+        int i = 0;
+        while (i < text.length()) {
+            int digits = Math.min(3, text.length() - i);
+            bits.appendBits(Integer.parseInt(text.substring(i, i + digits)), digits * 3 + 1);
+            i += digits;
+        }
+    }
+
+    private static void appendAlphanumeric(String text, BitArray bits) {
+        int i = 0;
+        while (i + 1 < text.length()) {
+            int value = ALPHANUMERIC_CHARS.indexOf(text.charAt(i)) * 45 + ALPHANUMERIC_CHARS.indexOf(text.charAt(i + 1));
+            bits.appendBits(value, 11);
+            i += 2;
+        }
+        if (i < text.length()) {
+            bits.appendBits(ALPHANUMERIC_CHARS.indexOf(text.charAt(i)), 6);
+        }
+    }
+
+    private static void appendKanji(String text, BitArray bits) {
+        for (int i = 0; i < text.length(); i++) {
+            bits.appendBits(kanjiValue(text.charAt(i)), 13);
+        }
+    }
+
+    /**
+     * @return 汉字模式下的 13 位编码，字符不在 Shift_JIS 的双字节汉字区时为 -1
+     */
+    private static int kanjiValue(char c) {
+        String text = String.valueOf(c);
+        byte[] bytes = text.getBytes(SHIFT_JIS);
+        // 无法映射的字符会变成单字节的 '?'；有些字符编码后解码回来不是原字符，也不能用
+        if (bytes.length != 2 || !text.equals(new String(bytes, SHIFT_JIS))) {
+            return -1;
+        }
+        int code = ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+        int subtracted;
+        if (code >= 0x8140 && code <= 0x9FFC) {
+            subtracted = code - 0x8140;
+        } else if (code >= 0xE040 && code <= 0xEBBF) {
+            subtracted = code - 0xC140;
+        } else {
+            return -1;
+        }
+        return (subtracted >> 8) * 0xC0 + (subtracted & 0xFF);
+    }
+
+    /**
+     * 按码点拆开的内容，以及每个码点在各模式下的开销。
+     */
+    private static final class Chars {
+        final String text;
+        final int[] codePoints;
+        // offsets[i] 是第 i 个码点在 text 中的下标，最后多一项等于 text.length()
+        final int[] offsets;
+        private final boolean[] kanji;
+
+        Chars(String text) {
+            this.text = text;
+            int count = text.codePointCount(0, text.length());
+            codePoints = new int[count];
+            offsets = new int[count + 1];
+            kanji = new boolean[count];
+            int offset = 0;
+            for (int i = 0; i < count; i++) {
+                int codePoint = text.codePointAt(offset);
+                codePoints[i] = codePoint;
+                offsets[i] = offset;
+                kanji[i] = codePoint > 0xFF && codePoint <= 0xFFFF && kanjiValue((char) codePoint) >= 0;
+                offset += Character.charCount(codePoint);
+            }
+            offsets[count] = offset;
+        }
+
+        /**
+         * @return 第 {@code i} 个码点在模式 {@code m} 下的开销，单位 1/6 位
+         */
+        int cost(int i, int m, ByteEncoding encoding) {
+            int codePoint = codePoints[i];
+            switch (m) {
+                case NUMERIC:
+                    return codePoint >= '0' && codePoint <= '9' ? 20 : IMPOSSIBLE;
+                case ALPHANUMERIC:
+                    return codePoint < 0x80 && ALPHANUMERIC_CHARS.indexOf(codePoint) >= 0 ? 33 : IMPOSSIBLE;
+                case KANJI:
+                    return kanji[i] ? 78 : IMPOSSIBLE;
+                default:
+                    if (encoding == ByteEncoding.ASCII) {
+                        return codePoint < 0x80 ? 48 : IMPOSSIBLE;
+                    }
+                    if (encoding == ByteEncoding.ISO_8859_1) {
+                        return codePoint <= 0xFF ? 48 : IMPOSSIBLE;
+                    }
+                    int bytes = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+                    return bytes * 48;
+            }
+        }
+
+        boolean isAscii(int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (text.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 字节段的编码，以及编码前要加的 ECI。
+     */
+    private enum ByteEncoding {
+        // 只有 ASCII 时各种编码的结果相同，解码器怎么猜都不会错
+        ASCII(StandardCharsets.US_ASCII, null),
+        ISO_8859_1(StandardCharsets.ISO_8859_1, CharacterSetECI.ISO8859_1),
+        UTF_8(StandardCharsets.UTF_8, CharacterSetECI.UTF8);
+
+        final Charset charset;
+        final CharacterSetECI eci;
+
+        ByteEncoding(Charset charset, CharacterSetECI eci) {
+            this.charset = charset;
+            this.eci = eci;
+        }
+    }
+
+    private static final class Segment {
+        final Mode mode;
+        // text 中的下标
+        final int start;
+        final int end;
+
+        Segment(Mode mode, int start, int end) {
+            this.mode = mode;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * 一批内容的统计。
+     */
+    static final class Savings {
+        private int count;
+        private int skipped;
+        private int improved;
+        private int versionsSaved;
+        private long coreModules;
+        private long modulesSaved;
+
+        void add(Version coreVersion, Version optimizedVersion) {
+            count++;
+            int coreDimension = coreVersion.getDimensionForVersion();
+            int optimizedDimension = optimizedVersion.getDimensionForVersion();
+            coreModules += coreDimension * coreDimension;
+            int saved = coreVersion.getVersionNumber() - optimizedVersion.getVersionNumber();
+            if (saved > 0) {
+                improved++;
+            }
+            versionsSaved += saved;
+            modulesSaved += coreDimension * coreDimension - optimizedDimension * optimizedDimension;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        int getImproved() {
+            return improved;
+        }
+
+        int getVersionsSaved() {
+            return versionsSaved;
+        }
+
+        long getModulesSaved() {
+            return modulesSaved;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d codes (%d skipped), %d smaller, %d versions and %d modules (%.1f%%) saved",
+                    count, skipped, improved, versionsSaved, modulesSaved,
+                    coreModules == 0 ? 0.0 : modulesSaved * 100.0 / coreModules);
+        }
+    }
+}
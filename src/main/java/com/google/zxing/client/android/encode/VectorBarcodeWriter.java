@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.encode;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 把模块分辨率的 {@link BitMatrix}（含静区）写成矢量图：每行相邻的黑色模块合并成一个矩形，输出为 SVG 路径或 PDF 填充路径。
+ * 坐标以模块为单位，图像可以任意缩放打印而没有锯齿，文件大小只与模块数有关，与输出尺寸无关。
+ * <p>
+ * 一维码只有一行，纵向拉伸为正方形，与 {@link ModuleLayout} 的位图输出一致。
+ */
+final class VectorBarcodeWriter {
+
+    private VectorBarcodeWriter() {
+    }
+
+    /**
+     * 写出一张 SVG，显示尺寸为 {@code dimension} 像素。流不会被关闭。
+     */
+    static void writeSvg(BitMatrix matrix, int dimension, OutputStream out) throws IOException {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        boolean stretch = height == 1;
+        int outputHeight = stretch ? dimension : dimension * height / width;
+        StringBuilder svg = new StringBuilder(256);
+        svg.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\"")
+                .append(" width=\"").append(dimension).append("\" height=\"").append(outputHeight).append('"')
+                .append(" viewBox=\"0 0 ").append(width).append(' ').append(height).append('"')
+                .append(stretch ? " preserveAspectRatio=\"none\"" : "")
+                .append(" shape-rendering=\"crispEdges\">\n")
+                .append("<rect width=\"").append(width).append("\" height=\"").append(height).append("\" fill=\"#fff\"/>\n")
+                .append("<path fill=\"#000\" d=\"");
+        out.write(svg.toString().getBytes(StandardCharsets.UTF_8));
+        svg.setLength(0);
+        BitArray row = new BitArray(width);
+        for (int y = 0; y < height; y++) {
+            row = matrix.getRow(y, row);
+            int x = row.getNextSet(0);
+            while (x < width) {
+                int end = row.getNextUnset(x);
+                // 从左上角出发，向右、向下、回到起点所在列，闭合
+                svg.append('M').append(x).append(' ').append(y)
+                        .append('h').append(end - x).append("v1H").append(x).append('z');
+                x = row.getNextSet(end);
+            }
+            // 每行写出一次，缓冲区大小与行宽有关而与整张图无关
+            out.write(svg.toString().getBytes(StandardCharsets.US_ASCII));
+            svg.setLength(0);
+        }
+        out.write("\"/>\n</svg>\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 写出单页 PDF，页面大小为 {@code dimension} 点（1/72 英寸），条码铺满页面。流不会被关闭。
+     */
+    static void writePdf(BitMatrix matrix, int dimension, OutputStream out) throws IOException {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        boolean stretch = height == 1;
+        float scaleX = (float) dimension / width;
+        float scaleY = stretch ? dimension : scaleX;
+        int pageHeight = Math.round(height * scaleY);
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater();
+        try (DeflaterOutputStream stream = new DeflaterOutputStream(content, deflater)) {
+            // PDF 的原点在左下角，翻转 y 轴后按模块坐标绘制
+            stream.write(String.format(Locale.US, "%.4f 0 0 %.4f 0 %d cm\n", scaleX, -scaleY, pageHeight)
+                    .getBytes(StandardCharsets.US_ASCII));
+            StringBuilder path = new StringBuilder(64);
+            BitArray row = new BitArray(width);
+            for (int y = 0; y < height; y++) {
+                row = matrix.getRow(y, row);
+                int x = row.getNextSet(0);
+                while (x < width) {
+                    int end = row.getNextUnset(x);
+                    path.append(x).append(' ').append(y).append(' ').append(end - x).append(" 1 re\n");
+                    x = row.getNextSet(end);
+                }
+                stream.write(path.toString().getBytes(StandardCharsets.US_ASCII));
+                path.setLength(0);
+            }
+            stream.write("f\n".getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            deflater.end();
+        }
+
+        PdfOutput pdf = new PdfOutput(out);
+        pdf.write("%PDF-1.4\n");
+        pdf.beginObject(1);
+        pdf.write("<< /Type /Catalog /Pages 2 0 R >>\n");
+        pdf.endObject();
+        pdf.beginObject(2);
+        pdf.write("<< /Type /Pages /Kids [3 0 R] /Count 1 >>\n");
+        pdf.endObject();
+        pdf.beginObject(3);
+        pdf.write("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 " + dimension + ' ' + pageHeight + "]" +
+                " /Contents 4 0 R /Resources << >> >>\n");
+        pdf.endObject();
+        pdf.beginObject(4);
+        pdf.write("<< /Length " + content.size() + " /Filter /FlateDecode >>\nstream\n");
+        pdf.write(content.toByteArray());
+        pdf.write("\nendstream\n");
+        pdf.endObject();
+        pdf.finish();
+    }
+
+    /**
+     * 记录每个对象的偏移量，最后写出交叉引用表。
+     */
+    private static final class PdfOutput {
+        private static final int OBJECT_COUNT = 4;
+
+        private final OutputStream out;
+        private final long[] offsets = new long[OBJECT_COUNT + 1];
+        private long position;
+
+        PdfOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(String text) throws IOException {
+            write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            position += bytes.length;
+        }
+
+        void beginObject(int number) throws IOException {
+            offsets[number] = position;
+            write(number + " 0 obj\n");
+        }
+
+        void endObject() throws IOException {
+            write("endobj\n");
+        }
+
+        void finish() throws IOException {
+            long xref = position;
+            StringBuilder trailer = new StringBuilder();
+            trailer.append("xref\n0 ").append(OBJECT_COUNT + 1).append('\n');
+            // 每条记录必须正好 20 个字节
+            trailer.append("0000000000 65535 f \n");
+            for (int i = 1; i <= OBJECT_COUNT; i++) {
+                trailer.append(String.format(Locale.US, "%010d 00000 n \n", offsets[i]));
+            }
+            trailer.append("trailer\n<< /Size ").append(OBJECT_COUNT + 1).append(" /Root 1 0 R >>\n")
+                    .append("startxref\n").append(xref).append("\n%%EOF\n");
+            write(trailer.toString());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.history;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * 扫描历史的数据库。使用 WAL 日志，写线程提交时不阻塞查询；按内容、格式和时间查询都有索引。
+ */
+final class DBHelper extends SQLiteOpenHelper {
+
+    private static final int DB_VERSION = 1;
+    private static final String DB_NAME = "barcode_scanner_history.db";
+    static final String TABLE_NAME = "history";
+    static final String ID_COL = "id";
+    static final String TEXT_COL = "text";
+    static final String FORMAT_COL = "format";
+    static final String DISPLAY_COL = "display";
+    static final String TIMESTAMP_COL = "timestamp";
+
+    DBHelper(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // 只对新建的数据库有效，之后删除记录时可以用 incremental_vacuum 归还空间
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_NAME + " (" +
+                ID_COL + " INTEGER PRIMARY KEY, " +
+                TEXT_COL + " TEXT NOT NULL, " +
+                FORMAT_COL + " TEXT NOT NULL, " +
+                DISPLAY_COL + " TEXT, " +
+                TIMESTAMP_COL + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX history_text ON " + TABLE_NAME + " (" + TEXT_COL + ')');
+        db.execSQL("CREATE INDEX history_format_time ON " + TABLE_NAME + " (" + FORMAT_COL + ", " + TIMESTAMP_COL + ')');
+        db.execSQL("CREATE INDEX history_time ON " + TABLE_NAME + " (" + TIMESTAMP_COL + ')');
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+        onCreate(db);
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.history;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * 把导出的历史文件以 content:// 地址只读地提供给分享的目标应用，不需要写外部存储，也不暴露 file:// 路径。
+ * 文件放在应用的缓存目录下，系统空间不足时可以回收。对方只能通过 {@link android.content.Intent#FLAG_GRANT_READ_URI_PERMISSION}
+ * 临时获得读取权限。
+ */
+public final class ExportProvider extends ContentProvider {
+
+    private static final String DIRECTORY = "exports";
+    private static final String AUTHORITY_SUFFIX = ".exports";
+    private static final String[] DEFAULT_COLUMNS = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+
+    /**
+     * @return 导出文件所在的目录，不一定已经存在
+     */
+    public static File getExportDirectory(Context context) {
+        return new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    /**
+     * @return {@link #getExportDirectory(Context)} 中文件的 content:// 地址
+     */
+    public static Uri getUri(Context context, File file) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(context.getPackageName() + AUTHORITY_SUFFIX)
+                .appendPath(file.getName())
+                .build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        File file = getFile(uri);
+        if (projection == null) {
+            projection = DEFAULT_COLUMNS;
+        }
+        // 只返回认识的列，邮件等应用用它们显示附件的名称和大小
+        String[] columns = new String[projection.length];
+        Object[] values = new Object[projection.length];
+        int count = 0;
+        for (String column : projection) {
+            if (OpenableColumns.DISPLAY_NAME.equals(column)) {
+                columns[count] = column;
+                values[count++] = file.getName();
+            } else if (OpenableColumns.SIZE.equals(column)) {
+                columns[count] = column;
+                values[count++] = file.length();
+            }
+        }
+        String[] resultColumns = new String[count];
+        Object[] resultValues = new Object[count];
+        System.arraycopy(columns, 0, resultColumns, 0, count);
+        System.arraycopy(values, 0, resultValues, 0, count);
+        MatrixCursor cursor = new MatrixCursor(resultColumns, 1);
+        cursor.addRow(resultValues);
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        String name = uri.getLastPathSegment();
+        if (name != null) {
+            for (HistoryExporter.Format format : HistoryExporter.Format.values()) {
+                if (name.endsWith('.' + format.getExtension())) {
+                    return format.getMimeType();
+                }
+            }
+        }
+        return "application/octet-stream";
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new SecurityException("Exports are read-only: " + uri);
+        }
+        File file = getFile(uri);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Exports are read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Exports are read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Exports are read-only");
+    }
+
+    /**
+     * 地址只有一段文件名，不能借助 ".." 等读到导出目录以外的文件。
+     */
+    private File getFile(Uri uri) {
+        String name = uri.getLastPathSegment();
+        if (uri.getPathSegments().size() != 1 || name == null || name.startsWith(".")) {
+            throw new IllegalArgumentException("Unknown export: " + uri);
+        }
+        return new File(getExportDirectory(getContext()), name);
+    }
+}
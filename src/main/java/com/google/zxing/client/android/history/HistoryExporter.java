@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.history;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 在后台线程上把扫描历史导出成 CSV 或 JSON Lines 文件。
+ * <p>
+ * 记录从数据库游标逐行读出，经过缓冲直接写进文件，不会先放进列表，所以导出几十万条记录时内存占用也是固定的。
+ * 先写临时文件，完成后再改名。进度、结果都通过 {@link Callback} 在主线程上交付；{@link #cancel()} 之后导出尽快停止，
+ * 临时文件被删除，不再回调。
+ */
+public final class HistoryExporter {
+    private static final String TAG = HistoryExporter.class.getSimpleName();
+    // 所有导出共用一个线程，依次执行
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // 进度最多这么久报告一次
+    private static final long PROGRESS_INTERVAL_MS = 200L;
+
+    public enum Format {
+        CSV("csv", "text/csv"),
+        /** 每行一个 JSON 对象 */
+        JSON_LINES("jsonl", "application/x-ndjson");
+
+        private final String extension;
+        private final String mimeType;
+
+        Format(String extension, String mimeType) {
+            this.extension = extension;
+            this.mimeType = mimeType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+
+    public interface Callback {
+        void onExportProgress(long exported, long total);
+
+        void onExportFinished(File file, long count);
+
+        void onExportFailed();
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HistoryManager historyManager;
+    private final Callback callback;
+    private Job pending;
+
+    public HistoryExporter(Context context, Callback callback) {
+        historyManager = HistoryManager.getInstance(context);
+        this.callback = callback;
+    }
+
+    /**
+     * 导出 {@code fromMs} 之后（包含）扫描的所有记录，按扫描时间从旧到新排列。只能在主线程上调用。
+     *
+     * @param fromMs 为 0 时导出全部历史
+     */
+    public void export(Format format, long fromMs, File file) {
+        if (pending != null) {
+            // 上一次还没完成，不再重复提交
+            Log.i(TAG, "Export already in progress");
+            return;
+        }
+        Job job = new Job(format, new HistoryManager.Query(null, null, fromMs, 0L), file);
+        job.future = executor.submit(job);
+        pending = job;
+    }
+
+    /**
+     * 取消还没完成的导出，之后不再回调。只能在主线程上调用。
+     */
+    public void cancel() {
+        if (pending != null) {
+            pending.canceled = true;
+            pending.future.cancel(true);
+            pending = null;
+        }
+    }
+
+    private final class Job implements Runnable {
+        private final Format format;
+        private final HistoryManager.Query query;
+        private final File file;
+        private Future<?> future;
+        // 主线程设置，导出线程每写一行检查一次
+        private volatile boolean canceled;
+
+        Job(Format format, HistoryManager.Query query, File file) {
+            this.format = format;
+            this.query = query;
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            long count = -1L;
+            try {
+                count = write();
+            } catch (IOException | SQLiteException e) {
+                Log.w(TAG, "Couldn't export " + file, e);
+            }
+            if (canceled) {
+                return;
+            }
+            if (count >= 0) {
+                Log.i(TAG, "Exported " + count + " items to " + file + " in " +
+                        (System.currentTimeMillis() - start) + " ms");
+            }
+            final long result = count;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (canceled) {
+                        return;
+                    }
+                    pending = null;
+                    if (result >= 0) {
+                        callback.onExportFinished(file, result);
+                    } else {
+                        callback.onExportFailed();
+                    }
+                }
+            });
+        }
+
+        /**
+         * @return 导出的条数，被取消时返回 -1
+         */
+        private long write() throws IOException {
+            // 刚扫描的记录可能还在写入队列里
+            historyManager.flush();
+            File directory = file.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Couldn't make dir " + directory);
+            }
+            SQLiteDatabase db = historyManager.getReadableDatabase();
+            long total = query.count(db);
+            File temp = new File(directory, file.getName() + ".tmp");
+            long count = 0;
+            try (Cursor cursor = query.run(db, 0, true);
+                 Writer out = new BufferedWriter(
+                         new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                RecordWriter records = format == Format.CSV ? new CsvWriter(out) : new JsonLinesWriter(out);
+                records.writeHeader();
+                long lastProgress = System.currentTimeMillis();
+                postProgress(0, total);
+                while (cursor.moveToNext()) {
+                    if (canceled) {
+                        break;
+                    }
+                    records.write(HistoryManager.Query.toItem(cursor));
+                    count++;
+                    long now = System.currentTimeMillis();
+                    if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                        lastProgress = now;
+                        postProgress(count, total);
+                    }
+                }
+            } catch (IOException | SQLiteException e) {
+                deleteQuietly(temp);
+                throw e;
+            }
+            if (canceled) {
+                deleteQuietly(temp);
+                return -1L;
+            }
+            // 同一目录下改名是原子操作，会直接替换同名的旧文件
+            if (!temp.renameTo(file)) {
+                deleteQuietly(temp);
+                throw new IOException("Couldn't rename " + temp);
+            }
+            postProgress(count, count);
+            return count;
+        }
+
+        private void postProgress(final long exported, final long total) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!canceled) {
+                        callback.onExportProgress(exported, total);
+                    }
+                }
+            });
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+
+    /**
+     * 把一条记录写成一行。
+     */
+    abstract static class RecordWriter {
+        final Writer out;
+        private final DateFormat dateFormat;
+        private final Date date = new Date();
+
+        RecordWriter(Writer out) {
+            this.out = out;
+            // ISO 8601，UTC
+            dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+            dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+
+        abstract void writeHeader() throws IOException;
+
+        abstract void write(HistoryItem item) throws IOException;
+
+        final String formatDate(long timestamp) {
+            date.setTime(timestamp);
+            return dateFormat.format(date);
+        }
+    }
+
+    /**
+     * RFC 4180 格式的 CSV。
+     * <p>
+     * 扫到的内容不可信：以 {@code =}、{@code +}、{@code -}、{@code @}（以及制表符、回车）开头的字段在 Excel 等表格软件里
+     * 会被当成公式执行，所以这样的字段前面加上 {@code '} 并加引号，打开后显示的仍是原文。
+     */
+    static final class CsvWriter extends RecordWriter {
+        private static final String FORMULA_PREFIXES = "=+-@\t\r";
+
+        CsvWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        void writeHeader() throws IOException {
+            // 带 BOM，Excel 才会按 UTF-8 打开
+            out.write('\uFEFF');
+            out.write("text,format,display,timestamp,date\r\n");
+        }
+
+        @Override
+        void write(HistoryItem item) throws IOException {
+            writeField(item.getText());
+            out.write(',');
+            writeField(String.valueOf(item.getFormat()));
+            out.write(',');
+            writeField(item.getDisplay());
+            out.write(',');
+            out.write(Long.toString(item.getTimestamp()));
+            out.write(',');
+            out.write(formatDate(item.getTimestamp()));
+            out.write("\r\n");
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean formula = !value.isEmpty() && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0;
+            boolean quote = formula;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+            }
+            if (!quote) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            if (formula) {
+                out.write('\'');
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    out.write('"');
+                }
+                out.write(c);
+            }
+            out.write('"');
+        }
+    }
+
+    static final class JsonLinesWriter extends RecordWriter {
+        JsonLinesWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        void writeHeader() {
+            // 没有表头
+        }
+
+        @Override
+        void write(HistoryItem item) throws IOException {
+            out.write("{\"text\":");
+            out.write(JSONObject.quote(item.getText()));
+            out.write(",\"format\":");
+            out.write(item.getFormat() == null ? "null" : JSONObject.quote(item.getFormat().toString()));
+            out.write(",\"display\":");
+            out.write(item.getDisplay() == null ? "null" : JSONObject.quote(item.getDisplay()));
+            out.write(",\"timestamp\":");
+            out.write(Long.toString(item.getTimestamp()));
+            out.write(",\"date\":\"");
+            out.write(formatDate(item.getTimestamp()));
+            out.write("\"}\n");
+        }
+    }
+}
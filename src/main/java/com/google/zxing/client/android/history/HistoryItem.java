@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.history;
+
+import com.google.zxing.BarcodeFormat;
+
+/**
+ * 一条扫描历史。
+ */
+public final class HistoryItem {
+
+    private final String text;
+    private final BarcodeFormat format;
+    private final String display;
+    private final long timestamp;
+
+    HistoryItem(String text, BarcodeFormat format, String display, long timestamp) {
+        this.text = text;
+        this.format = format;
+        this.display = display;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return 条码的原始内容
+     */
+    public String getText() {
+        return text;
+    }
+
+    public BarcodeFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return 扫描时界面上显示的内容，可能为 {@code null}
+     */
+    public String getDisplay() {
+        return display;
+    }
+
+    /**
+     * @return 扫描时间，{@link System#currentTimeMillis()} 时间
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return format + ": " + text;
+    }
+
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.history;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.client.android.result.ResultHandler;
+import com.google.zxing.client.android.result.ResultSettings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 管理扫描历史。
+ * <p>
+ * {@link #addHistoryItem(Result, ResultHandler)} 只把记录放进内存中的队列就返回，不在调用线程上访问磁盘。
+ * 写线程每隔一小段时间或攒够一批后，在一个事务里写入整批记录，批量扫描时每秒的事务数是固定的。
+ * 写入失败时整批放回队列的开头，下次写入时按原来的顺序重试。记录总数超过上限时删除最旧的，并归还数据库文件中空出的页。
+ * <p>
+ * 查询在调用线程上进行，不要在主线程上调用。
+ */
+public final class HistoryManager {
+
+    private static final String TAG = HistoryManager.class.getSimpleName();
+
+    private static final int MAX_ITEMS = 5000;
+    // 新记录最多在内存中停留这么久
+    private static final long FLUSH_DELAY_MS = 500L;
+    // 攒够这么多条时立即写入
+    private static final int BATCH_SIZE = 64;
+    // 每写入这么多条检查一次总数
+    private static final int TRIM_INTERVAL = 256;
+
+    private static HistoryManager instance;
+
+    private final DBHelper helper;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+    private final List<PendingItem> pending = new ArrayList<>();
+    private boolean flushScheduled;
+    // 每次清空历史时加一，写入失败的一批只在这之间没有清空过时才放回队列
+    private int clearCount;
+    // 只在写线程上访问；初始值使启动后第一次写入时就检查一次总数
+    private int writesSinceTrim = TRIM_INTERVAL;
+
+    private HistoryManager(Context context) {
+        helper = new DBHelper(context);
+    }
+
+    public static synchronized HistoryManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new HistoryManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * 记录一次扫描。设置中关闭了历史或内容不宜保存时直接忽略。可以在主线程上调用。
+     */
+    public void addHistoryItem(Result result, ResultHandler handler) {
+        ResultSettings settings = handler.getSettings();
+        if (!settings.isHistoryEnabled() || handler.areContentsSecure()) {
+            return;
+        }
+        boolean rememberDuplicates = settings.isRememberDuplicates();
+        CharSequence display = handler.getDisplayContents();
+        HistoryItem item = new HistoryItem(result.getText(),
+                result.getBarcodeFormat(),
+                display == null ? null : display.toString(),
+                result.getTimestamp());
+        synchronized (pending) {
+            pending.add(new PendingItem(item, rememberDuplicates));
+            if (pending.size() >= BATCH_SIZE) {
+                writer.execute(flushTask);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                writer.schedule(flushTask, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 尽快写入队列中的记录，不等待完成。通常在界面暂停时调用，进程随后被结束也不会丢失记录。
+     */
+    public void requestFlush() {
+        writer.execute(flushTask);
+    }
+
+    /**
+     * 写入队列中的记录并等待完成。不要在主线程上调用。
+     */
+    public void flush() {
+        try {
+            writer.submit(flushTask).get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            Log.w(TAG, "Couldn't flush history", ee.getCause());
+        }
+    }
+
+    /**
+     * 按条件查询历史，结果按时间从新到旧排列。查询前会先写入队列中的记录。不要在主线程上调用。
+     *
+     * @param textPrefix 内容的前缀，为 {@code null} 时不限
+     * @param format     条码格式，为 {@code null} 时不限
+     * @param fromMs     最早的扫描时间（包含），为 0 时不限
+     * @param toMs       最晚的扫描时间（不包含），为 0 时不限
+     * @param limit      最多返回的条数，为 0 时不限
+     */
+    public List<HistoryItem> query(String textPrefix, BarcodeFormat format, long fromMs, long toMs, int limit) {
+        flush();
+        Query query = new Query(textPrefix, format, fromMs, toMs);
+        try (Cursor cursor = query.run(helper.getReadableDatabase(), limit, false)) {
+            List<HistoryItem> items = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                items.add(Query.toItem(cursor));
+            }
+            return items;
+        } catch (SQLiteException sqle) {
+            Log.w(TAG, "Couldn't query history", sqle);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 供导出等需要逐行读取的场合使用，不要在主线程上调用。
+     */
+    SQLiteDatabase getReadableDatabase() {
+        return helper.getReadableDatabase();
+    }
+
+    /**
+     * 删除所有历史，包括还没写入的记录。
+     */
+    public void clearHistory() {
+        synchronized (pending) {
+            pending.clear();
+            clearCount++;
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SQLiteDatabase db = helper.getWritableDatabase();
+                    db.delete(DBHelper.TABLE_NAME, null, null);
+                    vacuum(db);
+                } catch (SQLiteException sqle) {
+                    Log.w(TAG, "Couldn't clear history", sqle);
+                }
+            }
+        });
+    }
+
+    private void writePending() {
+        List<PendingItem> batch;
+        int batchClearCount;
+        synchronized (pending) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            batchClearCount = clearCount;
+        }
+        long start = System.currentTimeMillis();
+        SQLiteDatabase db;
+        SQLiteStatement insert = null;
+        SQLiteStatement deletePrevious = null;
+        try {
+            db = helper.getWritableDatabase();
+            insert = db.compileStatement("INSERT INTO " + DBHelper.TABLE_NAME + " (" +
+                    DBHelper.TEXT_COL + ", " + DBHelper.FORMAT_COL + ", " + DBHelper.DISPLAY_COL + ", " +
+                    DBHelper.TIMESTAMP_COL + ") VALUES (?, ?, ?, ?)");
+            deletePrevious = db.compileStatement("DELETE FROM " + DBHelper.TABLE_NAME +
+                    " WHERE " + DBHelper.TEXT_COL + " = ?");
+            db.beginTransaction();
+            try {
+                for (PendingItem pendingItem : batch) {
+                    HistoryItem item = pendingItem.item;
+                    if (!pendingItem.rememberDuplicates) {
+                        // 同一内容只保留最新的一条，按内容的索引删除
+                        deletePrevious.bindString(1, item.getText());
+                        deletePrevious.executeUpdateDelete();
+                    }
+                    insert.bindString(1, item.getText());
+                    insert.bindString(2, item.getFormat().toString());
+                    if (item.getDisplay() == null) {
+                        insert.bindNull(3);
+                    } else {
+                        insert.bindString(3, item.getDisplay());
+                    }
+                    insert.bindLong(4, item.getTimestamp());
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                // 事务在这里提交，磁盘已满、读写错误等也从这里抛出
+                db.endTransaction();
+            }
+        } catch (SQLiteException sqle) {
+            // 打开、编译、开始事务、写入和提交任何一步失败，整批都没有写入
+            Log.w(TAG, "Couldn't write " + batch.size() + " history items", sqle);
+            requeue(batch, batchClearCount);
+            return;
+        } finally {
+            if (insert != null) {
+                insert.close();
+            }
+            if (deletePrevious != null) {
+                deletePrevious.close();
+            }
+        }
+        Log.i(TAG, "Wrote " + batch.size() + " history items in " + (System.currentTimeMillis() - start) + " ms");
+        writesSinceTrim += batch.size();
+        if (writesSinceTrim >= TRIM_INTERVAL) {
+            writesSinceTrim = 0;
+            trim(db);
+        }
+    }
+
+    /**
+     * 把写入失败的一批放回队列的开头，排在之后加入的记录前面。队列超过 {@value #MAX_ITEMS} 条时丢弃最旧的，
+     * 数据库一直不可用时也不会无限增长。
+     */
+    private void requeue(List<PendingItem> batch, int batchClearCount) {
+        synchronized (pending) {
+            if (batchClearCount != clearCount) {
+                // 写入期间历史已被清空
+                return;
+            }
+            pending.addAll(0, batch);
+            int excess = pending.size() - MAX_ITEMS;
+            if (excess > 0) {
+                Log.w(TAG, "Dropping " + excess + " unwritten history items");
+                pending.subList(0, excess).clear();
+            }
+        }
+    }
+
+    private static void trim(SQLiteDatabase db) {
+        try {
+            int deleted = db.delete(DBHelper.TABLE_NAME, DBHelper.ID_COL + " IN (SELECT " + DBHelper.ID_COL +
+                    " FROM " + DBHelper.TABLE_NAME + " ORDER BY " + DBHelper.TIMESTAMP_COL + " DESC LIMIT -1 OFFSET " +
+                    MAX_ITEMS + ')', null);
+            if (deleted > 0) {
+                Log.i(TAG, "Trimmed " + deleted + " history items");
+                vacuum(db);
+            }
+        } catch (SQLiteException sqle) {
+            Log.w(TAG, "Couldn't trim history", sqle);
+        }
+    }
+
+    /**
+     * 把删除记录后空出的页还给文件系统。
+     */
+    private static void vacuum(SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null)) {
+            // 要执行到结束才会释放所有的空页
+            while (cursor.moveToNext()) {
+                // 没有需要读取的结果
+            }
+        }
+    }
+
+    /**
+     * 查询条件，按条件组合使用对应的索引。
+     */
+    static final class Query {
+        private final StringBuilder selection = new StringBuilder();
+        private final List<String> args = new ArrayList<>();
+
+        Query(String textPrefix, BarcodeFormat format, long fromMs, long toMs) {
+            if (textPrefix != null && !textPrefix.isEmpty()) {
+                // 用范围而不是 LIKE，这样可以使用内容的索引
+                and(DBHelper.TEXT_COL + " >= ?", textPrefix);
+                String upper = upperBound(textPrefix);
+                if (upper != null) {
+                    and(DBHelper.TEXT_COL + " < ?", upper);
+                }
+            }
+            if (format != null) {
+                and(DBHelper.FORMAT_COL + " = ?", format.toString());
+            }
+            if (fromMs > 0) {
+                and(DBHelper.TIMESTAMP_COL + " >= ?", Long.toString(fromMs));
+            }
+            if (toMs > 0) {
+                and(DBHelper.TIMESTAMP_COL + " < ?", Long.toString(toMs));
+            }
+        }
+
+        /**
+         * @param oldestFirst 按时间从旧到新排列，否则从新到旧
+         */
+        Cursor run(SQLiteDatabase db, int limit, boolean oldestFirst) {
+            return db.query(DBHelper.TABLE_NAME,
+                    new String[]{DBHelper.TEXT_COL, DBHelper.FORMAT_COL, DBHelper.DISPLAY_COL, DBHelper.TIMESTAMP_COL},
+                    getSelection(),
+                    getArgs(),
+                    null, null,
+                    DBHelper.TIMESTAMP_COL + (oldestFirst ? " ASC" : " DESC"),
+                    limit > 0 ? Integer.toString(limit) : null);
+        }
+
+        long count(SQLiteDatabase db) {
+            return DatabaseUtils.queryNumEntries(db, DBHelper.TABLE_NAME, getSelection(), getArgs());
+        }
+
+        /**
+         * 读取 {@link #run(SQLiteDatabase, int, boolean)} 返回的当前行。
+         */
+        static HistoryItem toItem(Cursor cursor) {
+            BarcodeFormat format;
+            try {
+                format = BarcodeFormat.valueOf(cursor.getString(1));
+            } catch (IllegalArgumentException iae) {
+                format = null;
+            }
+            return new HistoryItem(cursor.getString(0), format, cursor.getString(2), cursor.getLong(3));
+        }
+
+        private String getSelection() {
+            return selection.length() == 0 ? null : selection.toString();
+        }
+
+        private String[] getArgs() {
+            return args.toArray(new String[args.size()]);
+        }
+
+        private void and(String clause, String arg) {
+            if (selection.length() > 0) {
+                selection.append(" AND ");
+            }
+            selection.append(clause);
+            args.add(arg);
+        }
+
+        /**
+         * @return 所有以 {@code prefix} 开头的字符串都小于的最小字符串：把最后一个字符加一。
+         * SQLite 按 UTF-8 字节比较，与按码位比较的顺序相同。最后一个字符已经是最大码位时返回 {@code null}
+         */
+        private static String upperBound(String prefix) {
+            int last = prefix.codePointBefore(prefix.length());
+            if (last == Character.MAX_CODE_POINT) {
+                return null;
+            }
+            int next = last + 1;
+            if (next >= Character.MIN_SURROGATE && next <= Character.MAX_SURROGATE) {
+                next = Character.MAX_SURROGATE + 1;
+            }
+            return prefix.substring(0, prefix.length() - Character.charCount(last)) + new String(Character.toChars(next));
+        }
+    }
+
+    private static final class PendingItem {
+        final HistoryItem item;
+        final boolean rememberDuplicates;
+
+        PendingItem(HistoryItem item, boolean rememberDuplicates) {
+            this.item = item;
+            this.rememberDuplicates = rememberDuplicates;
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * 给响应体加上字节上限和整体时限：读到上限后当作流已结束，超过时限后抛出 {@link SocketTimeoutException}。
+ * 单次读取的等待仍由连接的读取超时限制。关闭时把读到的字节数记入 {@link HttpMetrics}。
+ * <p>
+ * 只限制字节数时（例如限制解压后的大小）用 {@link #BoundedInputStream(InputStream, long)}，不记录统计。
+ */
+public final class BoundedInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private final long deadline;
+    private final HttpMetrics metrics;
+    private long count;
+    private boolean truncated;
+    private boolean timedOut;
+    private boolean closed;
+
+    /**
+     * @param deadline {@link System#currentTimeMillis()} 时间
+     */
+    public BoundedInputStream(InputStream in, long maxBytes, long deadline, HttpMetrics metrics) {
+        super(in);
+        this.maxBytes = maxBytes;
+        this.deadline = deadline;
+        this.metrics = metrics;
+    }
+
+    public BoundedInputStream(InputStream in, long maxBytes) {
+        this(in, maxBytes, Long.MAX_VALUE, null);
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int read = read(one, 0, 1);
+        return read < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (System.currentTimeMillis() > deadline) {
+            timedOut = true;
+            throw new SocketTimeoutException("Deadline exceeded after " + count + " bytes");
+        }
+        if (count >= maxBytes) {
+            truncated = true;
+            return -1;
+        }
+        int read = super.read(buffer, offset, (int) Math.min(length, maxBytes - count));
+        if (read > 0) {
+            count += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // 通过 read 跳过，同样受上限和时限约束
+        byte[] buffer = new byte[(int) Math.min(n, 4096)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (metrics != null) {
+                metrics.recordBody(count, truncated, timedOut);
+            }
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.http;
+
+import java.util.Locale;
+
+/**
+ * HTTP 请求的统计：请求数、失败和超时次数、读到的字节数，以及从发出请求到收到响应头的延迟。
+ */
+public final class HttpMetrics {
+
+    private int requests;
+    private int failures;
+    private int timeouts;
+    private int truncated;
+    private long bytesRead;
+    private long totalLatencyMs;
+    private long maxLatencyMs;
+
+    synchronized void recordResponse(long latencyMs) {
+        requests++;
+        totalLatencyMs += latencyMs;
+        maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+    }
+
+    synchronized void recordFailure(boolean timeout) {
+        requests++;
+        failures++;
+        if (timeout) {
+            timeouts++;
+        }
+    }
+
+    synchronized void recordBody(long bytes, boolean wasTruncated, boolean timeout) {
+        bytesRead += bytes;
+        if (wasTruncated) {
+            truncated++;
+        }
+        if (timeout) {
+            timeouts++;
+        }
+    }
+
+    public synchronized int getRequestCount() {
+        return requests;
+    }
+
+    public synchronized int getFailureCount() {
+        return failures;
+    }
+
+    /**
+     * @return 连接、读取超时或超过整体时限的次数
+     */
+    public synchronized int getTimeoutCount() {
+        return timeouts;
+    }
+
+    /**
+     * @return 因超出字节上限而被截断的响应数
+     */
+    public synchronized int getTruncatedCount() {
+        return truncated;
+    }
+
+    public synchronized long getBytesRead() {
+        return bytesRead;
+    }
+
+    public synchronized long getAverageLatencyMs() {
+        int responses = requests - failures;
+        return responses == 0 ? 0 : totalLatencyMs / responses;
+    }
+
+    public synchronized long getMaxLatencyMs() {
+        return maxLatencyMs;
+    }
+
+    public synchronized void reset() {
+        requests = 0;
+        failures = 0;
+        timeouts = 0;
+        truncated = 0;
+        bytesRead = 0;
+        totalLatencyMs = 0;
+        maxLatencyMs = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%d requests, %d failed (%d timed out), %d truncated, %d bytes, " +
+                        "latency avg %d ms max %d ms",
+                requests, failures, timeouts, truncated, bytesRead, getAverageLatencyMs(), maxLatencyMs);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.http;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一次 HTTP 请求：方法、地址、请求头和超时。
+ */
+public final class HttpRequest {
+
+    private final String method;
+    private final URL url;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    /**
+     * @param readTimeoutMs 每次读取最长等待多久，不是整个请求的时限
+     */
+    public HttpRequest(String method, URL url, int connectTimeoutMs, int readTimeoutMs) {
+        this.method = method;
+        this.url = url;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    public HttpRequest setHeader(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    @Override
+    public String toString() {
+        return method + ' ' + url;
+    }
+}
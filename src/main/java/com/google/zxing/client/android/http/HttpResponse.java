@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link HttpTransport} 返回的响应。关闭后连接可以被复用。
+ */
+public interface HttpResponse extends Closeable {
+
+    int getCode();
+
+    /**
+     * @return 响应头的值，没有时为 {@code null}
+     */
+    String getHeader(String name);
+
+    /**
+     * @return 原始的响应体，没有经过解压
+     */
+    InputStream getBody() throws IOException;
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.http;
+
+import java.io.IOException;
+
+/**
+ * 实际发出 HTTP 请求的一层。默认是 {@link UrlConnectionTransport}，测试时可以换成指向本地桩服务器或直接返回固定内容的实现。
+ */
+public interface HttpTransport {
+
+    /**
+     * 发出请求并读完响应头。不跟随重定向，调用方负责关闭返回的响应。
+     *
+     * @throws java.net.SocketTimeoutException 连接或读取超时
+     */
+    HttpResponse execute(HttpRequest request) throws IOException;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.http;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * 包装另一个 {@link HttpTransport}，把每个请求的延迟、失败和超时记入 {@link HttpMetrics}。
+ */
+public final class MeteredTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+    private final HttpMetrics metrics;
+
+    public MeteredTransport(HttpTransport delegate, HttpMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        long start = System.currentTimeMillis();
+        HttpResponse response;
+        try {
+            response = delegate.execute(request);
+        } catch (SocketTimeoutException ste) {
+            metrics.recordFailure(true);
+            throw ste;
+        } catch (IOException ioe) {
+            metrics.recordFailure(false);
+            throw ioe;
+        }
+        metrics.recordResponse(System.currentTimeMillis() - start);
+        return response;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.Map;
+
+/**
+ * 基于 {@link HttpURLConnection} 的实现。响应关闭时只关闭输入流而不调用 {@link HttpURLConnection#disconnect()}，
+ * 读完的连接会回到系统的连接池，对同一主机的下一个请求（比如短链接的下一跳）可以直接复用，省掉 TCP 和 TLS 握手。
+ */
+public final class UrlConnectionTransport implements HttpTransport {
+
+    // 没读的响应体（比如重定向的说明页）不超过这么大时读完丢弃，连接还能复用；更大时直接断开
+    private static final int MAX_DRAIN_BYTES = 4 * 1024;
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        HttpURLConnection connection = safelyOpenConnection(request);
+        connection.setInstanceFollowRedirects(false);
+        connection.setConnectTimeout(request.getConnectTimeoutMs());
+        connection.setReadTimeout(request.getReadTimeoutMs());
+        connection.setRequestMethod(request.getMethod());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        int code = safelyConnect(connection);
+        return new Response(connection, code);
+    }
+
+    private static HttpURLConnection safelyOpenConnection(HttpRequest request) throws IOException {
+        URLConnection conn;
+        try {
+            conn = request.getUrl().openConnection();
+        } catch (NullPointerException npe) {
+            // Another strange bug in Android?
+            throw new IOException(npe);
+        }
+        if (!(conn instanceof HttpURLConnection)) {
+            throw new IOException("Expected HttpURLConnection but got " + conn.getClass());
+        }
+        return (HttpURLConnection) conn;
+    }
+
+    private static int safelyConnect(HttpURLConnection connection) throws IOException {
+        try {
+            connection.connect();
+        } catch (RuntimeException e) {
+            // These are, generally, Android bugs
+            throw new IOException(e);
+        }
+        try {
+            return connection.getResponseCode();
+        } catch (NullPointerException | StringIndexOutOfBoundsException | IllegalArgumentException e) {
+            // this is maybe this Android bug: http://code.google.com/p/android/issues/detail?id=15554
+            throw new IOException(e);
+        }
+    }
+
+    private static final class Response implements HttpResponse {
+        private final HttpURLConnection connection;
+        private final int code;
+        private InputStream body;
+
+        Response(HttpURLConnection connection, int code) {
+            this.connection = connection;
+            this.code = code;
+        }
+
+        @Override
+        public int getCode() {
+            return code;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body != null) {
+                body.close();
+            } else if ("HEAD".equals(connection.getRequestMethod())) {
+                // 没有响应体，连接已经可以复用
+                return;
+            } else if (!drain()) {
+                connection.disconnect();
+            }
+        }
+
+        /**
+         * 读完并关闭没有读过的响应体。
+         *
+         * @return 是否读完；响应体太大或者读取出错时返回 {@code false}，此时流不关闭，由调用方断开连接，
+         * 关闭流会让底层实现尝试在后台读完剩下的部分
+         */
+        private boolean drain() {
+            InputStream in;
+            try {
+                in = getBody();
+            } catch (IOException ioe) {
+                return false;
+            }
+            if (in == null) {
+                // 错误响应没有响应体
+                return true;
+            }
+            try {
+                byte[] buffer = new byte[1024];
+                int total = 0;
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    total += read;
+                    if (total > MAX_DRAIN_BYTES) {
+                        return false;
+                    }
+                }
+                in.close();
+                return true;
+            } catch (IOException ioe) {
+                return false;
+            }
+        }
+    }
+}
@@ -20,7 +20,6 @@ import android.app.Activity;
 
 import com.google.zxing.client.android.R;
 import com.google.zxing.client.result.EmailAddressParsedResult;
-import com.google.zxing.client.result.ParsedResult;
 
 /**
  * Handles email addresses.
@@ -33,7 +32,7 @@ public final class EmailAddressResultHandler extends ResultHandler {
             R.string.button_add_contact
     };
 
-    public EmailAddressResultHandler(Activity activity, ParsedResult result) {
+    public EmailAddressResultHandler(Activity activity, PreparedResult result) {
         super(activity, result);
     }
 
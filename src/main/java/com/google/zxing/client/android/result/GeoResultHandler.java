@@ -20,7 +20,6 @@ import android.app.Activity;
 
 import com.google.zxing.client.android.R;
 import com.google.zxing.client.result.GeoParsedResult;
-import com.google.zxing.client.result.ParsedResult;
 
 /**
  * Handles geographic coordinates (typically encoded as geo: URLs).
@@ -33,7 +32,7 @@ public final class GeoResultHandler extends ResultHandler {
             R.string.button_get_directions
     };
 
-    public GeoResultHandler(Activity activity, ParsedResult result) {
+    public GeoResultHandler(Activity activity, PreparedResult result) {
         super(activity, result);
     }
 
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.result;
+
+import com.google.zxing.Result;
+import com.google.zxing.client.android.PipelineTrace;
+import com.google.zxing.client.result.ParsedResult;
+import com.google.zxing.client.result.ResultParser;
+
+/**
+ * 已经在解码线程上解析好的扫描结果：{@link ResultParser} 的解析结果、要显示的文字，以及处理结果时用到的设置。
+ * <p>
+ * 解析会依次尝试所有格式的正则表达式，名片等较长的内容可能要花不少时间；放在解码线程上完成后，
+ * 主线程收到结果时只需要创建 {@link ResultHandler} 并填充界面。不可变，可以在线程之间传递。
+ */
+public final class PreparedResult {
+
+    private final Result rawResult;
+    private final ParsedResult parsedResult;
+    private final String displayContents;
+    private final ResultSettings settings;
+
+    private PreparedResult(Result rawResult, ParsedResult parsedResult, String displayContents,
+                           ResultSettings settings) {
+        this.rawResult = rawResult;
+        this.parsedResult = parsedResult;
+        this.displayContents = displayContents;
+        this.settings = settings;
+    }
+
+    /**
+     * 解析结果并生成要显示的文字。通常在解码线程上调用。
+     */
+    public static PreparedResult prepare(Result rawResult, ResultSettings settings) {
+        PipelineTrace.begin(PipelineTrace.RESULT_PARSE);
+        try {
+            ParsedResult parsedResult = ResultParser.parseResult(rawResult);
+            String displayContents = ResultHandlerFactory.formatDisplayContents(parsedResult).toString();
+            return new PreparedResult(rawResult, parsedResult, displayContents, settings);
+        } finally {
+            PipelineTrace.end();
+        }
+    }
+
+    public Result getRawResult() {
+        return rawResult;
+    }
+
+    public ParsedResult getParsedResult() {
+        return parsedResult;
+    }
+
+    /**
+     * @return 与 {@link ResultHandler#getDisplayContents()} 相同
+     */
+    public String getDisplayContents() {
+        return displayContents;
+    }
+
+    public ResultSettings getSettings() {
+        return settings;
+    }
+
+}
@@ -18,7 +18,6 @@ package com.google.zxing.client.android.result;
 
 import android.app.Activity;
 
-import com.google.zxing.Result;
 import com.google.zxing.client.android.R;
 import com.google.zxing.client.result.ExpandedProductParsedResult;
 import com.google.zxing.client.result.ParsedResult;
@@ -36,8 +35,8 @@ public final class ProductResultHandler extends ResultHandler {
             R.string.button_custom_product_search
     };
 
-    public ProductResultHandler(Activity activity, ParsedResult result, Result rawResult) {
-        super(activity, result, rawResult);
+    public ProductResultHandler(Activity activity, PreparedResult result) {
+        super(activity, result);
     }
 
     @Override
@@ -21,9 +21,7 @@ import android.app.AlertDialog;
 import android.content.ActivityNotFoundException;
 import android.content.ContentValues;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.net.Uri;
-import android.preference.PreferenceManager;
 import android.provider.ContactsContract;
 import android.telephony.PhoneNumberUtils;
 import android.util.Log;
@@ -32,7 +30,6 @@ import com.google.zxing.Result;
 import com.google.zxing.client.android.Contents;
 import com.google.zxing.client.android.Intents;
 import com.google.zxing.client.android.LocaleManager;
-import com.google.zxing.client.android.PreferencesActivity;
 import com.google.zxing.client.android.R;
 import com.google.zxing.client.result.ParsedResult;
 import com.google.zxing.client.result.ParsedResultType;
@@ -83,26 +80,19 @@ public abstract class ResultHandler {
     private final Activity activity;
     private final Result rawResult;
     private final String customProductSearch;
+    private final String displayContents;
+    private final ResultSettings settings;
 
-    ResultHandler(Activity activity, ParsedResult result) {
-        this(activity, result, null);
-    }
-
-    ResultHandler(Activity activity, ParsedResult result, Result rawResult) {
-        this.result = result;
+    /**
+     * 结果已经在解码线程上解析好，设置也已经读取，这里不做耗时的工作。
+     */
+    ResultHandler(Activity activity, PreparedResult prepared) {
+        this.result = prepared.getParsedResult();
         this.activity = activity;
-        this.rawResult = rawResult;
-        this.customProductSearch = parseCustomSearchURL();
-    }
-
-    private String parseCustomSearchURL() {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(activity);
-        String customProductSearch = prefs.getString(PreferencesActivity.KEY_CUSTOM_PRODUCT_SEARCH,
-                null);
-        if (customProductSearch != null && customProductSearch.trim().isEmpty()) {
-            return null;
-        }
-        return customProductSearch;
+        this.rawResult = prepared.getRawResult();
+        this.displayContents = prepared.getDisplayContents();
+        this.settings = prepared.getSettings();
+        this.customProductSearch = settings.getCustomProductSearch();
     }
 
     static String formatPhone(String phoneData) {
@@ -114,6 +104,13 @@ public abstract class ResultHandler {
         return result;
     }
 
+    /**
+     * @return 产生这个结果时的设置
+     */
+    public final ResultSettings getSettings() {
+        return settings;
+    }
+
     final boolean hasCustomProductSearch() {
         return customProductSearch != null;
     }
@@ -164,6 +161,10 @@ public abstract class ResultHandler {
      * @return The text to be displayed.
      */
     public CharSequence getDisplayContents() {
+        return displayContents;
+    }
+
+    static CharSequence formatDisplayContents(ParsedResult result) {
         String contents = result.getDisplayResult();
         return contents.replace("\r", "");
     }
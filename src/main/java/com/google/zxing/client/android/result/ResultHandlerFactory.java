@@ -19,7 +19,6 @@ package com.google.zxing.client.android.result;
 import com.google.zxing.Result;
 import com.google.zxing.client.android.scan.CaptureActivity;
 import com.google.zxing.client.result.ParsedResult;
-import com.google.zxing.client.result.ResultParser;
 
 /**
  * Manufactures Android-specific handlers based on the barcode content's type.
@@ -30,13 +29,23 @@ public final class ResultHandlerFactory {
     private ResultHandlerFactory() {
     }
 
+    /**
+     * 在调用线程上解析结果并读取设置。解码线程交付的结果已经解析好，应使用
+     * {@link #makeResultHandler(CaptureActivity, PreparedResult)}。
+     */
     public static ResultHandler makeResultHandler(CaptureActivity activity, Result rawResult) {
-        ParsedResult result = parseResult(rawResult);
-        switch (result.getType()) {
+        return makeResultHandler(activity, PreparedResult.prepare(rawResult, ResultSettings.load(activity)));
+    }
+
+    /**
+     * 只创建对应的 {@link ResultHandler}，不再解析，可以直接在主线程上调用。
+     */
+    public static ResultHandler makeResultHandler(CaptureActivity activity, PreparedResult result) {
+        switch (result.getParsedResult().getType()) {
             case EMAIL_ADDRESS:
                 return new EmailAddressResultHandler(activity, result);
             case PRODUCT:
-                return new ProductResultHandler(activity, result, rawResult);
+                return new ProductResultHandler(activity, result);
             case URI:
                 return new URIResultHandler(activity, result);
             case GEO:
@@ -46,11 +55,21 @@ public final class ResultHandlerFactory {
             case SMS:
                 return new SMSResultHandler(activity, result);
             default:
-                return new TextResultHandler(activity, result, rawResult);
+                return new TextResultHandler(activity, result);
         }
     }
 
-    private static ParsedResult parseResult(Result rawResult) {
-        return ResultParser.parseResult(rawResult);
+    /**
+     * @return 与对应的 {@link ResultHandler#getDisplayContents()} 相同的文字
+     */
+    static CharSequence formatDisplayContents(ParsedResult result) {
+        switch (result.getType()) {
+            case TEL:
+                return TelResultHandler.formatDisplayContents(result);
+            case SMS:
+                return SMSResultHandler.formatDisplayContents(result);
+            default:
+                return ResultHandler.formatDisplayContents(result);
+        }
     }
 }
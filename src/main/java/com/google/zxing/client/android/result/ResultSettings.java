@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.result;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.google.zxing.client.android.PreferencesActivity;
+
+/**
+ * 处理扫描结果时用到的设置的快照。设置在扫描过程中不会改变（修改设置时扫描界面已经暂停），
+ * 所以每次开始扫描时读取一次交给解码线程，之后每个结果都带着同一份快照，主线程显示结果时不再读取设置。
+ * <p>
+ * 不可变，可以在线程之间共享。
+ */
+public final class ResultSettings {
+
+    private final String customProductSearch;
+    private final boolean autoOpenWeb;
+    private final boolean bulkMode;
+    private final boolean supplemental;
+    private final boolean historyEnabled;
+    private final boolean rememberDuplicates;
+
+    private ResultSettings(SharedPreferences prefs) {
+        String search = prefs.getString(PreferencesActivity.KEY_CUSTOM_PRODUCT_SEARCH, null);
+        customProductSearch = search == null || search.trim().isEmpty() ? null : search;
+        autoOpenWeb = prefs.getBoolean(PreferencesActivity.KEY_AUTO_OPEN_WEB, false);
+        bulkMode = prefs.getBoolean(PreferencesActivity.KEY_BULK_MODE, false);
+        supplemental = prefs.getBoolean(PreferencesActivity.KEY_SUPPLEMENTAL, true);
+        historyEnabled = prefs.getBoolean(PreferencesActivity.KEY_ENABLE_HISTORY, true);
+        rememberDuplicates = prefs.getBoolean(PreferencesActivity.KEY_REMEMBER_DUPLICATES, false);
+    }
+
+    public static ResultSettings load(Context context) {
+        return new ResultSettings(PreferenceManager.getDefaultSharedPreferences(context));
+    }
+
+    /**
+     * @return 自定义的商品搜索地址，没有设置时为 {@code null}
+     */
+    public String getCustomProductSearch() {
+        return customProductSearch;
+    }
+
+    public boolean isAutoOpenWeb() {
+        return autoOpenWeb;
+    }
+
+    public boolean isBulkMode() {
+        return bulkMode;
+    }
+
+    public boolean isSupplementalEnabled() {
+        return supplemental;
+    }
+
+    public boolean isHistoryEnabled() {
+        return historyEnabled;
+    }
+
+    public boolean isRememberDuplicates() {
+        return rememberDuplicates;
+    }
+
+}
@@ -33,7 +33,7 @@ public final class SMSResultHandler extends ResultHandler {
             R.string.button_mms
     };
 
-    public SMSResultHandler(Activity activity, ParsedResult result) {
+    public SMSResultHandler(Activity activity, PreparedResult result) {
         super(activity, result);
     }
 
@@ -62,9 +62,8 @@ public final class SMSResultHandler extends ResultHandler {
         }
     }
 
-    @Override
-    public CharSequence getDisplayContents() {
-        SMSParsedResult smsResult = (SMSParsedResult) getResult();
+    static CharSequence formatDisplayContents(ParsedResult result) {
+        SMSParsedResult smsResult = (SMSParsedResult) result;
         String[] rawNumbers = smsResult.getNumbers();
         String[] formattedNumbers = new String[rawNumbers.length];
         for (int i = 0; i < rawNumbers.length; i++) {
@@ -33,7 +33,7 @@ public final class TelResultHandler extends ResultHandler {
             R.string.button_add_contact
     };
 
-    public TelResultHandler(Activity activity, ParsedResult result) {
+    public TelResultHandler(Activity activity, PreparedResult result) {
         super(activity, result);
     }
 
@@ -66,10 +66,9 @@ public final class TelResultHandler extends ResultHandler {
         }
     }
 
-    // Overriden so we can take advantage of Android's phone number hyphenation routines.
-    @Override
-    public CharSequence getDisplayContents() {
-        String contents = getResult().getDisplayResult();
+    // Uses Android's phone number hyphenation routines. Called on the decode thread.
+    static CharSequence formatDisplayContents(ParsedResult result) {
+        String contents = result.getDisplayResult();
         contents = contents.replace("\r", "");
         return formatPhone(contents);
     }
@@ -18,9 +18,7 @@ package com.google.zxing.client.android.result;
 
 import android.app.Activity;
 
-import com.google.zxing.Result;
 import com.google.zxing.client.android.R;
-import com.google.zxing.client.result.ParsedResult;
 
 /**
  * This class handles TextParsedResult as well as unknown formats. It's the fallback handler.
@@ -36,8 +34,8 @@ public final class TextResultHandler extends ResultHandler {
             R.string.button_custom_product_search,
     };
 
-    public TextResultHandler(Activity activity, ParsedResult result, Result rawResult) {
-        super(activity, result, rawResult);
+    public TextResultHandler(Activity activity, PreparedResult result) {
+        super(activity, result);
     }
 
     @Override
@@ -20,7 +20,6 @@ import android.app.Activity;
 
 import com.google.zxing.client.android.LocaleManager;
 import com.google.zxing.client.android.R;
-import com.google.zxing.client.result.ParsedResult;
 import com.google.zxing.client.result.URIParsedResult;
 
 import java.util.Locale;
@@ -43,7 +42,7 @@ public final class URIResultHandler extends ResultHandler {
             R.string.button_share_by_sms,
     };
 
-    public URIResultHandler(Activity activity, ParsedResult result) {
+    public URIResultHandler(Activity activity, PreparedResult result) {
         super(activity, result);
     }
 
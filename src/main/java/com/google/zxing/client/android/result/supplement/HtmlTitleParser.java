@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.result.supplement;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * 从 HTML 流中读出 {@code <title>} 的原始文本：用一个固定的小缓冲区逐字节扫描标签，读到 {@code </title>}，
+ * 或者遇到 {@code </head>}、{@code <body>}、{@code <svg>} 就停止，不再下载网页的其余部分。
+ * <p>
+ * 扫描在字节上进行，所以可以在知道编码之前开始：常见的网页编码（UTF-8、GBK、Big5、Shift_JIS、ISO-8859 系列等）
+ * 中 {@code <} 和 {@code >} 都不会出现在多字节字符里。标题最后按 BOM、响应头、{@code <meta>} 或 XML 声明中的编码解码，
+ * 都没有时使用 UTF-8。注释以及 {@code <script>}、{@code <style>} 的内容会被跳过。
+ * <p>
+ * 返回的文本还没有解析字符实体，也没有合并空白。
+ */
+final class HtmlTitleParser {
+
+    private static final int BUFFER_SIZE = 512;
+    // 标题最多保留的字节数，足够显示用的长度
+    private static final int MAX_TITLE_BYTES = 1024;
+    private static final int MAX_NAME_LEN = 16;
+    private static final int MAX_VALUE_LEN = 128;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    // 退回的字节，后退回的先读出
+    private final int[] pushedBack = new int[2];
+    private int pushedBackCount;
+    private final String declaredCharset;
+    private String httpEquivCharset;
+    private String charset;
+    private boolean bom;
+
+    // 当前标签的属性，只在解析 meta 和 XML 声明时使用
+    private String attrCharset;
+    private String attrHttpEquiv;
+    private String attrContent;
+    private String attrEncoding;
+
+    /**
+     * @param headerCharset 响应头中声明的编码，没有时为 {@code null}
+     */
+    HtmlTitleParser(InputStream in, String headerCharset) {
+        this.in = in;
+        this.declaredCharset = headerCharset;
+    }
+
+    /**
+     * @return 标题的原始文本，没有找到标题时返回 {@code null}
+     */
+    String parse() throws IOException {
+        if (!skipBom()) {
+            // UTF-16 等不兼容 ASCII 的编码无法按字节扫描
+            return null;
+        }
+        int b;
+        while ((b = read()) >= 0) {
+            if (b != '<') {
+                continue;
+            }
+            b = read();
+            if (b == '!') {
+                skipComment();
+                continue;
+            }
+            if (b == '?') {
+                if ("xml".equals(readName(read()))) {
+                    readAttributes(true);
+                    if (attrEncoding != null) {
+                        httpEquivCharset = attrEncoding;
+                    }
+                } else {
+                    skipTag();
+                }
+                continue;
+            }
+            boolean closing = b == '/';
+            if (closing) {
+                b = read();
+            }
+            if (!isLetter(b)) {
+                // 不是标签，比如正文中的 "a < b"
+                unread(b);
+                continue;
+            }
+            String name = readName(b);
+            if (closing) {
+                if ("head".equals(name)) {
+                    return null;
+                }
+                skipTag();
+                continue;
+            }
+            switch (name) {
+                case "body":
+                case "svg":
+                    // 标题只在 head 里；正文中 SVG 图标的 <title> 不是网页标题
+                    return null;
+                case "title":
+                    if (readAttributes(false)) {
+                        byte[] title = readRawText("title", MAX_TITLE_BYTES);
+                        return new String(title, resolveCharset());
+                    }
+                    break;
+                case "meta":
+                    readAttributes(true);
+                    handleMeta();
+                    break;
+                case "script":
+                case "style":
+                    if (readAttributes(false)) {
+                        readRawText(name, 0);
+                    }
+                    break;
+                default:
+                    skipTag();
+                    break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 实际用来解码标题的编码，{@link #parse()} 之后才有意义
+     */
+    String getCharset() {
+        return charset;
+    }
+
+    private Charset resolveCharset() {
+        String[] candidates = bom ? new String[] {"UTF-8"} : new String[] {declaredCharset, httpEquivCharset};
+        for (String candidate : candidates) {
+            if (candidate == null) {
+                continue;
+            }
+            try {
+                if (Charset.isSupported(candidate)) {
+                    charset = candidate;
+                    return Charset.forName(candidate);
+                }
+            } catch (IllegalCharsetNameException icne) {
+                // 继续尝试下一个
+            }
+        }
+        charset = "UTF-8";
+        return StandardCharsets.UTF_8;
+    }
+
+    private void handleMeta() {
+        String found = attrCharset;
+        if (found == null && "content-type".equalsIgnoreCase(attrHttpEquiv) && attrContent != null) {
+            found = charsetFromContentType(attrContent);
+        }
+        // 只采用第一个声明
+        if (found != null && httpEquivCharset == null) {
+            httpEquivCharset = found;
+        }
+    }
+
+    /**
+     * 从 {@code text/html; charset=gbk} 这样的值中取出编码。
+     */
+    static String charsetFromContentType(String contentType) {
+        int start = contentType.toLowerCase(Locale.US).indexOf("charset=");
+        if (start < 0) {
+            return null;
+        }
+        String value = contentType.substring(start + "charset=".length()).trim();
+        int end = value.indexOf(';');
+        if (end >= 0) {
+            value = value.substring(0, end);
+        }
+        value = value.trim();
+        if (value.length() >= 2 && (value.charAt(0) == '"' || value.charAt(0) == '\'')) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * @return 可以继续按字节扫描时返回 {@code true}
+     */
+    private boolean skipBom() throws IOException {
+        int b0 = read();
+        if (b0 == 0xFE || b0 == 0xFF) {
+            return false;
+        }
+        if (b0 == 0xEF) {
+            int b1 = read();
+            int b2 = read();
+            if (b1 == 0xBB && b2 == 0xBF) {
+                bom = true;
+                return true;
+            }
+            // 不是 BOM，这三个字节也不可能是标签的开始
+            unread(b2);
+            return true;
+        }
+        unread(b0);
+        return true;
+    }
+
+    /**
+     * 跳过 {@code <!-- -->} 注释或 {@code <!DOCTYPE>}，已经读过 {@code <!}。
+     */
+    private void skipComment() throws IOException {
+        int b = read();
+        if (b == '-') {
+            b = read();
+            if (b == '-') {
+                int dashes = 0;
+                while ((b = read()) >= 0) {
+                    if (b == '>' && dashes >= 2) {
+                        return;
+                    }
+                    dashes = b == '-' ? dashes + 1 : 0;
+                }
+                return;
+            }
+        }
+        unread(b);
+        skipTag();
+    }
+
+    /**
+     * 读标签名或属性名，转成小写。读到的第一个不属于名字的字节被退回。
+     */
+    private String readName(int first) throws IOException {
+        StringBuilder name = new StringBuilder(MAX_NAME_LEN);
+        int b = first;
+        while (b >= 0 && b != '>' && b != '/' && b != '=' && !isSpace(b)) {
+            if (name.length() < MAX_NAME_LEN) {
+                name.append(Character.toLowerCase((char) b));
+            }
+            b = read();
+        }
+        unread(b);
+        return name.toString();
+    }
+
+    /**
+     * 读到标签结束的 {@code >}，引号中的 {@code >} 不算。
+     */
+    private void skipTag() throws IOException {
+        int quote = -1;
+        int b;
+        while ((b = read()) >= 0) {
+            if (quote >= 0) {
+                if (b == quote) {
+                    quote = -1;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 读当前标签的属性，直到 {@code >}。
+     *
+     * @param keep 是否记录属性值
+     * @return 标签正常结束且不是 {@code <x/>} 这样的自闭合标签时返回 {@code true}
+     */
+    private boolean readAttributes(boolean keep) throws IOException {
+        attrCharset = null;
+        attrHttpEquiv = null;
+        attrContent = null;
+        attrEncoding = null;
+        boolean selfClosing = false;
+        while (true) {
+            int b = read();
+            while (isSpace(b)) {
+                b = read();
+            }
+            if (b < 0) {
+                return false;
+            }
+            if (b == '>') {
+                return !selfClosing;
+            }
+            if (b == '/' || b == '?') {
+                selfClosing = b == '/';
+                continue;
+            }
+            selfClosing = false;
+            String name = readName(b);
+            b = read();
+            while (isSpace(b)) {
+                b = read();
+            }
+            if (b != '=') {
+                unread(b);
+                if (name.isEmpty()) {
+                    // 单独的 '='，防止死循环
+                    read();
+                }
+                continue;
+            }
+            String value = readValue();
+            if (keep) {
+                switch (name) {
+                    case "charset":
+                        attrCharset = value;
+                        break;
+                    case "http-equiv":
+                        attrHttpEquiv = value;
+                        break;
+                    case "content":
+                        attrContent = value;
+                        break;
+                    case "encoding":
+                        attrEncoding = value;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    private String readValue() throws IOException {
+        int b = read();
+        while (isSpace(b)) {
+            b = read();
+        }
+        int quote = -1;
+        if (b == '"' || b == '\'') {
+            quote = b;
+            b = read();
+        }
+        StringBuilder value = new StringBuilder();
+        while (b >= 0) {
+            if (quote >= 0 ? b == quote : isSpace(b) || b == '>') {
+                break;
+            }
+            if (quote < 0 && b == '/') {
+                // <meta charset=gbk/> 中的 / 属于自闭合标签，不属于值
+                int next = read();
+                unread(next);
+                if (next == '>') {
+                    break;
+                }
+            }
+            if (value.length() < MAX_VALUE_LEN) {
+                value.append((char) b);
+            }
+            b = read();
+        }
+        if (quote < 0) {
+            unread(b);
+        }
+        return value.toString().trim();
+    }
+
+    /**
+     * 读原始文本，直到 {@code </name}，然后跳过结束标签的其余部分。
+     *
+     * @param maxBytes 最多保留的字节数，超过后不再继续读；为 0 时不保留，一直读到结束标签
+     */
+    private byte[] readRawText(String name, int maxBytes) throws IOException {
+        ByteArrayOutputStream text = new ByteArrayOutputStream(maxBytes > 0 ? 64 : 0);
+        int b;
+        while ((b = read()) >= 0) {
+            if (b == '<') {
+                int matched = matchEndTag(name);
+                if (matched < 0) {
+                    skipTag();
+                    break;
+                }
+                if (maxBytes > 0) {
+                    // 匹配了一部分的字节都是 ASCII，原样保留
+                    text.write('<');
+                    if (matched > 0) {
+                        text.write('/');
+                    }
+                    for (int i = 1; i < matched; i++) {
+                        text.write(name.charAt(i - 1));
+                    }
+                }
+            } else if (maxBytes > 0) {
+                text.write(b);
+            }
+            if (maxBytes > 0 && text.size() >= maxBytes) {
+                break;
+            }
+        }
+        return text.toByteArray();
+    }
+
+    /**
+     * 已经读过 {@code <}，检查后面是不是 {@code /name} 加上空白、{@code /} 或 {@code >}。
+     *
+     * @return 是结束标签时返回 -1；否则返回匹配上的字节数（包括 {@code /}），不匹配的那个字节被退回
+     */
+    private int matchEndTag(String name) throws IOException {
+        int b = read();
+        if (b != '/') {
+            unread(b);
+            return 0;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            b = read();
+            if (b < 0 || Character.toLowerCase((char) b) != name.charAt(i)) {
+                unread(b);
+                return i + 1;
+            }
+        }
+        b = read();
+        unread(b);
+        if (b < 0 || b == '>' || b == '/' || isSpace(b)) {
+            return -1;
+        }
+        return name.length() + 1;
+    }
+
+    private int read() throws IOException {
+        if (pushedBackCount > 0) {
+            return pushedBack[--pushedBackCount];
+        }
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * 退回一个字节，最多连续退回两个；流结束时的 -1 不需要退回。
+     */
+    private void unread(int b) {
+        if (b >= 0) {
+            pushedBack[pushedBackCount++] = b;
+        }
+    }
+
+    private static boolean isLetter(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static boolean isSpace(int b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+}
@@ -24,6 +24,7 @@ import android.text.Spanned;
 import android.text.method.LinkMovementMethod;
 import android.text.style.URLSpan;
 import android.util.Log;
+import android.util.LruCache;
 import android.widget.TextView;
 
 import com.google.zxing.client.result.ParsedResult;
@@ -33,22 +34,56 @@ import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Superclass of implementations which can asynchronously retrieve more information
  * about a barcode scan.
+ * <p>
+ * 查询在专用的有界线程池上执行，不占用 {@link AsyncTask#THREAD_POOL_EXECUTOR}。结果按内容缓存一段时间，
+ * 再次扫描同一个码时直接显示。同一个键同时只有一个查询，界面上的查询遇到正在进行的预取时直接等它的结果。
+ * 结果界面重置时调用 {@link #cancelPending()} 取消还没完成的查询。静态方法只能在主线程上调用。
  */
 public abstract class SupplementalInfoRetriever extends AsyncTask<Object, Object, Object> {
 
     static final String[] EMPTY_STR_ARRAY = new String[0];
     private static final String TAG = "SupplementalInfo";
-    private final WeakReference<TextView> textViewRef;
+    private static final int POOL_SIZE = 2;
+    // 排队查询的上限；批量模式的预取最多占一半，剩下的留给界面上的查询
+    private static final int QUEUE_CAPACITY = 8;
+    private static final int MAX_CACHED_RESULTS = 64;
+    private static final long CACHE_TTL_MS = 10L * 60 * 1000;
+
+    private static final ThreadPoolExecutor executor = newExecutor();
+    private static final LruCache<String, CachedContents> cache = new LruCache<>(MAX_CACHED_RESULTS);
+    private static final Collection<SupplementalInfoRetriever> pending = new HashSet<>();
+    // 按缓存键记录正在进行的查询，包括预取
+    private static final Map<String, SupplementalInfoRetriever> inFlight = new HashMap<>();
+
+    private WeakReference<TextView> textViewRef;
+    private final boolean prefetch;
+    private final String cacheKey;
     private final Collection<Spannable> newContents;
     private final Collection<String[]> newHistories;
+    private boolean failed;
 
-    SupplementalInfoRetriever(TextView textView) {
+    /**
+     * @param textView 显示结果的控件，只预取时为 {@code null}
+     * @param cacheKey 结果的缓存键，通常是 URI
+     */
+    SupplementalInfoRetriever(TextView textView, String cacheKey) {
         textViewRef = new WeakReference<>(textView);
+        prefetch = textView == null;
+        this.cacheKey = cacheKey;
         newContents = new ArrayList<>();
         newHistories = new ArrayList<>();
     }
@@ -56,20 +91,107 @@ public abstract class SupplementalInfoRetriever extends AsyncTask<Object, Object
     public static void maybeInvokeRetrieval(TextView textView,
                                             ParsedResult result,
                                             Context context) {
+        // 新结果出现时，上一个结果还没完成的查询已经没有意义
+        cancelPending();
+        if (!(result instanceof URIParsedResult)) {
+            return;
+        }
+        URIParsedResult uriResult = (URIParsedResult) result;
+        CachedContents cached = getCached(uriResult.getURI());
+        if (cached != null) {
+            show(textView, cached.contents);
+            return;
+        }
+        SupplementalInfoRetriever running = inFlight.get(uriResult.getURI());
+        if (running != null) {
+            // 预取还没完成，完成后把结果显示在这个控件上
+            running.textViewRef = new WeakReference<>(textView);
+            pending.add(running);
+            return;
+        }
+        // 重定向和网页标题在同一个任务里依次查询，网页只下载一次
+        SupplementalInfoRetriever retriever = new URIResultInfoRetriever(textView, uriResult, context);
         try {
-            if (result instanceof URIParsedResult) {
-                SupplementalInfoRetriever uriRetriever =
-                        new URIResultInfoRetriever(textView, (URIParsedResult) result, context);
-                uriRetriever.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-                SupplementalInfoRetriever titleRetriever =
-                        new TitleRetriever(textView, (URIParsedResult) result);
-                titleRetriever.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-            }
+            retriever.executeOnExecutor(executor);
+            pending.add(retriever);
+            inFlight.put(retriever.cacheKey, retriever);
         } catch (RejectedExecutionException ree) {
-            // do nothing
+            Log.i(TAG, "Too many pending lookups; skipping " + uriResult.getURI());
         }
     }
 
+    /**
+     * 批量模式下只在后台查询并缓存结果，以后显示这个结果时不用再等。线程池忙不过来时直接跳过，扫得再快也不会堆积请求，
+     * 队列也总留有一半给界面上的查询。
+     */
+    public static void prefetch(ParsedResult result, Context context) {
+        if (!(result instanceof URIParsedResult)) {
+            return;
+        }
+        URIParsedResult uriResult = (URIParsedResult) result;
+        if (getCached(uriResult.getURI()) != null || inFlight.containsKey(uriResult.getURI())) {
+            return;
+        }
+        if (executor.getQueue().remainingCapacity() <= QUEUE_CAPACITY / 2) {
+            Log.i(TAG, "Lookup queue busy; not prefetching " + uriResult.getURI());
+            return;
+        }
+        try {
+            SupplementalInfoRetriever retriever = new URIResultInfoRetriever(null, uriResult, context);
+            retriever.executeOnExecutor(executor);
+            inFlight.put(retriever.cacheKey, retriever);
+        } catch (RejectedExecutionException ree) {
+            // 与上面的检查之间队列刚好满了
+        }
+    }
+
+    /**
+     * 取消所有还没完成、要显示在界面上的查询。预取不受影响，只是完成后不再显示。
+     */
+    public static void cancelPending() {
+        for (SupplementalInfoRetriever retriever : pending) {
+            if (retriever.prefetch) {
+                retriever.textViewRef = new WeakReference<>(null);
+            } else {
+                retriever.cancel(true);
+                inFlight.remove(retriever.cacheKey);
+            }
+        }
+        pending.clear();
+    }
+
+    private static CachedContents getCached(String key) {
+        CachedContents cached = cache.get(key);
+        if (cached != null && cached.expiresAt < System.currentTimeMillis()) {
+            cache.remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    private static void show(TextView textView, Collection<Spannable> contents) {
+        for (CharSequence content : contents) {
+            textView.append(content);
+        }
+        textView.setMovementMethod(LinkMovementMethod.getInstance());
+    }
+
+    private static ThreadPoolExecutor newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SupplementalInfo #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     static void maybeAddText(String text, Collection<String> texts) {
         if (text != null && !text.isEmpty()) {
             texts.add(text);
@@ -97,6 +219,8 @@ public abstract class SupplementalInfoRetriever extends AsyncTask<Object, Object
         try {
             retrieveSupplementalInfo();
         } catch (IOException e) {
+            // 只查到一部分，不缓存，下次重新查询
+            failed = true;
             Log.w(TAG, e);
         }
         return null;
@@ -104,12 +228,28 @@ public abstract class SupplementalInfoRetriever extends AsyncTask<Object, Object
 
     @Override
     protected final void onPostExecute(Object arg) {
+        pending.remove(this);
+        removeInFlight();
+        if (!failed) {
+            List<Spannable> contents = new ArrayList<>(newContents);
+            cache.put(cacheKey, new CachedContents(contents, System.currentTimeMillis() + CACHE_TTL_MS));
+        }
         TextView textView = textViewRef.get();
         if (textView != null) {
-            for (CharSequence content : newContents) {
-                textView.append(content);
-            }
-            textView.setMovementMethod(LinkMovementMethod.getInstance());
+            show(textView, newContents);
+        }
+    }
+
+    @Override
+    protected final void onCancelled(Object arg) {
+        pending.remove(this);
+        removeInFlight();
+    }
+
+    private void removeInFlight() {
+        // 取消后同一个键可能已经有了新的查询
+        if (inFlight.get(cacheKey) == this) {
+            inFlight.remove(cacheKey);
         }
     }
 
@@ -156,4 +296,14 @@ public abstract class SupplementalInfoRetriever extends AsyncTask<Object, Object
         newHistories.add(new String[]{itemID, newText});
     }
 
+    private static final class CachedContents {
+        final List<Spannable> contents;
+        final long expiresAt;
+
+        CachedContents(List<Spannable> contents, long expiresAt) {
+            this.contents = contents;
+            this.expiresAt = expiresAt;
+        }
+    }
+
 }
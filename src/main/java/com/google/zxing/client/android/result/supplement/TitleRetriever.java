@@ -17,54 +17,49 @@
 package com.google.zxing.client.android.result.supplement;
 
 import android.text.Html;
-import android.widget.TextView;
 
 import com.google.zxing.client.android.HttpHelper;
-import com.google.zxing.client.result.URIParsedResult;
 
 import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStream;
 
 /**
  * Retrieves the title of a web page as supplemental info.
  *
  * @author Sean Owen
  */
-final class TitleRetriever extends SupplementalInfoRetriever {
+final class TitleRetriever {
 
-    private static final Pattern TITLE_PATTERN = Pattern.compile("<title>([^<]+)");
     private static final int MAX_TITLE_LEN = 100;
+    // 标题之前可能有很大的内联脚本和样式，但不需要读完整个网页
+    private static final long MAX_BYTES = 64 * 1024;
 
-    private final String httpUrl;
-
-    TitleRetriever(TextView textView, URIParsedResult result) {
-        super(textView);
-        this.httpUrl = result.getURI();
+    private TitleRetriever() {
     }
 
-    @Override
-    void retrieveSupplementalInfo() {
-        CharSequence contents;
-        try {
-            contents = HttpHelper.downloadViaHttp(httpUrl, HttpHelper.ContentType.HTML, 4096);
-        } catch (IOException ioe) {
-            // ignore this
-            return;
-        }
-        if (contents != null && contents.length() > 0) {
-            Matcher m = TITLE_PATTERN.matcher(contents);
-            if (m.find()) {
-                String title = m.group(1);
-                if (title != null && !title.isEmpty()) {
-                    title = Html.fromHtml(title).toString();
-                    if (title.length() > MAX_TITLE_LEN) {
-                        title = title.substring(0, MAX_TITLE_LEN) + "...";
+    /**
+     * @return 网页标题，没有标题时返回 {@code null}
+     */
+    static String retrieveTitle(String httpUrl) throws IOException {
+        String title = HttpHelper.downloadViaHttp(httpUrl, HttpHelper.ContentType.HTML, MAX_BYTES,
+                new HttpHelper.BodyHandler<String>() {
+                    @Override
+                    public String handle(InputStream body, String charset) throws IOException {
+                        // 读到 </title> 就返回，网页的其余部分不再下载
+                        return new HtmlTitleParser(body, charset).parse();
                     }
-                    append(httpUrl, null, new String[]{title}, httpUrl);
-                }
-            }
+                });
+        if (title == null) {
+            return null;
+        }
+        title = Html.fromHtml(title).toString().trim();
+        if (title.isEmpty()) {
+            return null;
+        }
+        if (title.length() > MAX_TITLE_LEN) {
+            title = title.substring(0, MAX_TITLE_LEN) + "...";
         }
+        return title;
     }
 
 }
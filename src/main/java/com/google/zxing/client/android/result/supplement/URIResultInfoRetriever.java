@@ -17,27 +17,35 @@
 package com.google.zxing.client.android.result.supplement;
 
 import android.content.Context;
+import android.util.Log;
 import android.widget.TextView;
 
 import com.google.zxing.client.android.HttpHelper;
 import com.google.zxing.client.android.R;
+import com.google.zxing.client.android.RedirectCache;
 import com.google.zxing.client.result.URIParsedResult;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+/**
+ * 依次解析短链接并取得最终网页的标题。两项查询放在同一个任务里，缓存和取消都以整个 URI 为单位。
+ */
 final class URIResultInfoRetriever extends SupplementalInfoRetriever {
 
+    private static final String TAG = URIResultInfoRetriever.class.getSimpleName();
     private static final int MAX_REDIRECTS = 5;
 
     private final URIParsedResult result;
     private final String redirectString;
+    private final RedirectCache redirectCache;
 
     URIResultInfoRetriever(TextView textView, URIParsedResult result, Context context) {
-        super(textView);
+        super(textView, result.getURI());
         redirectString = context.getString(R.string.msg_redirect);
         this.result = result;
+        redirectCache = RedirectCache.getInstance(context);
     }
 
     @Override
@@ -48,15 +56,43 @@ final class URIResultInfoRetriever extends SupplementalInfoRetriever {
         } catch (URISyntaxException ignored) {
             return;
         }
-        URI newURI = HttpHelper.unredirect(oldURI);
-        int count = 0;
-        while (count++ < MAX_REDIRECTS && !oldURI.equals(newURI)) {
-            append(result.getDisplayResult(),
-                    null,
-                    new String[]{redirectString + " : " + newURI},
-                    newURI.toString());
-            oldURI = newURI;
-            newURI = HttpHelper.unredirect(newURI);
+        IOException redirectFailure = null;
+        try {
+            URI newURI = redirectCache.unredirect(oldURI);
+            int count = 0;
+            while (count++ < MAX_REDIRECTS && !oldURI.equals(newURI) && !isCancelled()) {
+                append(result.getDisplayResult(),
+                        null,
+                        new String[]{redirectString + " : " + newURI},
+                        newURI.toString());
+                oldURI = newURI;
+                newURI = redirectCache.unredirect(newURI);
+            }
+        } catch (IOException ioe) {
+            // 重定向没有解析完时，仍然尝试取得已知地址的标题
+            redirectFailure = ioe;
+        }
+        if (isCancelled()) {
+            return;
+        }
+        String scheme = oldURI.getScheme();
+        if ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) {
+            // 标题取自最终的网页，短链接服务本身的页面没有意义
+            String httpUrl = result.getURI();
+            String title = null;
+            try {
+                title = TitleRetriever.retrieveTitle(oldURI.toString());
+            } catch (HttpHelper.HttpStatusException hse) {
+                // 404 等错误响应按没有标题处理，结果照常缓存，下次扫描不再重复下载。
+                // 不是网页时解析不到标题，同样没有异常；连接失败、超时则抛给上层，不缓存
+                Log.i(TAG, "No title for " + oldURI + ": " + hse);
+            }
+            if (title != null) {
+                append(httpUrl, null, new String[]{title}, httpUrl);
+            }
+        }
+        if (redirectFailure != null) {
+            throw redirectFailure;
         }
     }
 
@@ -18,9 +18,9 @@ package com.google.zxing.client.android.scan;
 
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.ClipData;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
@@ -33,6 +33,9 @@ import android.preference.PreferenceManager;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.KeyEvent;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.View;
@@ -51,19 +54,27 @@ import com.google.zxing.ResultPoint;
 import com.google.zxing.client.android.FinishListener;
 import com.google.zxing.client.android.IntentSource;
 import com.google.zxing.client.android.Intents;
+import com.google.zxing.client.android.PipelineTrace;
 import com.google.zxing.client.android.PreferencesActivity;
 import com.google.zxing.client.android.R;
 import com.google.zxing.client.android.ScanFromWebPageManager;
+import com.google.zxing.client.android.ViewfinderResultPointCallback;
 import com.google.zxing.client.android.ViewfinderView;
-import com.google.zxing.client.android.camera.AmbientLightManager;
 import com.google.zxing.client.android.camera.CameraManager;
 import com.google.zxing.client.android.decode.DecodeFormatManager;
 import com.google.zxing.client.android.decode.DecodeHintManager;
+import com.google.zxing.client.android.decode.DecoderWarmUp;
+import com.google.zxing.client.android.history.ExportProvider;
+import com.google.zxing.client.android.history.HistoryExporter;
+import com.google.zxing.client.android.history.HistoryManager;
+import com.google.zxing.client.android.result.PreparedResult;
 import com.google.zxing.client.android.result.ResultButtonListener;
 import com.google.zxing.client.android.result.ResultHandler;
 import com.google.zxing.client.android.result.ResultHandlerFactory;
+import com.google.zxing.client.android.result.ResultSettings;
 import com.google.zxing.client.android.result.supplement.SupplementalInfoRetriever;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.util.Collection;
@@ -76,7 +87,7 @@ import java.util.Map;
  * @author dswitkin@google.com (Daniel Switkin)
  * @author Sean Owen
  */
-public final class CaptureActivity extends Activity implements SurfaceHolder.Callback {
+public final class CaptureActivity extends Activity implements SurfaceHolder.Callback, HistoryExporter.Callback {
     public static final int INTENT_REQUEST_CODE = 10086;
     private static final String TAG = CaptureActivity.class.getSimpleName();
     private static final long DEFAULT_INTENT_RESULT_DURATION_MS = 0;//不需要延迟
@@ -88,7 +99,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
                     ResultMetadataType.SUGGESTED_PRICE,
                     ResultMetadataType.ERROR_CORRECTION_LEVEL,
                     ResultMetadataType.POSSIBLE_COUNTRY);
-    private CameraManager cameraManager;
+    private ScanSession scanSession;
     private CaptureActivityHandler handler;
     private Result savedResultToShow;
     private ViewfinderView viewfinderView;//取景框
@@ -104,7 +115,10 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     private String characterSet;
     private InactivityTimer inactivityTimer;//定时器
     private BeepManager beepManager;//声音播放
-    private AmbientLightManager ambientLightManager;//亮度自动感应
+    private HistoryExporter historyExporter;
+    private HistoryExporter.Format exportFormat;
+    // 本次扫描开始的时间，导出时只包括之后的记录
+    private long sessionStartMs;
 
     public static Intent makeIntent(Context context) {
         return makeIntent(context, true);
@@ -136,12 +150,32 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     }
 
     public CameraManager getCameraManager() {
-        return cameraManager;
+        return scanSession.getCameraManager();
     }
 
     @Override
     public void onCreate(Bundle icicle) {
         super.onCreate(icicle);
+        scanSession = new ScanSession(this, new ScanSession.Listener() {
+            @Override
+            public void onScanResult(PreparedResult result, Bitmap barcode, float scaleFactor) {
+                handleDecode(result, barcode, scaleFactor);
+            }
+
+            @Override
+            public void onFrameNotDecoded() {
+                // 扫码界面不解码外部传入的帧
+            }
+        });
+        Intent intent = getIntent();
+        //Intent指定相机
+        if (intent != null && Intents.Scan.ACTION.equals(intent.getAction()) &&
+                intent.hasExtra(Intents.Scan.CAMERA_ID)) {
+            scanSession.setCameraId(intent.getIntExtra(Intents.Scan.CAMERA_ID, -1));
+        }
+        // 相机的打开和参数设置在相机线程上进行，与下面的布局加载并行
+        scanSession.open();
+        DecoderWarmUp.startIfEnabled(this);
 
         Window window = getWindow();
         window.addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
@@ -150,7 +184,8 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
         hasSurface = false;
         inactivityTimer = new InactivityTimer(this);
         beepManager = new BeepManager(this);
-        ambientLightManager = new AmbientLightManager(this);
+        historyExporter = new HistoryExporter(this, this);
+        sessionStartMs = System.currentTimeMillis();
 
         PreferenceManager.setDefaultValues(this, R.xml.preferences, false);
     }
@@ -158,14 +193,15 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     @Override
     protected void onResume() {
         super.onResume();
-        // CameraManager must be initialized here, not in onCreate(). This is necessary because we don't
-        // want to open the camera driver and measure the screen size if we're going to show the help on
-        // first launch. That led to bugs where the scanning rectangle was the wrong size and partially
-        // off screen.
-        cameraManager = new CameraManager(getApplication());
+        // 首次启动时相机已在onCreate()中开始打开；从暂停恢复时onPause()已经关闭了相机，需要重新打开
+        scanSession.open();
+        CameraManager cameraManager = scanSession.getCameraManager();
 
         viewfinderView = findViewById(R.id.viewfinder_view);
         viewfinderView.setCameraManager(cameraManager);
+        viewfinderView.setDebugOverlayEnabled(PreferenceManager.getDefaultSharedPreferences(this)
+                .getBoolean(PreferencesActivity.KEY_DEBUG_OVERLAY, false));
+        scanSession.setResultPointCallback(new ViewfinderResultPointCallback(viewfinderView));
 
         resultView = findViewById(R.id.result_view);
         statusView = findViewById(R.id.status_view);
@@ -176,7 +212,6 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
         resetStatusView();
 
         beepManager.updatePrefs();
-        ambientLightManager.start(cameraManager);
 
         inactivityTimer.onResume();//启动定时器
 
@@ -204,13 +239,6 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
                         cameraManager.setManualFramingRect(width, height);
                     }
                 }
-                //Intent指定相机
-                if (intent.hasExtra(Intents.Scan.CAMERA_ID)) {
-                    int cameraId = intent.getIntExtra(Intents.Scan.CAMERA_ID, -1);
-                    if (cameraId >= 0) {
-                        cameraManager.setManualCameraId(cameraId);
-                    }
-                }
                 //提示文字
                 String customPromptMessage = intent.getStringExtra(Intents.Scan.PROMPT_MESSAGE);
                 if (customPromptMessage != null) {
@@ -237,6 +265,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
             characterSet = "utf-8";
 //            characterSet = intent.getStringExtra(Intents.Scan.CHARACTER_SET);
         }
+        scanSession.setDecodeOptions(decodeFormats, decodeHints, characterSet);
         SurfaceView surfaceView = findViewById(R.id.preview_view);
         SurfaceHolder surfaceHolder = surfaceView.getHolder();
         if (hasSurface) {
@@ -249,6 +278,8 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     }
 
     private void resetStatusView() {
+        // 结果界面已经不显示了，还没完成的补充信息查询不再需要
+        SupplementalInfoRetriever.cancelPending();
         resultView.setVisibility(View.GONE);
         statusView.setText(R.string.msg_default_status);
         statusView.setVisibility(View.VISIBLE);
@@ -256,6 +287,15 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
         lastResult = null;
     }
 
+    /**
+     * 调用方可以通过 {@link Intents.Scan#SAVE_HISTORY} 要求不保存这次扫描。
+     */
+    private boolean shouldSaveHistory() {
+        Intent intent = getIntent();
+        return source != IntentSource.NATIVE_APP_INTENT || intent == null ||
+                intent.getBooleanExtra(Intents.Scan.SAVE_HISTORY, true);
+    }
+
     private static boolean isZXingURL(String dataString) {
         if (dataString == null) {
             return false;
@@ -272,15 +312,17 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
         if (surfaceHolder == null) {
             throw new IllegalStateException("No SurfaceHolder provided");
         }
-        if (cameraManager.isOpen()) {
+        // 相机可能已经在后台打开，所以用会话状态判断是否已经初始化过
+        if (scanSession.isScanning()) {
             Log.w(TAG, "initCamera() while already open -- late SurfaceView callback?");
             return;
         }
         try {
-            cameraManager.openDriver(surfaceHolder);
-            // 创建处理程序将启动预览，预览还会抛出一个RuntimeException。
+            // 开始预览也会抛出一个RuntimeException。
+            scanSession.start(surfaceHolder);
+            drawViewfinder();
             if (handler == null) {
-                handler = new CaptureActivityHandler(this, decodeFormats, decodeHints, characterSet, cameraManager);
+                handler = new CaptureActivityHandler(this);
             }
             decodeOrStoreSavedBitmap(null, null);
         } catch (IOException ioe) {
@@ -326,9 +368,11 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
             handler = null;
         }
         inactivityTimer.onPause();
-        ambientLightManager.stop();
         beepManager.close();
-        cameraManager.closeDriver();
+        // 进程在后台可能被结束，尽快写入还在队列中的历史
+        HistoryManager.getInstance(this).requestFlush();
+        historyExporter.cancel();
+        scanSession.close();
         if (!hasSurface) {
             SurfaceView surfaceView = findViewById(R.id.preview_view);
             SurfaceHolder surfaceHolder = surfaceView.getHolder();
@@ -343,6 +387,74 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
         super.onDestroy();
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater menuInflater = getMenuInflater();
+        menuInflater.inflate(R.menu.capture, menu);
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int i = item.getItemId();
+        if (i == R.id.menu_export_csv) {
+            exportSession(HistoryExporter.Format.CSV);
+            return true;
+        } else if (i == R.id.menu_export_jsonl) {
+            exportSession(HistoryExporter.Format.JSON_LINES);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * 导出本次打开扫描界面以来的记录，批量扫描的结果可以一次带走。写文件在后台完成，结果回到 onExportFinished / onExportFailed。
+     */
+    private void exportSession(HistoryExporter.Format format) {
+        // 写在应用自己的缓存目录，不需要外部存储权限，分享时通过 ExportProvider 给出 content:// 地址
+        File file = new File(ExportProvider.getExportDirectory(this),
+                "scans-" + System.currentTimeMillis() + '.' + format.getExtension());
+        exportFormat = format;
+        historyExporter.export(format, sessionStartMs, file);
+    }
+
+    @Override
+    public void onExportProgress(long exported, long total) {
+        statusView.setText(getString(R.string.msg_export_progress, exported, total));
+    }
+
+    @Override
+    public void onExportFinished(File file, long count) {
+        statusView.setText(R.string.msg_default_status);
+        if (isFinishing()) {
+            return;
+        }
+        if (count == 0) {
+            Toast.makeText(this, R.string.history_empty_detail, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Uri uri = ExportProvider.getUri(this, file);
+        Intent intent = new Intent(Intent.ACTION_SEND, Uri.parse("mailto:"));
+        intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.history_email_title));
+        intent.putExtra(Intent.EXTRA_STREAM, uri);
+        intent.setType(exportFormat.getMimeType());
+        // 读取权限随 ClipData 授予实际选中的应用
+        intent.setClipData(ClipData.newRawUri(null, uri));
+        intent.addFlags(Intents.FLAG_NEW_DOC | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        Intent chooser = Intent.createChooser(intent, null);
+        chooser.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startActivity(chooser);
+    }
+
+    @Override
+    public void onExportFailed() {
+        statusView.setText(R.string.msg_default_status);
+        if (!isFinishing()) {
+            Toast.makeText(this, R.string.msg_export_failed, Toast.LENGTH_SHORT).show();
+        }
+    }
+
     @Override
     public boolean onKeyDown(int keyCode, KeyEvent event) {
         switch (keyCode) {
@@ -363,20 +475,20 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
                 return true;
             // 使用音量上/下键开关闪光灯
             case KeyEvent.KEYCODE_VOLUME_DOWN:
-                cameraManager.setTorch(false);
-                return true;
             case KeyEvent.KEYCODE_VOLUME_UP:
-                cameraManager.setTorch(true);
+                CameraManager cameraManager = scanSession.getCameraManager();
+                if (cameraManager != null) {
+                    cameraManager.setTorch(keyCode == KeyEvent.KEYCODE_VOLUME_UP);
+                }
                 return true;
         }
         return super.onKeyDown(keyCode, event);
     }
 
     public void restartPreviewAfterDelay(long delayMS) {
-        if (handler != null) {
-            handler.sendEmptyMessageDelayed(R.id.restart_preview, delayMS);
-        }
+        scanSession.resume(delayMS);
         resetStatusView();
+        drawViewfinder();
     }
 
     @Override
@@ -408,14 +520,36 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
      * @param barcode     A greyscale bitmap of the camera data which was decoded.
      */
     public void handleDecode(Result rawResult, Bitmap barcode, float scaleFactor) {
+        handleDecode(PreparedResult.prepare(rawResult, ResultSettings.load(this)), barcode, scaleFactor);
+    }
+
+    /**
+     * 同 {@link #handleDecode(Result, Bitmap, float)}，但结果已经在解码线程上解析好，设置也已经读取。
+     */
+    private void handleDecode(PreparedResult prepared, Bitmap barcode, float scaleFactor) {
+        PipelineTrace.begin(PipelineTrace.UI_BIND);
+        try {
+            bindResult(prepared, barcode, scaleFactor);
+        } finally {
+            PipelineTrace.end();
+        }
+    }
+
+    private void bindResult(PreparedResult prepared, Bitmap barcode, float scaleFactor) {
         inactivityTimer.onActivity();
+        Result rawResult = prepared.getRawResult();
         lastResult = rawResult;
-        ResultHandler resultHandler = ResultHandlerFactory.makeResultHandler(this, rawResult);
+        ResultHandler resultHandler = ResultHandlerFactory.makeResultHandler(this, prepared);
+        ResultSettings settings = prepared.getSettings();
 
         boolean fromLiveScan = barcode != null;
         if (fromLiveScan) {
             beepManager.playBeepSoundAndVibrate();//播放声音且震动
             drawResultPoints(barcode, scaleFactor, rawResult);
+            if (shouldSaveHistory()) {
+                // 只放进队列，批量扫描时也不在主线程上写磁盘
+                HistoryManager.getInstance(this).addHistoryItem(rawResult, resultHandler);
+            }
         }
         switch (source) {
             case NATIVE_APP_INTENT:
@@ -430,12 +564,15 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
                 }
                 break;
             case NONE:
-                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
                 //批量扫描得到结果先不返回，延迟1s继续扫描
-                if (fromLiveScan && prefs.getBoolean(PreferencesActivity.KEY_BULK_MODE, false)) {
+                if (fromLiveScan && settings.isBulkMode()) {
                     Toast.makeText(getApplicationContext(),
                             getResources().getString(R.string.msg_bulk_mode_scanned) + " (" + rawResult.getText() + ')',
                             Toast.LENGTH_SHORT).show();
+                    if (settings.isSupplementalEnabled()) {
+                        // 预先查询并缓存，线程池忙时直接跳过
+                        SupplementalInfoRetriever.prefetch(resultHandler.getResult(), this);
+                    }
                     // 稍等片刻，否则它会连续扫描同一条码3次左右
                     restartPreviewAfterDelay(BULK_MODE_SCAN_DELAY_MS);
                 } else {
@@ -559,9 +696,8 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
 
     // 提供扫码器内部UI来处理解码内容。
     private void handleDecodeInternally(Result rawResult, ResultHandler resultHandler, Bitmap barcode) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-
-        if (resultHandler.getDefaultButtonID() != null && prefs.getBoolean(PreferencesActivity.KEY_AUTO_OPEN_WEB, false)) {
+        ResultSettings settings = resultHandler.getSettings();
+        if (resultHandler.getDefaultButtonID() != null && settings.isAutoOpenWeb()) {
             resultHandler.handleButtonPress(resultHandler.getDefaultButtonID());
             return;
         }
@@ -616,8 +752,7 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
         TextView supplementTextView = findViewById(R.id.contents_supplement_text_view);
         supplementTextView.setText("");
         supplementTextView.setOnClickListener(null);
-        if (PreferenceManager.getDefaultSharedPreferences(this).getBoolean(
-                PreferencesActivity.KEY_SUPPLEMENTAL, true)) {
+        if (settings.isSupplementalEnabled()) {
             SupplementalInfoRetriever.maybeInvokeRetrieval(supplementTextView,
                     resultHandler.getResult(),
                     this);
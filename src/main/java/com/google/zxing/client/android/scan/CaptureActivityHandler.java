@@ -30,61 +30,27 @@ import android.os.Message;
 import android.provider.Browser;
 import android.util.Log;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.DecodeHintType;
 import com.google.zxing.Result;
 import com.google.zxing.client.android.Intents;
 import com.google.zxing.client.android.R;
-import com.google.zxing.client.android.ViewfinderResultPointCallback;
-import com.google.zxing.client.android.camera.CameraManager;
 import com.google.zxing.client.android.decode.DecodeThread;
 
-import java.util.Collection;
-import java.util.Map;
-
 /**
- * 该类处理包含用于捕获的状态机的所有消息传递。
+ * 处理扫码界面上的消息：返回结果、打开网页等。相机和解码的状态机由 {@link ScanSession} 负责。
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class CaptureActivityHandler extends Handler {
     private static final String TAG = CaptureActivityHandler.class.getSimpleName();
     private final CaptureActivity activity;
-    private final DecodeThread decodeThread;
-    private final CameraManager cameraManager;
-    private State state;
 
-    CaptureActivityHandler(CaptureActivity activity,
-                           Collection<BarcodeFormat> decodeFormats,
-                           Map<DecodeHintType, ?> baseHints,
-                           String characterSet,
-                           CameraManager cameraManager) {
+    CaptureActivityHandler(CaptureActivity activity) {
         this.activity = activity;
-        decodeThread = new DecodeThread(activity, decodeFormats, baseHints, characterSet,
-                new ViewfinderResultPointCallback(activity.getViewfinderView()));
-        decodeThread.start();
-        state = State.SUCCESS;
-
-        // Start ourselves capturing previews and decoding.
-        this.cameraManager = cameraManager;
-        cameraManager.startPreview();
-        restartPreviewAndDecode();
-    }
-
-    private void restartPreviewAndDecode() {
-        if (state == State.SUCCESS) {
-            state = State.PREVIEW;
-            cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
-            activity.drawViewfinder();
-        }
     }
 
     @Override
     public void handleMessage(Message message) {
-        if (message.what == R.id.restart_preview) {//重新启动扫描
-            restartPreviewAndDecode();
-        } else if (message.what == R.id.decode_succeeded) {//解码成功
-            state = State.SUCCESS;
+        if (message.what == R.id.decode_succeeded) {//已有的结果，直接显示
             Bundle bundle = message.getData();
             Bitmap barcode = null;
             float scaleFactor = 1.0f;
@@ -98,9 +64,6 @@ public final class CaptureActivityHandler extends Handler {
                 scaleFactor = bundle.getFloat(DecodeThread.BARCODE_SCALED_FACTOR);
             }
             activity.handleDecode((Result) message.obj, barcode, scaleFactor);
-        } else if (message.what == R.id.decode_failed) {// 尽可能快速解码，所以当一个解码失败时，就开始另一个解码。
-            state = State.PREVIEW;
-            cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
         } else if (message.what == R.id.return_scan_result) {//返回扫描结果
             activity.setResult(Activity.RESULT_OK, (Intent) message.obj);
             activity.finish();
@@ -138,25 +101,9 @@ public final class CaptureActivityHandler extends Handler {
     }
 
     void quitSynchronously() {
-        state = State.DONE;
-        cameraManager.stopPreview();
-        Message quit = Message.obtain(decodeThread.getHandler(), R.id.quit);
-        quit.sendToTarget();
-        try {
-            // Wait at most half a second; should be enough time, and onPause() will timeout quickly
-            decodeThread.join(500L);
-        } catch (InterruptedException e) {
-            // continue
-        }
-
         // Be absolutely sure we don't send any queued up messages
         removeMessages(R.id.decode_succeeded);
-        removeMessages(R.id.decode_failed);
-    }
-
-    private enum State {
-        PREVIEW,
-        SUCCESS,
-        DONE
+        removeMessages(R.id.return_scan_result);
+        removeMessages(R.id.launch_product_query);
     }
 }
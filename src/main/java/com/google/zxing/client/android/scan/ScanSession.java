@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.scan;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
+import android.view.SurfaceHolder;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.client.android.R;
+import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.camera.PipelineCounters;
+import com.google.zxing.client.android.decode.DecodeThread;
+import com.google.zxing.client.android.result.PreparedResult;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 不依赖 Activity 的扫码会话：持有相机、解码线程，并通过 {@link Listener} 交付结果。
+ * 可以嵌入任意界面，也可以只用来解码调用方已有的帧。
+ * <p>
+ * {@link #stop()} 只停止预览和解码，相机和解码线程保持就绪，切换界面后再次 {@link #start(SurfaceHolder)} 无需重新打开；
+ * 不再需要时调用 {@link #close()} 释放相机。除 {@link Listener} 回调外，所有方法都应在创建会话的线程（通常是主线程）上调用，
+ * 回调也在该线程上执行。
+ */
+public final class ScanSession {
+    private static final long QUIT_TIMEOUT_MS = 500L;
+
+    /**
+     * 扫码结果回调。
+     */
+    public interface Listener {
+        /**
+         * 识别成功。来自相机预览时扫描随即暂停，调用 {@link #resume(long)} 继续。
+         *
+         * @param result      已经在解码线程上解析好的结果
+         * @param barcode     解码所用画面的灰度缩略图
+         * @param scaleFactor 缩略图相对原始帧的缩放比例
+         */
+        void onScanResult(PreparedResult result, Bitmap barcode, float scaleFactor);
+
+        /**
+         * 通过 {@link #decodeFrame(byte[], int, int)} 传入的帧中没有识别出条码。
+         */
+        void onFrameNotDecoded();
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final Handler handler;
+    private final ResultPointCallback pointCallback;
+    private volatile ResultPointCallback resultPointCallback;
+    private Collection<BarcodeFormat> decodeFormats;
+    private Map<DecodeHintType, ?> decodeHints;
+    private String characterSet;
+    private int cameraId = -1;
+    private volatile CameraManager cameraManager;
+    private DecodeThread decodeThread;
+    private State state = State.CLOSED;
+    // close() 之后为 true，直到再次 open()；期间不接受外部帧，避免重新创建一个没人退出的解码线程
+    private boolean released;
+
+    public ScanSession(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+        handler = new SessionHandler();
+        pointCallback = new ResultPointCallback() {
+            @Override
+            public void foundPossibleResultPoint(ResultPoint point) {
+                CameraManager theCameraManager = cameraManager;
+                if (theCameraManager != null) {
+                    theCameraManager.onResultPoint(point);
+                }
+                ResultPointCallback callback = resultPointCallback;
+                if (callback != null) {
+                    callback.foundPossibleResultPoint(point);
+                }
+            }
+        };
+    }
+
+    /**
+     * 指定相机 ID，在下一次打开相机时生效。
+     *
+     * @param cameraId 负数表示自动选择
+     */
+    public void setCameraId(int cameraId) {
+        this.cameraId = cameraId;
+    }
+
+    /**
+     * 设置解码的格式、提示和字符集，在解码线程下一次启动时生效；当前没有在扫描时会立即重建解码线程。
+     */
+    public void setDecodeOptions(Collection<BarcodeFormat> decodeFormats,
+                                 Map<DecodeHintType, ?> decodeHints,
+                                 String characterSet) {
+        this.decodeFormats = decodeFormats;
+        this.decodeHints = decodeHints;
+        this.characterSet = characterSet;
+        if (state != State.PREVIEW && state != State.SUCCESS) {
+            quitDecodeThread();
+        }
+    }
+
+    /**
+     * 解码过程中找到的定位点会交给这个回调，坐标为预览帧坐标，通常用于在取景框上绘制。在解码线程上调用。
+     */
+    public void setResultPointCallback(ResultPointCallback resultPointCallback) {
+        this.resultPointCallback = resultPointCallback;
+    }
+
+    /**
+     * @return 当前的相机，会话关闭后为 {@code null}
+     */
+    public CameraManager getCameraManager() {
+        return cameraManager;
+    }
+
+    public boolean isScanning() {
+        return state == State.PREVIEW || state == State.SUCCESS;
+    }
+
+    /**
+     * 在后台开始打开相机，立即返回。可以在界面还没准备好时提前调用。
+     */
+    public void open() {
+        released = false;
+        if (cameraManager == null) {
+            // 只解码外部帧时创建的解码线程没有关联相机，需要重建
+            quitDecodeThread();
+            cameraManager = new CameraManager(context);
+            if (cameraId >= 0) {
+                cameraManager.setManualCameraId(cameraId);
+            }
+            state = State.IDLE;
+        }
+        cameraManager.openDriverAsync();
+    }
+
+    /**
+     * 把预览绘制到指定的 Surface 上并开始扫描。
+     *
+     * @throws IOException 相机打开失败
+     */
+    public void start(SurfaceHolder holder) throws IOException {
+        if (isScanning()) {
+            return;
+        }
+        open();
+        cameraManager.openDriver(holder);
+        ensureDecodeThread();
+        // 停止期间设置可能已经改变（比如从设置界面返回），解码线程却一直保留
+        decodeThread.reloadSettings(context);
+        // 每次开始扫描重新统计
+        cameraManager.getPipelineMetrics().reset();
+        cameraManager.startPreview();
+        state = State.SUCCESS;
+        restartPreviewAndDecode();
+    }
+
+    /**
+     * 延迟一段时间后继续扫描。
+     */
+    public void resume(long delayMS) {
+        handler.sendEmptyMessageDelayed(R.id.restart_preview, delayMS);
+    }
+
+    /**
+     * 停止预览和解码，相机和解码线程保留，以便很快再次开始。
+     */
+    public void stop() {
+        if (isScanning()) {
+            state = State.IDLE;
+            cameraManager.stopPreview();
+        }
+        handler.removeMessages(R.id.restart_preview);
+    }
+
+    /**
+     * 停止扫描并释放相机和解码线程。之后仍可以再次 {@link #open()}，在那之前不能调用 {@link #decodeFrame(byte[], int, int)}。
+     */
+    public void close() {
+        released = true;
+        stop();
+        quitDecodeThread();
+        if (cameraManager != null) {
+            cameraManager.closeDriver();
+            cameraManager = null;
+        }
+        state = State.CLOSED;
+    }
+
+    /**
+     * 解码调用方已有的一帧 YUV（NV21 等亮度平面在前的格式）数据，不需要打开相机。
+     * 结果通过 {@link Listener#onScanResult} 或 {@link Listener#onFrameNotDecoded()} 交付。
+     * <p>
+     * 新建的会话不需要打开相机就可以调用；{@link #close()} 之后要先 {@link #open()}。
+     *
+     * @param data   至少 {@code width * height} 字节，前面是亮度平面
+     * @throws IllegalArgumentException 数据为空、尺寸不是正数或数据不够一帧
+     * @throws IllegalStateException    会话已经关闭
+     */
+    public void decodeFrame(byte[] data, int width, int height) {
+        if (data == null) {
+            throw new IllegalArgumentException("No frame data");
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Bad frame size " + width + 'x' + height);
+        }
+        if (data.length < (long) width * height) {
+            throw new IllegalArgumentException(data.length + " bytes is too small for " + width + 'x' + height);
+        }
+        if (released) {
+            throw new IllegalStateException("ScanSession is closed");
+        }
+        ensureDecodeThread();
+        Message.obtain(decodeThread.getHandler(), R.id.decode_frame, width, height, data).sendToTarget();
+    }
+
+    private void ensureDecodeThread() {
+        if (decodeThread == null) {
+            decodeThread = new DecodeThread(context, cameraManager, handler, decodeFormats, decodeHints, characterSet,
+                    pointCallback);
+            decodeThread.start();
+        }
+    }
+
+    private void quitDecodeThread() {
+        DecodeThread theDecodeThread = decodeThread;
+        if (theDecodeThread == null) {
+            return;
+        }
+        decodeThread = null;
+        Message.obtain(theDecodeThread.getHandler(), R.id.quit).sendToTarget();
+        try {
+            // Wait at most half a second; should be enough time, and onPause() will timeout quickly
+            theDecodeThread.join(QUIT_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            // continue
+        }
+        // Be absolutely sure we don't send any queued up messages
+        handler.removeMessages(R.id.decode_succeeded);
+        handler.removeMessages(R.id.decode_failed);
+    }
+
+    private void restartPreviewAndDecode() {
+        if (state == State.SUCCESS) {
+            state = State.PREVIEW;
+            cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+        }
+    }
+
+    private final class SessionHandler extends Handler {
+        @Override
+        public void handleMessage(Message message) {
+            boolean external = message.arg1 != 0;
+            if (message.what == R.id.restart_preview) {
+                restartPreviewAndDecode();
+            } else if (message.what == R.id.decode_succeeded) {
+                if (!external) {
+                    if (state != State.PREVIEW) {
+                        return;
+                    }
+                    state = State.SUCCESS;
+                    cameraManager.getPipelineMetrics().getCounters()
+                            .increment(PipelineCounters.Counter.DECODES_SUCCEEDED);
+                }
+                Bundle bundle = message.getData();
+                Bitmap barcode = null;
+                float scaleFactor = 1.0f;
+                if (bundle != null) {
+                    byte[] compressedBitmap = bundle.getByteArray(DecodeThread.BARCODE_BITMAP);
+                    if (compressedBitmap != null) {
+                        barcode = BitmapFactory.decodeByteArray(compressedBitmap, 0, compressedBitmap.length, null);
+                        // Mutable copy:
+                        barcode = barcode.copy(Bitmap.Config.ARGB_8888, true);
+                    }
+                    scaleFactor = bundle.getFloat(DecodeThread.BARCODE_SCALED_FACTOR);
+                }
+                listener.onScanResult((PreparedResult) message.obj, barcode, scaleFactor);
+            } else if (message.what == R.id.decode_failed) {
+                if (external) {
+                    listener.onFrameNotDecoded();
+                } else if (state == State.PREVIEW) {
+                    // 尽可能快速解码，所以当一个解码失败时，就开始另一个解码。
+                    cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+                }
+            }
+        }
+    }
+
+    private enum State {
+        CLOSED,
+        IDLE,
+        PREVIEW,
+        SUCCESS
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.client.android.http.HttpRequest;
+import com.google.zxing.client.android.http.HttpResponse;
+import com.google.zxing.client.android.http.HttpTransport;
+import com.google.zxing.client.android.http.UrlConnectionTransport;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link HttpHelper} 的测试：通过返回固定响应的 {@link HttpTransport} 检查重定向、错误响应、gzip 和字节上限。
+ */
+public final class HttpHelperTest {
+
+    private FakeTransport transport;
+
+    @Before
+    public void setUp() {
+        transport = new FakeTransport();
+        HttpHelper.setTransport(transport);
+    }
+
+    @After
+    public void tearDown() {
+        HttpHelper.setTransport(new UrlConnectionTransport());
+    }
+
+    @Test
+    public void testFollowsRelativeRedirect() throws IOException {
+        transport.add("http://example.com/a", new FakeResponse(302).setHeader("Location", "/b"));
+        transport.add("http://example.com/b", new FakeResponse(200).setBody("hello"));
+        Assert.assertEquals("hello", download("http://example.com/a"));
+        Assert.assertEquals(2, transport.requests.size());
+        Assert.assertEquals("GET http://example.com/b", transport.requests.get(1).toString());
+        Assert.assertEquals("gzip", transport.requests.get(1).getHeaders().get("Accept-Encoding"));
+    }
+
+    @Test
+    public void testFollowsCrossProtocolRedirect() throws IOException {
+        transport.add("http://example.com/", new FakeResponse(301).setHeader("Location", "https://example.com/"));
+        transport.add("https://example.com/", new FakeResponse(200).setBody("secure"));
+        Assert.assertEquals("secure", download("http://example.com/"));
+    }
+
+    @Test
+    public void testTooManyRedirects() {
+        transport.add("http://example.com/loop", new FakeResponse(307).setHeader("Location", "/loop"));
+        assertFails("http://example.com/loop", "Too many redirects");
+        Assert.assertEquals(5, transport.requests.size());
+    }
+
+    @Test
+    public void testRedirectWithoutLocation() {
+        transport.add("http://example.com/", new FakeResponse(302));
+        assertFails("http://example.com/", "No Location");
+    }
+
+    @Test
+    public void testErrorResponse() {
+        transport.add("http://example.com/missing", new FakeResponse(404).setBody("not found"));
+        assertFails("http://example.com/missing", "Bad HTTP response: 404");
+        Assert.assertTrue(transport.responses.get("http://example.com/missing").closed);
+    }
+
+    @Test
+    public void testErrorResponseIsDistinguishedFromNetworkFailure() {
+        transport.add("http://example.com/gone", new FakeResponse(410));
+        try {
+            download("http://example.com/gone");
+            Assert.fail("Expected an HTTP status failure");
+        } catch (HttpHelper.HttpStatusException hse) {
+            Assert.assertEquals(410, hse.getCode());
+        } catch (IOException ioe) {
+            Assert.fail("Expected an HTTP status failure, got " + ioe);
+        }
+        // 连接失败不是 HttpStatusException
+        try {
+            download("http://example.com/unreachable");
+            Assert.fail("Expected a network failure");
+        } catch (IOException ioe) {
+            Assert.assertFalse(ioe instanceof HttpHelper.HttpStatusException);
+        }
+    }
+
+    @Test
+    public void testDeclaredCharset() throws IOException {
+        transport.add("http://example.com/", new FakeResponse(200)
+                .setHeader("Content-Type", "text/html; charset=\"GBK\"")
+                .setBody("中文标题".getBytes(Charset.forName("GBK"))));
+        Assert.assertEquals("中文标题", download("http://example.com/"));
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        transport.add("http://example.com/", new FakeResponse(200)
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(gzip(new byte[0], "compressed".getBytes(StandardCharsets.UTF_8))));
+        Assert.assertEquals("compressed", download("http://example.com/"));
+    }
+
+    @Test
+    public void testGzipBombIsCapped() throws IOException {
+        int inflatedSize = 16 * 1024 * 1024;
+        byte[] compressed = gzip(new byte[inflatedSize], new byte[0]);
+        // 压缩后远小于字节上限，只有解压后的上限能拦住
+        Assert.assertTrue(compressed.length < 64 * 1024);
+        transport.add("http://example.com/bomb", new FakeResponse(200)
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(compressed));
+        long read = HttpHelper.downloadViaHttp("http://example.com/bomb", HttpHelper.ContentType.HTML,
+                Long.MAX_VALUE, new HttpHelper.BodyHandler<Long>() {
+                    @Override
+                    public Long handle(InputStream body, String charset) throws IOException {
+                        byte[] buffer = new byte[8192];
+                        long total = 0;
+                        int read;
+                        while ((read = body.read(buffer)) > 0) {
+                            total += read;
+                        }
+                        return total;
+                    }
+                });
+        Assert.assertTrue("Read " + read + " bytes", read > 0 && read < inflatedSize / 4);
+    }
+
+    @Test
+    public void testTruncatedGzipEndsCleanly() throws IOException {
+        // 随机数据几乎不能压缩，压缩后超过字节上限，在压缩流中间被截断
+        byte[] text = new byte[16 * 1024];
+        new Random(42).nextBytes(text);
+        transport.add("http://example.com/big", new FakeResponse(200)
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(gzip(new byte[0], text)));
+        long read = HttpHelper.downloadViaHttp("http://example.com/big", HttpHelper.ContentType.HTML,
+                4 * 1024, new HttpHelper.BodyHandler<Long>() {
+                    @Override
+                    public Long handle(InputStream body, String charset) throws IOException {
+                        byte[] buffer = new byte[1024];
+                        long total = 0;
+                        int read;
+                        while ((read = body.read(buffer)) >= 0) {
+                            total += read;
+                        }
+                        Assert.assertEquals(-1, body.read());
+                        return total;
+                    }
+                });
+        Assert.assertTrue("Read " + read + " bytes", read > 0 && read < text.length);
+    }
+
+    @Test
+    public void testResolveRedirect() throws Exception {
+        transport.add("http://bit.ly/abc", new FakeResponse(301)
+                .setHeader("Location", "https://example.com/target")
+                .setHeader("Cache-Control", "public, max-age=60"));
+        HttpHelper.Redirect redirect = HttpHelper.resolveRedirect(new URI("http://bit.ly/abc"));
+        Assert.assertEquals(new URI("https://example.com/target"), redirect.getTarget());
+        Assert.assertEquals(60000L, redirect.getMaxAgeMs());
+        Assert.assertEquals("HEAD", transport.requests.get(0).getMethod());
+    }
+
+    @Test
+    public void testResolveRedirectSkipsOtherHosts() throws Exception {
+        URI uri = new URI("http://example.com/page");
+        HttpHelper.Redirect redirect = HttpHelper.resolveRedirect(uri);
+        Assert.assertEquals(uri, redirect.getTarget());
+        Assert.assertEquals(-1L, redirect.getMaxAgeMs());
+        Assert.assertTrue(transport.requests.isEmpty());
+    }
+
+    private static String download(String uri) throws IOException {
+        return HttpHelper.downloadViaHttp(uri, HttpHelper.ContentType.HTML).toString();
+    }
+
+    private static void assertFails(String uri, String message) {
+        try {
+            download(uri);
+            Assert.fail("Expected " + message);
+        } catch (IOException ioe) {
+            Assert.assertEquals(message, ioe.getMessage());
+        }
+    }
+
+    private static byte[] gzip(byte[] zeros, byte[] text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(zeros);
+            gzip.write(text);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 按完整地址返回预先设置的响应，并记录收到的请求。
+     */
+    private static final class FakeTransport implements HttpTransport {
+        final Map<String, FakeResponse> responses = new HashMap<>();
+        final List<HttpRequest> requests = new ArrayList<>();
+
+        void add(String url, FakeResponse response) {
+            responses.put(url, response);
+        }
+
+        @Override
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            requests.add(request);
+            FakeResponse response = responses.get(request.getUrl().toString());
+            if (response == null) {
+                throw new IOException("No response for " + request);
+            }
+            return response;
+        }
+    }
+
+    private static final class FakeResponse implements HttpResponse {
+        private final int code;
+        private final Map<String, String> headers = new HashMap<>();
+        private byte[] body = new byte[0];
+        boolean closed;
+
+        FakeResponse(int code) {
+            this.code = code;
+        }
+
+        FakeResponse setHeader(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        FakeResponse setBody(String text) {
+            return setBody(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        FakeResponse setBody(byte[] bytes) {
+            body = bytes;
+            return this;
+        }
+
+        @Override
+        public int getCode() {
+            return code;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
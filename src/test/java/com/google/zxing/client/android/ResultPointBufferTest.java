@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link ResultPointBuffer} 的测试，包括一个生产者线程和一个消费者线程同时运行的压力测试。
+ */
+public final class ResultPointBufferTest {
+
+    // float 能精确表示 2^24 以内的整数
+    private static final int POINTS = 1000000;
+
+    @Test
+    public void testCapacityRoundsUpToPowerOfTwo() {
+        Assert.assertEquals(32, new ResultPointBuffer(20).capacity());
+        Assert.assertEquals(16, new ResultPointBuffer(16).capacity());
+    }
+
+    @Test
+    public void testDropsNewPointsWhenFull() {
+        ResultPointBuffer buffer = new ResultPointBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(buffer.offer(i, -i));
+        }
+        Assert.assertFalse(buffer.offer(100.0f, 100.0f));
+
+        float[] xs = new float[4];
+        float[] ys = new float[4];
+        Assert.assertEquals(4, buffer.drainTo(xs, ys));
+        for (int i = 0; i < 4; i++) {
+            // 满了以后的点被丢弃，没有覆盖未读的点
+            Assert.assertEquals(i, xs[i], 0.0f);
+            Assert.assertEquals(-i, ys[i], 0.0f);
+        }
+        Assert.assertEquals(0, buffer.drainTo(xs, ys));
+        Assert.assertTrue(buffer.offer(5.0f, 5.0f));
+        Assert.assertEquals(1, buffer.drainTo(xs, ys));
+        Assert.assertEquals(5.0f, xs[0], 0.0f);
+    }
+
+    /**
+     * 生产者依次放入编号连续的点，放不进去时重试；消费者检查取出的点编号连续（不丢失、不重复、不乱序），
+     * 而且每个点的 x、y 来自同一次写入（没有读到写了一半的点）。
+     */
+    @Test(timeout = 60000)
+    public void testConcurrentProducerAndConsumer() throws InterruptedException {
+        final ResultPointBuffer buffer = new ResultPointBuffer(32);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < POINTS; i++) {
+                    while (!buffer.offer(i, encode(i))) {
+                        if (failure.get() != null) {
+                            // 消费者已经失败退出
+                            return;
+                        }
+                        Thread.yield();
+                    }
+                }
+            }
+        }, "producer");
+
+        final int[] received = new int[1];
+        final int[] drains = new int[1];
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                float[] xs = new float[buffer.capacity()];
+                float[] ys = new float[buffer.capacity()];
+                int expected = 0;
+                try {
+                    while (expected < POINTS) {
+                        int count = buffer.drainTo(xs, ys);
+                        Assert.assertTrue(count >= 0 && count <= buffer.capacity());
+                        for (int i = 0; i < count; i++) {
+                            Assert.assertEquals("point order", expected, xs[i], 0.0f);
+                            Assert.assertEquals("torn point " + expected, encode(expected), ys[i], 0.0f);
+                            expected++;
+                        }
+                        if (count > 0) {
+                            drains[0]++;
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                    received[0] = expected;
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        }, "consumer");
+
+        consumer.start();
+        producer.start();
+        producer.join();
+        consumer.join(30000);
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        Assert.assertEquals(POINTS, received[0]);
+        // 确实交替运行过，而不是一方跑完另一方才开始
+        Assert.assertTrue(drains[0] > 1);
+    }
+
+    private static float encode(int i) {
+        return (i * 7 + 3) % 16777216;
+    }
+
+}
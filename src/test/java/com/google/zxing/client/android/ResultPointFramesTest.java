@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * {@link ResultPointFrames} 的测试：{@code ViewfinderView.onDraw} 每帧切换结果点时不分配对象。
+ */
+public final class ResultPointFramesTest {
+
+    private static final int FRAMES = 100000;
+
+    @Test
+    public void testAdvanceKeepsPreviousFrame() {
+        ResultPointFrames frames = new ResultPointFrames(20);
+        frames.offer(1.0f, 2.0f);
+        frames.offer(3.0f, 4.0f);
+        frames.advance();
+        Assert.assertEquals(2, frames.getCurrentCount());
+        Assert.assertEquals(0, frames.getLastCount());
+        Assert.assertEquals(3.0f, frames.getCurrentXs()[1], 0.0f);
+        Assert.assertEquals(4.0f, frames.getCurrentYs()[1], 0.0f);
+
+        frames.offer(5.0f, 6.0f);
+        frames.advance();
+        Assert.assertEquals(1, frames.getCurrentCount());
+        Assert.assertEquals(5.0f, frames.getCurrentXs()[0], 0.0f);
+        Assert.assertEquals(2, frames.getLastCount());
+        Assert.assertEquals(1.0f, frames.getLastXs()[0], 0.0f);
+        Assert.assertEquals(4.0f, frames.getLastYs()[1], 0.0f);
+
+        frames.advance();
+        Assert.assertEquals(0, frames.getCurrentCount());
+        Assert.assertEquals(1, frames.getLastCount());
+    }
+
+    @Test
+    public void testSteadyStateDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        ResultPointFrames frames = new ResultPointFrames(20);
+        // 预热，让 JIT 编译完成
+        float checksum = drawFrames(frames, FRAMES);
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        checksum += drawFrames(frames, FRAMES);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        Assert.assertTrue(checksum > 0.0f);
+        // 读取计数本身可能分配几十字节
+        Assert.assertTrue("Allocated " + allocated + " bytes in " + FRAMES + " frames", allocated < 1024);
+    }
+
+    // 与 onDraw 相同的调用顺序：解码线程放进几个点，绘制时切换并读取两组坐标
+    private static float drawFrames(ResultPointFrames frames, int count) {
+        float sum = 0.0f;
+        for (int frame = 0; frame < count; frame++) {
+            for (int i = 0; i < frame % 5; i++) {
+                frames.offer(frame, i);
+            }
+            frames.advance();
+            for (int i = 0; i < frames.getCurrentCount(); i++) {
+                sum += frames.getCurrentXs()[i] + frames.getCurrentYs()[i];
+            }
+            for (int i = 0; i < frames.getLastCount(); i++) {
+                sum += frames.getLastXs()[i] + frames.getLastYs()[i];
+            }
+        }
+        return sum;
+    }
+
+}
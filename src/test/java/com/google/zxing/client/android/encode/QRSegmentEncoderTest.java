@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.encode;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link QRSegmentEncoder} 和 {@link QRCodeAssembler} 的测试：
+ * 一批固定内容编码后用 {@link QRCodeReader} 识别回原文，并且整体上比核心库的单一模式编码版本更小。
+ */
+public final class QRSegmentEncoderTest {
+
+    // 每个模块放大成的像素数
+    private static final int SCALE = 4;
+
+    private static final List<String> CORPUS = Arrays.asList(
+            "HELLO WORLD",
+            "0123456789012345678901234567890123456789",
+            "https://example.com/order?id=20181019000123456789",
+            "WIFI:S:MyNetwork;T:WPA;P:pa55word;;",
+            "订单号 20181019000123456789 已发货",
+            "TEL:+8613800138000",
+            "Café au lait, 2 × €3.50",
+            "ÀÉÎ",
+            "ÀÉÎ中文",
+            "日本語のテキスト漢字かな",
+            "MECARD:N:张三;TEL:13800138000;EMAIL:zhangsan@example.com;;",
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789abc",
+            "😀 emoji 123456789012");
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (ErrorCorrectionLevel ecLevel : ErrorCorrectionLevel.values()) {
+            for (String contents : CORPUS) {
+                BitMatrix matrix = QRSegmentEncoder.encode(contents, ecLevel);
+                Assert.assertEquals(contents + " at " + ecLevel, contents, decode(matrix));
+            }
+        }
+    }
+
+    @Test
+    public void testLatin1UsesEci() throws Exception {
+        String plan = QRSegmentEncoder.plan("ÀÉÎ", ErrorCorrectionLevel.L).toString();
+        Assert.assertTrue(plan, plan.contains("ECI ISO-8859-1"));
+        plan = QRSegmentEncoder.plan("Hello, World", ErrorCorrectionLevel.L).toString();
+        Assert.assertFalse(plan, plan.contains("ECI"));
+    }
+
+    @Test
+    public void testMixedContentsUseSmallerVersion() throws Exception {
+        String contents = "https://example.com/o?id=201810190001234567890123456789012345678901234567890123456789";
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        int coreVersion = Encoder.encode(contents, ErrorCorrectionLevel.L, hints).getVersion().getVersionNumber();
+        QRSegmentEncoder.Plan plan = QRSegmentEncoder.plan(contents, ErrorCorrectionLevel.L);
+        Assert.assertTrue(plan.toString(), plan.getVersion().getVersionNumber() < coreVersion);
+    }
+
+    @Test
+    public void testSingleSegmentMatchesCoreEncoder() throws Exception {
+        // 纯数字只有一段，数据位与核心库相同，纠错码、掩码选择和矩阵排布的结果应当完全一致；长度覆盖带版本信息的版本
+        for (ErrorCorrectionLevel ecLevel : ErrorCorrectionLevel.values()) {
+            StringBuilder contents = new StringBuilder();
+            for (int length = 1; length <= 600; length += 37) {
+                while (contents.length() < length) {
+                    contents.append(contents.length() % 10);
+                }
+                Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+                ByteMatrix expected = Encoder.encode(contents.toString(), ecLevel, hints).getMatrix();
+                BitMatrix actual = QRSegmentEncoder.encode(contents.toString(), ecLevel);
+                Assert.assertEquals(expected.getWidth() + 8, actual.getWidth());
+                for (int y = 0; y < expected.getHeight(); y++) {
+                    for (int x = 0; x < expected.getWidth(); x++) {
+                        Assert.assertEquals(length + " at " + ecLevel + " (" + x + ',' + y + ')',
+                                expected.get(x, y) == 1, actual.get(x + 4, y + 4));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompare() {
+        for (ErrorCorrectionLevel ecLevel : ErrorCorrectionLevel.values()) {
+            QRSegmentEncoder.Savings savings = QRSegmentEncoder.compare(CORPUS, ecLevel);
+            Assert.assertEquals(CORPUS.size(), savings.getCount());
+            Assert.assertTrue(savings.toString(), savings.getImproved() > 0);
+            Assert.assertTrue(savings.toString(), savings.getVersionsSaved() > 0);
+            Assert.assertTrue(savings.toString(), savings.getModulesSaved() > 0);
+        }
+    }
+
+    private static String decode(BitMatrix matrix) throws Exception {
+        int width = matrix.getWidth() * SCALE;
+        int height = matrix.getHeight() * SCALE;
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = matrix.get(x / SCALE, y / SCALE) ? 0xFF000000 : 0xFFFFFFFF;
+            }
+        }
+        LuminanceSource source = new RGBLuminanceSource(width, height, pixels);
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+        Result result = new QRCodeReader().decode(new BinaryBitmap(new HybridBinarizer(source)), hints);
+        return result.getText();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.history;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * {@link HistoryExporter.CsvWriter} 的测试：RFC 4180 的引号规则，以及公式注入的处理。
+ */
+public final class HistoryExporterTest {
+
+    @Test
+    public void testPlainField() throws IOException {
+        Assert.assertEquals("hello,QR_CODE,,0,1970-01-01T00:00:00.000Z\r\n", csv("hello", null));
+    }
+
+    @Test
+    public void testQuotedField() throws IOException {
+        Assert.assertEquals("\"a,b\",QR_CODE,\"say \"\"hi\"\"\",0,1970-01-01T00:00:00.000Z\r\n",
+                csv("a,b", "say \"hi\""));
+    }
+
+    @Test
+    public void testFormulaIsNeutralized() throws IOException {
+        Assert.assertEquals("\"'=HYPERLINK(\"\"http://evil\"\")\",QR_CODE,,0,1970-01-01T00:00:00.000Z\r\n",
+                csv("=HYPERLINK(\"http://evil\")", null));
+        for (String value : new String[] {"+1+1", "-1+1", "@SUM(A1)", "\t=1", "\r=1"}) {
+            String line = csv(value, null);
+            Assert.assertTrue(line, line.startsWith("\"'" + value + '"'));
+        }
+        Assert.assertEquals("\"'=1\"", csv("ok", "=1").split(",")[2]);
+    }
+
+    @Test
+    public void testInnerOperatorsAreNotQuoted() throws IOException {
+        Assert.assertTrue(csv("a=b-c", null).startsWith("a=b-c,"));
+    }
+
+    private static String csv(String text, String display) throws IOException {
+        StringWriter out = new StringWriter();
+        new HistoryExporter.CsvWriter(out).write(new HistoryItem(text, BarcodeFormat.QR_CODE, display, 0L));
+        return out.toString();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * {@link BoundedInputStream} 的测试：字节上限、整体时限和关闭时的统计。
+ */
+public final class BoundedInputStreamTest {
+
+    @Test
+    public void testStopsAtLimit() throws IOException {
+        HttpMetrics metrics = new HttpMetrics();
+        BoundedInputStream in = new BoundedInputStream(body(100), 10, Long.MAX_VALUE, metrics);
+        byte[] buffer = new byte[64];
+        Assert.assertEquals(10, readFully(in, buffer));
+        Assert.assertEquals(-1, in.read());
+        Assert.assertTrue(in.isTruncated());
+        in.close();
+        Assert.assertEquals(10, metrics.getBytesRead());
+        Assert.assertEquals(1, metrics.getTruncatedCount());
+    }
+
+    @Test
+    public void testShortBodyIsNotTruncated() throws IOException {
+        HttpMetrics metrics = new HttpMetrics();
+        BoundedInputStream in = new BoundedInputStream(body(5), 10, Long.MAX_VALUE, metrics);
+        Assert.assertEquals(5, readFully(in, new byte[64]));
+        Assert.assertFalse(in.isTruncated());
+        in.close();
+        Assert.assertEquals(5, metrics.getBytesRead());
+        Assert.assertEquals(0, metrics.getTruncatedCount());
+    }
+
+    @Test
+    public void testSingleByteReads() throws IOException {
+        BoundedInputStream in = new BoundedInputStream(body(100), 3);
+        Assert.assertEquals(0, in.read());
+        Assert.assertEquals(1, in.read());
+        Assert.assertEquals(2, in.read());
+        Assert.assertEquals(-1, in.read());
+        in.close();
+    }
+
+    @Test
+    public void testSkipCountsTowardsLimit() throws IOException {
+        BoundedInputStream in = new BoundedInputStream(body(100), 10);
+        Assert.assertEquals(10L, in.skip(50));
+        Assert.assertEquals(-1, in.read());
+        Assert.assertTrue(in.isTruncated());
+        in.close();
+    }
+
+    @Test
+    public void testDeadline() throws IOException {
+        HttpMetrics metrics = new HttpMetrics();
+        BoundedInputStream in = new BoundedInputStream(body(100), 100, System.currentTimeMillis() - 1, metrics);
+        try {
+            in.read();
+            Assert.fail("Expected a timeout");
+        } catch (SocketTimeoutException ste) {
+            // expected
+        }
+        in.close();
+        Assert.assertEquals(1, metrics.getTimeoutCount());
+    }
+
+    @Test
+    public void testRecordsOnlyOnce() throws IOException {
+        HttpMetrics metrics = new HttpMetrics();
+        BoundedInputStream in = new BoundedInputStream(body(5), 10, Long.MAX_VALUE, metrics);
+        readFully(in, new byte[64]);
+        in.close();
+        in.close();
+        Assert.assertEquals(5, metrics.getBytesRead());
+    }
+
+    private static InputStream body(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link UrlConnectionTransport} 的测试：用本地的 HTTP 服务器检查没读响应体就关闭的重定向是否还能复用连接。
+ */
+public final class UrlConnectionTransportTest {
+
+    private HttpServer server;
+    // 每个请求来自的客户端端口，端口相同说明复用了连接
+    private final List<Integer> clientPorts = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/small", new RedirectHandler(256));
+        server.createContext("/large", new RedirectHandler(64 * 1024));
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testUnreadRedirectBodyKeepsConnection() throws IOException {
+        execute("/small");
+        execute("/small");
+        Assert.assertEquals(2, clientPorts.size());
+        Assert.assertEquals(clientPorts.get(0), clientPorts.get(1));
+    }
+
+    @Test
+    public void testLargeRedirectBodyDisconnects() throws IOException {
+        execute("/large");
+        execute("/large");
+        Assert.assertEquals(2, clientPorts.size());
+        Assert.assertNotEquals(clientPorts.get(0), clientPorts.get(1));
+    }
+
+    private void execute(String path) throws IOException {
+        URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+        try (HttpResponse response = new UrlConnectionTransport().execute(new HttpRequest("GET", url, 5000, 5000))) {
+            Assert.assertEquals(302, response.getCode());
+        }
+    }
+
+    private final class RedirectHandler implements HttpHandler {
+        private final byte[] body;
+
+        RedirectHandler(int length) {
+            StringBuilder page = new StringBuilder(length);
+            while (page.length() < length) {
+                page.append("Moved. ");
+            }
+            body = page.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            synchronized (clientPorts) {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+            }
+            exchange.getResponseHeaders().set("Location", "/elsewhere");
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(302, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.result.supplement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * {@link HtmlTitleParser} 的测试。各种编码的网页放在 src/test/resources 下同名的包目录中。
+ */
+public final class HtmlTitleParserTest {
+
+    @Test
+    public void testGbkFromUnquotedMetaCharset() throws IOException {
+        HtmlTitleParser parser = new HtmlTitleParser(resource("gbk.html"), null);
+        Assert.assertEquals("二维码扫描 - 中文网页", parser.parse());
+        Assert.assertEquals("gbk", parser.getCharset());
+    }
+
+    @Test
+    public void testShiftJisFromHttpEquiv() throws IOException {
+        HtmlTitleParser parser = new HtmlTitleParser(resource("shift_jis.html"), null);
+        Assert.assertEquals("バーコード読み取り", parser.parse());
+        Assert.assertEquals("Shift_JIS", parser.getCharset());
+    }
+
+    @Test
+    public void testBig5FromXmlDeclaration() throws IOException {
+        HtmlTitleParser parser = new HtmlTitleParser(resource("big5.html"), null);
+        Assert.assertEquals("條碼掃描器", parser.parse());
+        Assert.assertEquals("Big5", parser.getCharset());
+    }
+
+    @Test
+    public void testBomOverridesMeta() throws IOException {
+        HtmlTitleParser parser = new HtmlTitleParser(resource("bom.html"), "ISO-8859-1");
+        Assert.assertEquals("带 BOM 的标题 – UTF-8", parser.parse());
+        Assert.assertEquals("UTF-8", parser.getCharset());
+    }
+
+    @Test
+    public void testHeaderOverridesMeta() throws IOException {
+        // 响应头声明的编码错误时，结果也按响应头解码
+        HtmlTitleParser parser = new HtmlTitleParser(resource("gbk.html"), "UTF-8");
+        parser.parse();
+        Assert.assertEquals("UTF-8", parser.getCharset());
+    }
+
+    @Test
+    public void testSkipsDecoys() throws IOException {
+        Assert.assertEquals("真正的标题", new HtmlTitleParser(resource("decoy.html"), null).parse());
+    }
+
+    @Test
+    public void testUnquotedValueBeforeSelfClosingSlash() throws IOException {
+        HtmlTitleParser parser = parser("<meta charset=utf-8/><title>A/B</title>");
+        Assert.assertEquals("A/B", parser.parse());
+        Assert.assertEquals("utf-8", parser.getCharset());
+
+        byte[] title = "中文".getBytes("GBK");
+        byte[] head = "<meta http-equiv=Content-Type content=text/html;charset=gbk/><title>"
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] page = Arrays.copyOf(head, head.length + title.length);
+        System.arraycopy(title, 0, page, head.length, title.length);
+        parser = new HtmlTitleParser(new ByteArrayInputStream(page), null);
+        Assert.assertEquals("中文", parser.parse());
+        Assert.assertEquals("gbk", parser.getCharset());
+    }
+
+    @Test
+    public void testSelfClosingTitleIsEmpty() throws IOException {
+        Assert.assertEquals("Real", parser("<title lang=en/><title>Real</title>").parse());
+    }
+
+    @Test
+    public void testStopsAtBody() throws IOException {
+        Assert.assertNull(parser("<html><body><svg><title>icon</title></svg></body></html>").parse());
+        Assert.assertNull(parser("<html><body><p>text</p><title>late</title></body></html>").parse());
+        Assert.assertNull(parser("<svg xmlns=\"http://www.w3.org/2000/svg\"><title>icon</title></svg>").parse());
+    }
+
+    @Test
+    public void testStopsAtEndOfHead() throws IOException {
+        Assert.assertNull(parser("<html><head></head><title>late</title></html>").parse());
+    }
+
+    @Test
+    public void testStopsReadingAtTitle() throws IOException {
+        byte[] page = new byte[256 * 1024];
+        Arrays.fill(page, (byte) 'x');
+        byte[] head = "<html><head><title>Early</title></head><body>".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(head, 0, page, 0, head.length);
+        CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(page));
+        Assert.assertEquals("Early", new HtmlTitleParser(in, null).parse());
+        Assert.assertTrue("Read " + in.count + " bytes", in.count <= 1024);
+    }
+
+    @Test
+    public void testUtf16IsNotScanned() throws IOException {
+        byte[] page = "\uFEFF<title>UTF-16</title>".getBytes(StandardCharsets.UTF_16BE);
+        Assert.assertNull(new HtmlTitleParser(new ByteArrayInputStream(page), null).parse());
+    }
+
+    private static HtmlTitleParser parser(String html) {
+        return new HtmlTitleParser(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    private InputStream resource(String name) {
+        InputStream in = getClass().getResourceAsStream(name);
+        Assert.assertNotNull("Missing test resource " + name, in);
+        return in;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}